@@ -801,6 +801,22 @@ public class ClassFileWriter {
 
     public void addInvoke(int theOpCode, String className, String methodName,
         String methodType) {
+        addInvoke(theOpCode, className, methodName, methodType,
+                  theOpCode == ByteCode.INVOKEINTERFACE);
+    }
+
+    /**
+     * Add an invokespecial of an interface method. Used to call the default
+     * implementation of a method of a direct superinterface.
+     */
+    public void addInvokeSpecialInterface(String className, String methodName,
+        String methodType) {
+        addInvoke(ByteCode.INVOKESPECIAL, className, methodName, methodType,
+                  true);
+    }
+
+    private void addInvoke(int theOpCode, String className, String methodName,
+        String methodType, boolean isInterface) {
         if (DEBUGCODE) {
             System.out.println("Add " + bytecodeStr(theOpCode)
                 + ", " + className + ", " + methodName + ", "
@@ -821,14 +837,16 @@ public class ClassFileWriter {
             case ByteCode.INVOKESTATIC:
             case ByteCode.INVOKEINTERFACE: {
                 addToCodeBuffer(theOpCode);
-                if (theOpCode == ByteCode.INVOKEINTERFACE) {
+                if (isInterface) {
                     short ifMethodRefIndex
                         = itsConstantPool.addInterfaceMethodRef(
                         className, methodName,
                         methodType);
                     addToCodeInt16(ifMethodRefIndex);
-                    addToCodeBuffer(parameterCount + 1);
-                    addToCodeBuffer(0);
+                    if (theOpCode == ByteCode.INVOKEINTERFACE) {
+                        addToCodeBuffer(parameterCount + 1);
+                        addToCodeBuffer(0);
+                    }
                 } else {
                     short methodRefIndex = itsConstantPool.addMethodRef(
                         className, methodName,
@@ -127,6 +127,8 @@ class CodeGenerator extends Icode {
             addToken(Token.RETURN_RESULT);
         }
 
+        optimizeICode();
+
         if (itsData.itsICode.length != iCodeTop) {
             // Make itsData.itsICode length exactly iCodeTop to save memory
             // and catch bugs with jumps beyond icode as early as possible
@@ -1224,6 +1226,120 @@ class CodeGenerator extends Icode {
         fixupTableTop = 0;
     }
 
+    /**
+     * Peephole pass over the generated code. It retargets jumps that land
+     * on a GOTO to the final destination and replaces the first icode of
+     * frequent sequences with a superinstruction that executes the whole
+     * sequence in one dispatch. The rest of the sequence is left in place,
+     * so jump targets and the code length do not change.
+     */
+    private void optimizeICode()
+    {
+        byte[] iCode = itsData.itsICode;
+        for (int pc = 0; pc < iCodeTop; ) {
+            int op = iCode[pc];
+            int next = pc + Interpreter.bytecodeSpan(op);
+            int nextOp = (next < iCodeTop) ? iCode[next] : 0;
+            switch (op) {
+              case Token.GOTO :
+              case Token.IFEQ :
+              case Token.IFNE :
+              case Icode_IFEQ_POP :
+                threadJump(pc);
+                break;
+              case Icode_SETVAR1 :
+                if (nextOp == Icode_POP) {
+                    iCode[pc] = (byte)Icode_SETVAR1_POP;
+                }
+                break;
+              case Icode_VAR_INC_DEC :
+                if (nextOp == Icode_POP) {
+                    iCode[pc] = (byte)Icode_VAR_INC_DEC_POP;
+                }
+                break;
+              case Icode_GETVAR1 : {
+                int propPC;
+                if (Icode_REG_STR_C3 <= nextOp && nextOp <= Icode_REG_STR_C0) {
+                    propPC = next + 1;
+                } else if (nextOp == Icode_REG_STR1) {
+                    propPC = next + 2;
+                } else {
+                    break;
+                }
+                if (propPC < iCodeTop && iCode[propPC] == Token.GETPROP) {
+                    iCode[pc] = (byte)Icode_GETVAR1_GETPROP;
+                }
+                break;
+              }
+              case Icode_PROP_AND_THIS :
+                if (nextOp == Icode_REG_IND_C0 && next + 1 < iCodeTop
+                    && (iCode[next + 1] == Token.CALL
+                        || iCode[next + 1] == Icode_TAIL_CALL))
+                {
+                    iCode[pc] = (byte)Icode_PROP_AND_THIS_CALL;
+                }
+                break;
+              case Token.LT :
+              case Token.LE :
+              case Token.GT :
+              case Token.GE :
+              case Token.EQ :
+              case Token.NE :
+              case Token.SHEQ :
+              case Token.SHNE :
+                if (nextOp == Token.IFEQ || nextOp == Token.IFNE) {
+                    iCode[pc] = (byte)branchIcode(op);
+                }
+                break;
+            }
+            pc = next;
+        }
+    }
+
+    private static int branchIcode(int op)
+    {
+        switch (op) {
+          case Token.LT:   return Icode_LT_BRANCH;
+          case Token.LE:   return Icode_LE_BRANCH;
+          case Token.GT:   return Icode_GT_BRANCH;
+          case Token.GE:   return Icode_GE_BRANCH;
+          case Token.EQ:   return Icode_EQ_BRANCH;
+          case Token.NE:   return Icode_NE_BRANCH;
+          case Token.SHEQ: return Icode_SHEQ_BRANCH;
+          case Token.SHNE: return Icode_SHNE_BRANCH;
+        }
+        throw Kit.codeBug();
+    }
+
+    /**
+     * Makes the jump at jumpPC skip a chain of GOTOs at its target.
+     */
+    private void threadJump(int jumpPC)
+    {
+        byte[] iCode = itsData.itsICode;
+        int target = jumpPC + Interpreter.getShort(iCode, jumpPC + 1);
+        if (target == jumpPC) {
+            // long jump stored in itsData.longJumps
+            return;
+        }
+        int finalTarget = target;
+        // bound the chain length to stop on GOTO cycles
+        for (int i = 0; i != 8 && iCode[finalTarget] == Token.GOTO; i++) {
+            int offset = Interpreter.getShort(iCode, finalTarget + 1);
+            if (offset == 0) {
+                break;
+            }
+            finalTarget += offset;
+        }
+        int offset = finalTarget - jumpPC;
+        if (finalTarget != target && offset == (short)offset
+            && !(0 <= offset && offset <= 2))
+        {
+            iCode[jumpPC + 1] = (byte)(offset >> 8);
+            iCode[jumpPC + 2] = (byte)offset;
+        }
+    }
+
     private void addBackwardGoto(int gotoOp, int jumpPC)
     {
         int fromPC = iCodeTop;
@@ -353,6 +353,59 @@ public class Context
      * @since 1.7 Release 12
      */
     public static final int FEATURE_ENABLE_XML_SECURE_PARSING = 20;
+
+    /**
+     * If set, the Java reflection data gathered for wrapped Java classes
+     * (accessible methods, fields and constructors) is cached once per JVM
+     * and shared by all {@link ClassCache} instances instead of being
+     * recomputed for every top-level scope. Only the scope-dependent
+     * wrappers are created per scope. The shared data is attached to the
+     * reflected classes, so it does not keep their class loaders alive.
+     * The default is false.
+     * @since 1.7.12
+     */
+    public static final int FEATURE_SHARED_CLASS_CACHE = 21;
+
+    /**
+     * If set, instances of java.util.Map are wrapped as {@link NativeJavaMap}
+     * so scripts can read, write and enumerate their entries as properties.
+     * The default is false.
+     * @see #FEATURE_ENABLE_JAVA_LIST_ACCESS
+     * @since 1.7.12
+     */
+    public static final int FEATURE_ENABLE_JAVA_MAP_ACCESS = 22;
+
+    /**
+     * If set, {@link JavaScriptException} instances, which carry the values
+     * thrown by scripts, do not record a Java stack trace. This makes throw
+     * and catch much cheaper when scripts use them for control flow. The
+     * script stack of interpreted functions stays available through
+     * {@link RhinoException#getScriptStack()} and the "stack" property of
+     * Error objects, but it no longer lists compiled functions.
+     * The default is false.
+     * @since 1.7.12
+     */
+    public static final int FEATURE_OMIT_JAVA_STACK_IN_THROW = 23;
+
+    /**
+     * If set, JSON.stringify writes Java objects that are not maps,
+     * collections, arrays or primitive values as JSON objects with a member
+     * for every public bean getter, other than getClass(). Otherwise
+     * JSON.stringify throws a TypeError for such objects.
+     * The default is false.
+     * @since 1.7.12
+     */
+    public static final int FEATURE_JSON_JAVA_BEANS = 24;
+
+    /**
+     * If set, instances of java.util.List are wrapped as
+     * {@link NativeJavaList}, so scripts can use them like arrays: they have
+     * a length, indexed elements and Array.prototype as their prototype.
+     * The default is false.
+     * @see #FEATURE_ENABLE_JAVA_MAP_ACCESS
+     * @since 1.7.12
+     */
+    public static final int FEATURE_ENABLE_JAVA_LIST_ACCESS = 25;
     
     public static final String languageVersionProperty = "language version";
     public static final String errorReporterProperty   = "error reporter";
@@ -2093,6 +2146,66 @@ public class Context
         maximumInterpreterStackDepth = max;
     }
 
+    /**
+     * Regular expressions are matched by backtracking, switching to the
+     * linear time matcher for searches that backtrack excessively.
+     * @see #setRegExpEngine(int)
+     * @since 1.7.12
+     */
+    public static final int REGEXP_ENGINE_DEFAULT = 0;
+
+    /**
+     * Regular expressions are always matched by backtracking.
+     * @see #setRegExpEngine(int)
+     * @since 1.7.12
+     */
+    public static final int REGEXP_ENGINE_BACKTRACKING = 1;
+
+    /**
+     * Regular expressions without back references and lookahead assertions
+     * are always matched in time linear in the input length.
+     * @see #setRegExpEngine(int)
+     * @since 1.7.12
+     */
+    public static final int REGEXP_ENGINE_LINEAR = 2;
+
+    /**
+     * Returns how regular expressions are matched in this context.
+     * @see #setRegExpEngine(int)
+     * @since 1.7.12
+     */
+    public final int getRegExpEngine()
+    {
+        return regExpEngine;
+    }
+
+    /**
+     * Sets how regular expressions are matched in this context.
+     * <p>
+     * A backtracking matcher can take time exponential in the input length
+     * for patterns like <code>/(a+)+b/</code>. The linear time matcher
+     * avoids that but is slower for ordinary patterns and cannot handle
+     * back references and lookahead assertions, which are always matched by
+     * backtracking. By default the backtracking matcher is used until a
+     * search backtracks much more than the input length would justify, and
+     * the linear time matcher finishes the search. Both find the same
+     * match.
+     *
+     * @param engine one of {@link #REGEXP_ENGINE_DEFAULT},
+     *        {@link #REGEXP_ENGINE_BACKTRACKING} or
+     *        {@link #REGEXP_ENGINE_LINEAR}
+     * @throws IllegalArgumentException if engine is not one of these
+     * @since 1.7.12
+     */
+    public final void setRegExpEngine(int engine)
+    {
+        if (sealed) onSealedMutation();
+        if (engine < REGEXP_ENGINE_DEFAULT || engine > REGEXP_ENGINE_LINEAR) {
+            throw new IllegalArgumentException("Bad regexp engine: " + engine);
+        }
+        regExpEngine = engine;
+    }
+
     /**
      * Set the security controller for this context.
      * <p> SecurityController may only be set if it is currently null
@@ -2757,6 +2870,7 @@ public class Context
     boolean useDynamicScope;
     private int optimizationLevel;
     private int maximumInterpreterStackDepth;
+    private int regExpEngine;
     private WrapFactory wrapFactory;
     Debugger debugger;
     private Object debuggerData;
@@ -2778,6 +2892,9 @@ public class Context
     // interpreter invocations
     ObjArray previousInterpreterInvocations;
 
+    // For the interpreter to reuse the operand storage of exited frames
+    Object interpreterFramePool;
+
     // For instruction counting (interpreter only)
     int instructionCount;
     int instructionThreshold;
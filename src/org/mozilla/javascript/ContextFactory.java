@@ -301,6 +301,21 @@ public class ContextFactory
 
           case Context.FEATURE_ENABLE_XML_SECURE_PARSING:
               return true;
+
+          case Context.FEATURE_SHARED_CLASS_CACHE:
+              return false;
+
+          case Context.FEATURE_ENABLE_JAVA_MAP_ACCESS:
+              return false;
+
+          case Context.FEATURE_OMIT_JAVA_STACK_IN_THROW:
+              return false;
+
+          case Context.FEATURE_JSON_JAVA_BEANS:
+              return false;
+
+          case Context.FEATURE_ENABLE_JAVA_LIST_ACCESS:
+              return false;
         }
         // It is a bug to call the method with unknown featureIndex
         throw new IllegalArgumentException(String.valueOf(featureIndex));
@@ -27,12 +27,23 @@ public class ContinuationPending extends RuntimeException {
      * calling {@link org.mozilla.javascript.Context#executeScriptWithContinuations(Script, Scriptable)}
      * and {@link org.mozilla.javascript.Context#callFunctionWithContinuations(Callable, Scriptable, Object[])}
      * Creating subclasses allowed.
+     * <p>The exception is used for control flow only, so it does not record
+     * a Java stack trace.
      * @param continuationState Internal Continuation object
      */
     protected ContinuationPending(NativeContinuation continuationState) {
         this.continuationState = continuationState;
     }
 
+    /**
+     * Does not record the Java stack, which is expensive for deep stacks
+     * and of no use for a captured continuation.
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
     /**
      * Get continuation object. The only
      * use for this object is to be passed to
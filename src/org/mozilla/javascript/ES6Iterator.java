@@ -120,6 +120,31 @@ public abstract class ES6Iterator extends IdScriptableObject {
         return makeIteratorResult(cx, scope, done, value);
     }
 
+    /**
+     * Returns true if <code>f</code> is the built-in next method of
+     * this iterator.
+     */
+    boolean isNextMethod(Object f) {
+        if (f instanceof IdFunctionObject) {
+            IdFunctionObject idf = (IdFunctionObject) f;
+            return idf.hasTag(getTag()) && idf.methodId() == Id_next;
+        }
+        return false;
+    }
+
+    /**
+     * Same as {@link #next(Context, Scriptable)} for loops that only need
+     * the value: returns {@link UniqueTag#ITERATION_END} once the iterator
+     * is exhausted instead of creating an iterator result object.
+     */
+    Object nextValueOrEnd(Context cx, Scriptable scope) {
+        if (this.exhausted || isDone(cx, scope)) {
+            this.exhausted = true;
+            return UniqueTag.ITERATION_END;
+        }
+        return nextValue(cx, scope);
+    }
+
     protected String getTag() {
         return tag;
     }
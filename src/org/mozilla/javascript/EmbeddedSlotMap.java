@@ -32,6 +32,9 @@ public class EmbeddedSlotMap
     // initial slot array size, must be a power of 2
     private static final int INITIAL_SLOT_SIZE = 4;
 
+    // size of the slot array made by the first insert, a power of 2
+    private int initialSlotSize = INITIAL_SLOT_SIZE;
+
     private static final class Iter
         implements Iterator<ScriptableObject.Slot>
     {
@@ -61,6 +64,19 @@ public class EmbeddedSlotMap
     {
     }
 
+    /**
+     * Makes the slot array that is created by the first insert large
+     * enough to take capacity slots without growing.
+     */
+    void presize(int capacity)
+    {
+        int size = INITIAL_SLOT_SIZE;
+        while (4 * capacity > 3 * size) {
+            size <<= 1;
+        }
+        initialSlotSize = size;
+    }
+
     @Override
     public int size() {
         return count;
@@ -161,7 +177,7 @@ public class EmbeddedSlotMap
         ScriptableObject.SlotAccess accessType, ScriptableObject.Slot existingSlot) {
         if (count == 0) {
             // Always throw away old slots if any on empty insert.
-            slots = new ScriptableObject.Slot[INITIAL_SLOT_SIZE];
+            slots = new ScriptableObject.Slot[initialSlotSize];
         } else if (existingSlot != null) {
             // Re-search the slot list because it is a singly-linked list to find
             // where to replace it with a new object if necessary
@@ -251,7 +267,7 @@ public class EmbeddedSlotMap
     @Override
     public void addSlot(ScriptableObject.Slot newSlot) {
         if (slots == null) {
-            slots = new ScriptableObject.Slot[INITIAL_SLOT_SIZE];
+            slots = new ScriptableObject.Slot[initialSlotSize];
         }
         insertNewSlot(newSlot);
     }
@@ -135,8 +135,40 @@ abstract class Icode {
 
        Icode_DEBUGGER                   = -64,
 
+    // Quickened variants of generic operations. The interpreter rewrites
+    // the generic operation to one of these after observing the operand
+    // types and back to the generic operation when the types change.
+       Icode_ADD_NUM                    = -65,
+       Icode_ADD_STR                    = -66,
+       Icode_GETELEM_DENSE              = -67,
+       Icode_EQ_NUM                     = -68,
+       Icode_NE_NUM                     = -69,
+       Icode_SHEQ_NUM                   = -70,
+       Icode_SHNE_NUM                   = -71,
+       Icode_LT_NUM                     = -72,
+       Icode_LE_NUM                     = -73,
+       Icode_GT_NUM                     = -74,
+       Icode_GE_NUM                     = -75,
+
+    // Superinstructions written by the peephole pass of CodeGenerator.
+    // Only the first icode of a sequence is replaced and the icodes that
+    // follow stay in place, so a superinstruction has the span of the icode
+    // it replaces and jumps into the rest of the sequence remain valid.
+       Icode_SETVAR1_POP                = -76,
+       Icode_VAR_INC_DEC_POP            = -77,
+       Icode_GETVAR1_GETPROP            = -78,
+       Icode_PROP_AND_THIS_CALL         = -79,
+       Icode_LT_BRANCH                  = -80,
+       Icode_LE_BRANCH                  = -81,
+       Icode_GT_BRANCH                  = -82,
+       Icode_GE_BRANCH                  = -83,
+       Icode_EQ_BRANCH                  = -84,
+       Icode_NE_BRANCH                  = -85,
+       Icode_SHEQ_BRANCH                = -86,
+       Icode_SHNE_BRANCH                = -87,
+
        // Last icode
-        MIN_ICODE                       = -64;
+        MIN_ICODE                       = -87;
 
     static String bytecodeName(int bytecode)
     {
@@ -147,9 +179,17 @@ abstract class Icode {
         if (!Token.printICode) {
             return String.valueOf(bytecode);
         }
+        return bytecodeToName(bytecode);
+    }
 
+    /**
+     * Always returns a human-readable name for the bytecode, unlike
+     * {@link #bytecodeName(int)} that depends on the debugging flags.
+     */
+    static String bytecodeToName(int bytecode)
+    {
         if (validTokenCode(bytecode)) {
-            return Token.name(bytecode);
+            return Token.typeToName(bytecode);
         }
 
         switch (bytecode) {
@@ -217,6 +257,29 @@ abstract class Icode {
           case Icode_GENERATOR:        return "GENERATOR";
           case Icode_GENERATOR_END:    return "GENERATOR_END";
           case Icode_DEBUGGER:         return "DEBUGGER";
+          case Icode_ADD_NUM:          return "ADD_NUM";
+          case Icode_ADD_STR:          return "ADD_STR";
+          case Icode_GETELEM_DENSE:    return "GETELEM_DENSE";
+          case Icode_EQ_NUM:           return "EQ_NUM";
+          case Icode_NE_NUM:           return "NE_NUM";
+          case Icode_SHEQ_NUM:         return "SHEQ_NUM";
+          case Icode_SHNE_NUM:         return "SHNE_NUM";
+          case Icode_LT_NUM:           return "LT_NUM";
+          case Icode_LE_NUM:           return "LE_NUM";
+          case Icode_GT_NUM:           return "GT_NUM";
+          case Icode_GE_NUM:           return "GE_NUM";
+          case Icode_SETVAR1_POP:      return "SETVAR1_POP";
+          case Icode_VAR_INC_DEC_POP:  return "VAR_INC_DEC_POP";
+          case Icode_GETVAR1_GETPROP:  return "GETVAR1_GETPROP";
+          case Icode_PROP_AND_THIS_CALL: return "PROP_AND_THIS_CALL";
+          case Icode_LT_BRANCH:        return "LT_BRANCH";
+          case Icode_LE_BRANCH:        return "LE_BRANCH";
+          case Icode_GT_BRANCH:        return "GT_BRANCH";
+          case Icode_GE_BRANCH:        return "GE_BRANCH";
+          case Icode_EQ_BRANCH:        return "EQ_BRANCH";
+          case Icode_NE_BRANCH:        return "NE_BRANCH";
+          case Icode_SHEQ_BRANCH:      return "SHEQ_BRANCH";
+          case Icode_SHNE_BRANCH:      return "SHNE_BRANCH";
         }
 
         // icode without name
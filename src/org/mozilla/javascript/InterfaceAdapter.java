@@ -6,17 +6,44 @@
 
 package org.mozilla.javascript;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mozilla.classfile.ByteCode;
+import org.mozilla.classfile.ClassFileWriter;
 
 /**
  * Adapter to use JS function as implementation of Java interfaces with
  * single method or multiple methods with the same signature.
+ * <p>
+ * For public interfaces visible from the application class loader a class
+ * implementing the interface is generated, whose methods pass their
+ * arguments straight to {@link #invokeMethod}. Default methods of the
+ * interface call the script only if it defines a property of the same name
+ * and use the default implementation otherwise. Other interfaces are
+ * implemented with java.lang.reflect.Proxy through {@link VMBridge}.
  */
 public class InterfaceAdapter
 {
+    private static final String ADAPTER_SIGNATURE =
+        "(Lorg/mozilla/javascript/InterfaceAdapter;"
+        + "Lorg/mozilla/javascript/ContextFactory;"
+        + "Ljava/lang/Object;"
+        + "Lorg/mozilla/javascript/Scriptable;)V";
+
     private final Object proxyHelper;
 
+    // Constructor of the generated class and the methods it implements,
+    // indexed by the number passed to invokeMethod.
+    private final Constructor<?> adapterCtor;
+    private final Method[] adapterMethods;
+
     /**
      * Make glue object implementing interface cl that will
      * call the supplied JS function when called.
@@ -63,9 +90,23 @@ public class InterfaceAdapter
                     }
                 }
             }
-            adapter = new InterfaceAdapter(cf, cl);
+            adapter = new InterfaceAdapter(cf, cl, cache);
             cache.cacheInterfaceAdapter(cl, adapter);
         }
+        if (adapter.adapterCtor != null) {
+            try {
+                return adapter.adapterCtor.newInstance(
+                    adapter, cf, object, topScope);
+            } catch (InvocationTargetException ex) {
+                throw Context.throwAsScriptRuntimeEx(ex);
+            } catch (IllegalAccessException ex) {
+                // Should not happen
+                throw new IllegalStateException(ex);
+            } catch (InstantiationException ex) {
+                // Should not happen
+                throw new IllegalStateException(ex);
+            }
+        }
         return VMBridge.instance.newInterfaceProxy(
             adapter.proxyHelper, cf, adapter, object, topScope);
     }
@@ -88,11 +129,385 @@ public class InterfaceAdapter
         }
     }
 
-    private InterfaceAdapter(ContextFactory cf, Class<?> cl)
+    private InterfaceAdapter(ContextFactory cf, Class<?> cl, ClassCache cache)
+    {
+        Method[] methods = getImplementableMethods(cl);
+        Class<?> adapterClass = null;
+        if (methods != null) {
+            String adapterName = "iadapter" + cache.newClassSerialNumber();
+            byte[] code = createAdapterCode(adapterName, cl, methods);
+            try {
+                adapterClass = JavaAdapter.loadAdapterClass(adapterName, code);
+            } catch (LinkageError e) {
+                // The interface is not visible from the application class
+                // loader, use a proxy instead.
+            }
+        }
+        if (adapterClass != null && !cl.isAssignableFrom(adapterClass)) {
+            // Another class with the same name is visible from the
+            // application class loader
+            adapterClass = null;
+        }
+        if (adapterClass != null) {
+            try {
+                this.adapterCtor = adapterClass.getConstructor(
+                    InterfaceAdapter.class, ContextFactory.class,
+                    Object.class, Scriptable.class);
+            } catch (NoSuchMethodException ex) {
+                // Should not happen
+                throw new IllegalStateException(ex);
+            }
+            this.adapterMethods = methods;
+            this.proxyHelper = null;
+        } else {
+            this.adapterCtor = null;
+            this.adapterMethods = null;
+            this.proxyHelper
+                = VMBridge.instance.getInterfaceProxyHelper(
+                    cf, new Class[] { cl });
+        }
+    }
+
+    /**
+     * Returns the methods a generated class has to implement for the
+     * interface or null if it can not be implemented by a generated class.
+     */
+    private static Method[] getImplementableMethods(Class<?> cl)
+    {
+        if (!Modifier.isPublic(cl.getModifiers())) {
+            return null;
+        }
+        Map<String,Method> bySignature = new HashMap<String,Method>();
+        List<Method> list = new ArrayList<Method>();
+        for (Method method : cl.getMethods()) {
+            int mods = method.getModifiers();
+            if (Modifier.isStatic(mods)) {
+                continue;
+            }
+            String name = method.getName();
+            Class<?>[] argTypes = method.getParameterTypes();
+            if ((name.equals("hashCode") || name.equals("toString"))
+                && argTypes.length == 0)
+            {
+                // generated below
+                continue;
+            }
+            if (name.equals("equals") && argTypes.length == 1
+                && argTypes[0] == ScriptRuntime.ObjectClass)
+            {
+                // inherited from java.lang.Object
+                continue;
+            }
+            StringBuilder sb = new StringBuilder(name);
+            JavaAdapter.appendMethodSignature(argTypes, Void.TYPE, sb);
+            String key = sb.toString();
+            Method other = bySignature.get(key);
+            if (other == null) {
+                bySignature.put(key, method);
+                list.add(method);
+            } else if (other.getReturnType() != method.getReturnType()) {
+                // Covariant returns would need bridge methods
+                return null;
+            } else if (other.isDefault() && !method.isDefault()) {
+                // Redeclared as abstract, there is no default to call
+                bySignature.put(key, method);
+                list.set(list.indexOf(other), method);
+            }
+        }
+        return list.toArray(new Method[list.size()]);
+    }
+
+    private static byte[] createAdapterCode(String adapterName, Class<?> cl,
+                                            Method[] methods)
+    {
+        ClassFileWriter cfw = new ClassFileWriter(adapterName,
+                                                  "java.lang.Object",
+                                                  "<adapter>");
+        cfw.addInterface(cl.getName());
+        cfw.addField("adapter", "Lorg/mozilla/javascript/InterfaceAdapter;",
+                     (short) (ClassFileWriter.ACC_PRIVATE |
+                              ClassFileWriter.ACC_FINAL));
+        cfw.addField("factory", "Lorg/mozilla/javascript/ContextFactory;",
+                     (short) (ClassFileWriter.ACC_PRIVATE |
+                              ClassFileWriter.ACC_FINAL));
+        cfw.addField("target", "Ljava/lang/Object;",
+                     (short) (ClassFileWriter.ACC_PRIVATE |
+                              ClassFileWriter.ACC_FINAL));
+        cfw.addField("topScope", "Lorg/mozilla/javascript/Scriptable;",
+                     (short) (ClassFileWriter.ACC_PRIVATE |
+                              ClassFileWriter.ACC_FINAL));
+
+        cfw.startMethod("<init>", ADAPTER_SIGNATURE, ClassFileWriter.ACC_PUBLIC);
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.addInvoke(ByteCode.INVOKESPECIAL, "java/lang/Object", "<init>",
+                      "()V");
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.add(ByteCode.ALOAD_1);
+        cfw.add(ByteCode.PUTFIELD, adapterName, "adapter",
+                "Lorg/mozilla/javascript/InterfaceAdapter;");
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.add(ByteCode.ALOAD_2);
+        cfw.add(ByteCode.PUTFIELD, adapterName, "factory",
+                "Lorg/mozilla/javascript/ContextFactory;");
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.add(ByteCode.ALOAD_3);
+        cfw.add(ByteCode.PUTFIELD, adapterName, "target",
+                "Ljava/lang/Object;");
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.add(ByteCode.ALOAD, 4);
+        cfw.add(ByteCode.PUTFIELD, adapterName, "topScope",
+                "Lorg/mozilla/javascript/Scriptable;");
+        cfw.add(ByteCode.RETURN);
+        cfw.stopMethod((short)5);
+
+        for (int i = 0; i != methods.length; ++i) {
+            generateMethod(cfw, adapterName, cl, methods[i], i);
+        }
+
+        // Same results as the proxy based implementation
+        cfw.startMethod("hashCode", "()I", ClassFileWriter.ACC_PUBLIC);
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.add(ByteCode.GETFIELD, adapterName, "target",
+                "Ljava/lang/Object;");
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/Object", "hashCode",
+                      "()I");
+        cfw.add(ByteCode.IRETURN);
+        cfw.stopMethod((short)1);
+
+        cfw.startMethod("toString", "()Ljava/lang/String;",
+                        ClassFileWriter.ACC_PUBLIC);
+        cfw.add(ByteCode.NEW, "java/lang/StringBuilder");
+        cfw.add(ByteCode.DUP);
+        cfw.addPush("Proxy[");
+        cfw.addInvoke(ByteCode.INVOKESPECIAL, "java/lang/StringBuilder",
+                      "<init>", "(Ljava/lang/String;)V");
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.add(ByteCode.GETFIELD, adapterName, "target",
+                "Ljava/lang/Object;");
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/Object", "toString",
+                      "()Ljava/lang/String;");
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/StringBuilder",
+                      "append",
+                      "(Ljava/lang/String;)Ljava/lang/StringBuilder;");
+        cfw.addPush("]");
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/StringBuilder",
+                      "append",
+                      "(Ljava/lang/String;)Ljava/lang/StringBuilder;");
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/StringBuilder",
+                      "toString", "()Ljava/lang/String;");
+        cfw.add(ByteCode.ARETURN);
+        cfw.stopMethod((short)1);
+
+        return cfw.toByteArray();
+    }
+
+    private static void generateMethod(ClassFileWriter cfw, String adapterName,
+                                       Class<?> cl, Method method, int index)
+    {
+        Class<?>[] argTypes = method.getParameterTypes();
+        Class<?> returnType = method.getReturnType();
+        StringBuilder sb = new StringBuilder();
+        int localsEnd = JavaAdapter.appendMethodSignature(argTypes, returnType,
+                                                          sb);
+        String methodSignature = sb.toString();
+        cfw.startMethod(method.getName(), methodSignature,
+                        ClassFileWriter.ACC_PUBLIC);
+
+        if (method.isDefault()) {
+            cfw.add(ByteCode.ALOAD_0);
+            cfw.add(ByteCode.GETFIELD, adapterName, "adapter",
+                    "Lorg/mozilla/javascript/InterfaceAdapter;");
+            cfw.add(ByteCode.ALOAD_0);
+            cfw.add(ByteCode.GETFIELD, adapterName, "target",
+                    "Ljava/lang/Object;");
+            cfw.addPush(index);
+            cfw.addInvoke(ByteCode.INVOKEVIRTUAL,
+                          "org/mozilla/javascript/InterfaceAdapter",
+                          "isImplemented",
+                          "(Ljava/lang/Object;I)Z");
+            int callScript = cfw.acquireLabel();
+            cfw.add(ByteCode.IFNE, callScript);
+
+            // Same as cl.super.method(args) in Java
+            cfw.add(ByteCode.ALOAD_0);
+            int paramOffset = 1;
+            for (Class<?> argType : argTypes) {
+                paramOffset += JavaAdapter.generatePushParam(cfw, paramOffset,
+                                                             argType);
+            }
+            cfw.addInvokeSpecialInterface(cl.getName(), method.getName(),
+                                          methodSignature);
+            if (returnType == Void.TYPE) {
+                cfw.add(ByteCode.RETURN);
+            } else {
+                JavaAdapter.generatePopResult(cfw, returnType);
+            }
+            cfw.markLabel(callScript);
+        }
+
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.add(ByteCode.GETFIELD, adapterName, "adapter",
+                "Lorg/mozilla/javascript/InterfaceAdapter;");
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.add(ByteCode.GETFIELD, adapterName, "factory",
+                "Lorg/mozilla/javascript/ContextFactory;");
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.add(ByteCode.GETFIELD, adapterName, "target",
+                "Ljava/lang/Object;");
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.add(ByteCode.GETFIELD, adapterName, "topScope",
+                "Lorg/mozilla/javascript/Scriptable;");
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.addPush(index);
+
+        if (argTypes.length == 0) {
+            cfw.add(ByteCode.ACONST_NULL);
+        } else {
+            cfw.addPush(argTypes.length);
+            cfw.add(ByteCode.ANEWARRAY, "java/lang/Object");
+            int paramOffset = 1;
+            for (int i = 0; i != argTypes.length; ++i) {
+                cfw.add(ByteCode.DUP);
+                cfw.addPush(i);
+                paramOffset += generateBoxArg(cfw, paramOffset, argTypes[i]);
+                cfw.add(ByteCode.AASTORE);
+            }
+        }
+
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL,
+                      "org/mozilla/javascript/InterfaceAdapter",
+                      "invokeMethod",
+                      "(Lorg/mozilla/javascript/ContextFactory;"
+                      + "Ljava/lang/Object;"
+                      + "Lorg/mozilla/javascript/Scriptable;"
+                      + "Ljava/lang/Object;"
+                      + "I"
+                      + "[Ljava/lang/Object;"
+                      + ")Ljava/lang/Object;");
+        generateUnboxResult(cfw, returnType);
+        cfw.stopMethod((short)localsEnd);
+    }
+
+    /**
+     * Generates code to box a primitive argument the same way
+     * java.lang.reflect.Proxy does, so that the script sees the same values
+     * with either implementation.
+     */
+    private static int generateBoxArg(ClassFileWriter cfw, int paramOffset,
+                                      Class<?> argType)
     {
-        this.proxyHelper
-            = VMBridge.instance.getInterfaceProxyHelper(
-                cf, new Class[] { cl });
+        if (!argType.isPrimitive()) {
+            cfw.addALoad(paramOffset);
+            return 1;
+        }
+        if (argType == Long.TYPE) {
+            cfw.addLLoad(paramOffset);
+            cfw.addInvoke(ByteCode.INVOKESTATIC, "java/lang/Long",
+                          "valueOf", "(J)Ljava/lang/Long;");
+            return 2;
+        }
+        if (argType == Double.TYPE) {
+            cfw.addDLoad(paramOffset);
+            cfw.addInvoke(ByteCode.INVOKESTATIC, "java/lang/Double",
+                          "valueOf", "(D)Ljava/lang/Double;");
+            return 2;
+        }
+        if (argType == Float.TYPE) {
+            cfw.addFLoad(paramOffset);
+            cfw.addInvoke(ByteCode.INVOKESTATIC, "java/lang/Float",
+                          "valueOf", "(F)Ljava/lang/Float;");
+            return 1;
+        }
+        cfw.addILoad(paramOffset);
+        String wrapper = getWrapperClassName(argType);
+        cfw.addInvoke(ByteCode.INVOKESTATIC, wrapper, "valueOf",
+                      "(" + getTypeLetter(argType) + ")L" + wrapper + ";");
+        return 1;
+    }
+
+    /**
+     * Generates code to return the value left by invokeMethod, which is
+     * already converted to the boxed return type.
+     */
+    private static void generateUnboxResult(ClassFileWriter cfw,
+                                            Class<?> returnType)
+    {
+        if (returnType == Void.TYPE) {
+            cfw.add(ByteCode.POP);
+            cfw.add(ByteCode.RETURN);
+        } else if (returnType.isPrimitive()) {
+            String wrapper = getWrapperClassName(returnType);
+            char letter = getTypeLetter(returnType);
+            cfw.add(ByteCode.CHECKCAST, wrapper);
+            cfw.addInvoke(ByteCode.INVOKEVIRTUAL, wrapper,
+                          returnType.getName() + "Value", "()" + letter);
+            if (returnType == Long.TYPE) {
+                cfw.add(ByteCode.LRETURN);
+            } else if (returnType == Double.TYPE) {
+                cfw.add(ByteCode.DRETURN);
+            } else if (returnType == Float.TYPE) {
+                cfw.add(ByteCode.FRETURN);
+            } else {
+                cfw.add(ByteCode.IRETURN);
+            }
+        } else {
+            cfw.add(ByteCode.CHECKCAST, returnType.getName());
+            cfw.add(ByteCode.ARETURN);
+        }
+    }
+
+    private static String getWrapperClassName(Class<?> type)
+    {
+        if (type == Boolean.TYPE) return "java/lang/Boolean";
+        if (type == Byte.TYPE) return "java/lang/Byte";
+        if (type == Character.TYPE) return "java/lang/Character";
+        if (type == Short.TYPE) return "java/lang/Short";
+        if (type == Integer.TYPE) return "java/lang/Integer";
+        if (type == Long.TYPE) return "java/lang/Long";
+        if (type == Float.TYPE) return "java/lang/Float";
+        if (type == Double.TYPE) return "java/lang/Double";
+        throw Kit.codeBug();
+    }
+
+    private static char getTypeLetter(Class<?> type)
+    {
+        if (type == Boolean.TYPE) return 'Z';
+        if (type == Long.TYPE) return 'J';
+        return Character.toUpperCase(type.getName().charAt(0));
+    }
+
+    /**
+     * Called by the generated adapter classes before a default method of the
+     * interface. Returns true if the script implements the method, false if
+     * the default implementation should be used. A single function only
+     * implements the abstract methods.
+     */
+    public boolean isImplemented(Object target, int methodIndex)
+    {
+        if (target instanceof Callable) {
+            return false;
+        }
+        String methodName = adapterMethods[methodIndex].getName();
+        return ScriptableObject.hasProperty((Scriptable)target, methodName);
+    }
+
+    /**
+     * Called by the generated adapter classes. Uses the current Context
+     * when there is one instead of entering a new one.
+     */
+    public Object invokeMethod(ContextFactory cf,
+                               Object target,
+                               Scriptable topScope,
+                               Object thisObject,
+                               int methodIndex,
+                               Object[] args)
+    {
+        Method method = adapterMethods[methodIndex];
+        Context cx = Context.getCurrentContext();
+        if (cx != null) {
+            return invokeImpl(cx, target, topScope, thisObject, method, args);
+        }
+        return invoke(cf, target, topScope, thisObject, method, args);
     }
 
     public Object invoke(ContextFactory cf,
@@ -8,17 +8,27 @@ package org.mozilla.javascript;
 
 import static org.mozilla.javascript.UniqueTag.DOUBLE_MARK;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.mozilla.javascript.ScriptRuntime.NoSuchMethodShim;
 import org.mozilla.javascript.ast.FunctionNode;
 import org.mozilla.javascript.ast.ScriptNode;
 import org.mozilla.javascript.debug.DebugFrame;
+import org.mozilla.javascript.debug.DebuggableScript;
 
 public final class Interpreter extends Icode implements Evaluator
 {
@@ -35,12 +45,29 @@ public final class Interpreter extends Icode implements Evaluator
     //            exception local and scope local
     static final int EXCEPTION_SLOT_SIZE       = 6;
 
+    // Number of times a quickened operation may go back to its generic form
+    // before its site is left generic, so polymorphic sites stop flipping
+    private static final int MAX_DEOPTIMIZATIONS = 4;
+
+    /**
+     * System property that turns on counting of executed icode pairs. When
+     * it is set to "true", the most frequent pairs are printed to
+     * System.err when the VM exits.
+     * @see #getIcodePairStatistics(int)
+     */
+    public static final String ICODE_STATISTICS_PROPERTY = "rhino.icode.stats";
+
+    // Counts of executed icode pairs indexed by the unsigned byte values of
+    // the previous and the current icode, null when statistics are off
+    private static final AtomicLongArray icodePairCounts =
+        initIcodePairCounts();
+
     /**
      * Class to hold data corresponding to one interpreted call stack frame.
      */
     private static class CallFrame implements Cloneable, Serializable
     {
-        private static final long serialVersionUID = -2843792508994958978L;
+        private static final long serialVersionUID = -2843792508994958979L;
 
         // fields marked "final" in a comment are effectively final except when they're modified immediately after cloning.
 
@@ -49,6 +76,9 @@ public final class Interpreter extends Icode implements Evaluator
         /*final*/ int frameIndex;
         // If true indicates read-only frame that is a part of continuation
         boolean frozen;
+        // If true the stack arrays may be referenced after the frame exits
+        // and must not be returned to the frame pool
+        boolean storageEscaped;
 
         final InterpretedFunction fnOrScript;
         final InterpreterData idata;
@@ -59,9 +89,10 @@ public final class Interpreter extends Icode implements Evaluator
 // stack[emptyStackTop < i < stack.length]: stack data
 // sDbl[i]: if stack[i] is UniqueTag.DOUBLE_MARK, sDbl[i] holds the number value
 
-        /*final*/ Object[] stack;
-        /*final*/ int[] stackAttributes;
-        /*final*/ double[] sDbl;
+        // The stack arrays are written by writeObject
+        /*final*/ transient Object[] stack;
+        /*final*/ transient int[] stackAttributes;
+        /*final*/ transient double[] sDbl;
 
         final CallFrame varSource; // defaults to this unless continuation frame
         final int localShift;
@@ -70,6 +101,10 @@ public final class Interpreter extends Icode implements Evaluator
         final DebugFrame debuggerFrame;
         final boolean useActivation;
         boolean isContinuationsTopFrame;
+        // If true this frame and all its parents were already checked to
+        // run under executeScriptWithContinuations or
+        // callFunctionWithContinuations
+        boolean continuationsTopChecked;
 
         final Scriptable thisObj;
 
@@ -157,9 +192,11 @@ public final class Interpreter extends Icode implements Evaluator
 
             // Initialize args, vars, locals and stack
 
-            stack = new Object[maxFrameArray];
-            stackAttributes = new int[maxFrameArray];
-            sDbl = new double[maxFrameArray];
+            if (!takePooledStorage(cx, maxFrameArray)) {
+                stack = new Object[maxFrameArray];
+                stackAttributes = new int[maxFrameArray];
+                sDbl = new double[maxFrameArray];
+            }
 
             int varCount = idata.getParamAndVarCount();
             for (int i = 0; i < varCount; i++) {
@@ -180,6 +217,65 @@ public final class Interpreter extends Icode implements Evaluator
             }
         }
 
+        /**
+         * Reuses the stack arrays that the last exited frame at the same
+         * depth returned to the pool of the Context.
+         */
+        private boolean takePooledStorage(Context cx, int size)
+        {
+            FramePool pool = (FramePool)cx.interpreterFramePool;
+            if (pool == null || frameIndex >= pool.stacks.length) {
+                return false;
+            }
+            Object[] pooledStack = pool.stacks[frameIndex];
+            if (pooledStack == null || pooledStack.length < size) {
+                return false;
+            }
+            stack = pooledStack;
+            stackAttributes = pool.stackAttributes[frameIndex];
+            sDbl = pool.sDbls[frameIndex];
+            pool.stacks[frameIndex] = null;
+            pool.stackAttributes[frameIndex] = null;
+            pool.sDbls[frameIndex] = null;
+            return true;
+        }
+
+        /**
+         * Returns the stack arrays of an exited frame to the pool of the
+         * Context unless a continuation or a generator still refers to them.
+         * The frame must not be used after this call.
+         */
+        void releaseStorage(Context cx)
+        {
+            if (frozen || storageEscaped
+                || frameIndex >= MAX_POOLED_FRAME_DEPTH)
+            {
+                return;
+            }
+            FramePool pool = (FramePool)cx.interpreterFramePool;
+            if (pool == null) {
+                pool = new FramePool();
+                cx.interpreterFramePool = pool;
+            }
+            if (frameIndex >= pool.stacks.length) {
+                pool.grow(frameIndex + 1);
+            }
+            Object[] pooledStack = pool.stacks[frameIndex];
+            if (pooledStack != null && pooledStack.length >= stack.length) {
+                return;
+            }
+            // Pooled arrays are kept cleared so a new frame sees the same
+            // state as with freshly allocated arrays
+            Arrays.fill(stack, 0, idata.itsMaxFrameArray, null);
+            Arrays.fill(stackAttributes, 0, idata.itsMaxVars, 0);
+            pool.stacks[frameIndex] = stack;
+            pool.stackAttributes[frameIndex] = stackAttributes;
+            pool.sDbls[frameIndex] = sDbl;
+            stack = null;
+            stackAttributes = null;
+            sDbl = null;
+        }
+
         CallFrame cloneFrozen()
         {
             if (!frozen) Kit.codeBug();
@@ -192,16 +288,74 @@ public final class Interpreter extends Icode implements Evaluator
             }
 
             // clone stack but keep varSource to point to values
-            // from this frame to share variables.
-
-            copy.stack = stack.clone();
-            copy.stackAttributes = stackAttributes.clone();
-            copy.sDbl = sDbl.clone();
+            // from this frame to share variables. Only the slots up to
+            // savedStackTop are live, the rest is cleared on capture.
+
+            int length = idata.itsMaxFrameArray;
+            int used = savedStackTop + 1;
+            copy.stack = new Object[length];
+            copy.stackAttributes = new int[length];
+            copy.sDbl = new double[length];
+            System.arraycopy(stack, 0, copy.stack, 0, used);
+            System.arraycopy(stackAttributes, 0, copy.stackAttributes, 0,
+                             used);
+            System.arraycopy(sDbl, 0, copy.sDbl, 0, used);
 
             copy.frozen = false;
             return copy;
         }
 
+        /**
+         * Writes only the live part of the stack: slots above savedStackTop
+         * of a suspended frame are never read again, number values are only
+         * written for the slots holding DOUBLE_MARK and attributes only for
+         * the variables.
+         */
+        private void writeObject(ObjectOutputStream out) throws IOException
+        {
+            out.defaultWriteObject();
+            int used = (frozen || storageEscaped) ? savedStackTop + 1
+                                                  : idata.itsMaxFrameArray;
+            out.writeInt(used);
+            for (int i = 0; i != used; ++i) {
+                Object value = stack[i];
+                out.writeObject(value);
+                if (value == DOUBLE_MARK) {
+                    out.writeDouble(sDbl[i]);
+                }
+            }
+            for (int i = 0; i != idata.itsMaxVars; ++i) {
+                out.writeInt(stackAttributes[i]);
+            }
+        }
+
+        private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException
+        {
+            in.defaultReadObject();
+            int length = idata.itsMaxFrameArray;
+            int used = in.readInt();
+            if (used < 0 || used > length) {
+                throw new InvalidObjectException("Bad frame stack size");
+            }
+            stack = new Object[length];
+            stackAttributes = new int[length];
+            sDbl = new double[length];
+            for (int i = 0; i != used; ++i) {
+                Object value = in.readObject();
+                stack[i] = value;
+                if (value == DOUBLE_MARK) {
+                    sDbl[i] = in.readDouble();
+                }
+            }
+            for (int i = 0; i != idata.itsMaxVars; ++i) {
+                stackAttributes[i] = in.readInt();
+            }
+            // Restored frames are only reachable from continuations and
+            // generators, so their arrays must not go to the frame pool
+            storageEscaped = true;
+        }
+
         @Override
         public boolean equals(Object other) {
             // Overridden for semantic equality comparison. These objects
@@ -277,12 +431,31 @@ public final class Interpreter extends Icode implements Evaluator
             }
         }
 
+        private boolean liveStackEquals(CallFrame other, EqualObjectGraphs equal) {
+            // Compare up to savedStackTop only, the arrays of a frame may be
+            // longer than needed when they came from the frame pool.
+            int used = savedStackTop + 1;
+            if (used != other.savedStackTop + 1 ||
+                !equal.equalGraphs(Arrays.copyOf(stack, used),
+                                   Arrays.copyOf(other.stack, used)))
+            {
+                return false;
+            }
+            for (int i = 0; i != used; ++i) {
+                if (stack[i] == DOUBLE_MARK &&
+                    Double.compare(sDbl[i], other.sDbl[i]) != 0)
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         private boolean fieldsEqual(CallFrame other, EqualObjectGraphs equal) {
             return frameIndex == other.frameIndex &&
                     pc == other.pc &&
                     compareIdata(idata, other.idata) &&
-                    equal.equalGraphs(varSource.stack, other.varSource.stack) &&
-                    Arrays.equals(varSource.sDbl, other.varSource.sDbl) &&
+                    varSource.liveStackEquals(other.varSource, equal) &&
                     equal.equalGraphs(thisObj, other.thisObj) &&
                     equal.equalGraphs(fnOrScript, other.fnOrScript) &&
                     equal.equalGraphs(scope, other.scope);
@@ -347,7 +520,33 @@ public final class Interpreter extends Icode implements Evaluator
         }
     }
 
+    // Deeper frames allocate their stack arrays on every call
+    private static final int MAX_POOLED_FRAME_DEPTH = 1024;
+
+    /**
+     * Per-Context cache of the stack arrays of exited frames, indexed by
+     * the frame depth, so that repeated calls at the same depth do not
+     * allocate new arrays.
+     */
+    private static final class FramePool
+    {
+        Object[][] stacks = new Object[16][];
+        int[][] stackAttributes = new int[16][];
+        double[][] sDbls = new double[16][];
+
+        void grow(int minLength)
+        {
+            int length = Math.min(Math.max(stacks.length * 2, minLength),
+                                  MAX_POOLED_FRAME_DEPTH);
+            stacks = Arrays.copyOf(stacks, length);
+            stackAttributes = Arrays.copyOf(stackAttributes, length);
+            sDbls = Arrays.copyOf(sDbls, length);
+        }
+    }
+
     private static CallFrame captureFrameForGenerator(CallFrame frame) {
+      // the generator frame keeps variables in the stack of this frame
+      frame.storageEscaped = true;
       frame.frozen = true;
       CallFrame result = frame.cloneFrozen();
       frame.frozen = false;
@@ -355,6 +554,7 @@ public final class Interpreter extends Icode implements Evaluator
       // now isolate this frame from its previous context
       result.parentFrame = null;
       result.frameIndex = 0;
+      result.continuationsTopChecked = false;
 
       return result;
     }
@@ -413,7 +613,7 @@ public final class Interpreter extends Icode implements Evaluator
                                                   staticSecurityDomain);
     }
 
-    private static int getShort(byte[] iCode, int pc) {
+    static int getShort(byte[] iCode, int pc) {
         return (iCode[pc] << 8) | (iCode[pc + 1] & 0xFF);
     }
 
@@ -510,6 +710,7 @@ public final class Interpreter extends Icode implements Evaluator
                 break;
               }
               case Icode_VAR_INC_DEC :
+              case Icode_VAR_INC_DEC_POP :
               case Icode_NAME_INC_DEC :
               case Icode_PROP_INC_DEC :
               case Icode_ELEM_INC_DEC :
@@ -649,6 +850,8 @@ public final class Interpreter extends Icode implements Evaluator
               case Icode_GETVAR1:
               case Icode_SETVAR1:
               case Icode_SETCONSTVAR1:
+              case Icode_SETVAR1_POP:
+              case Icode_GETVAR1_GETPROP:
                 indexReg = iCode[pc];
                 out.println(tname+" "+indexReg);
                 ++pc;
@@ -679,7 +882,58 @@ public final class Interpreter extends Icode implements Evaluator
         out.flush();
     }
 
-    private static int bytecodeSpan(int bytecode)
+    private static AtomicLongArray initIcodePairCounts()
+    {
+        try {
+            if (!Boolean.getBoolean(ICODE_STATISTICS_PROPERTY)) {
+                return null;
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run()
+                {
+                    System.err.print(getIcodePairStatistics(50));
+                }
+            });
+        } catch (SecurityException e) {
+            return null;
+        }
+        return new AtomicLongArray(256 * 256);
+    }
+
+    /**
+     * Returns the most frequently executed pairs of icodes, one pair per
+     * line preceded by its count, or null when counting was not turned on
+     * with the {@link #ICODE_STATISTICS_PROPERTY} system property.
+     * @param limit the maximum number of pairs to report
+     */
+    public static String getIcodePairStatistics(int limit)
+    {
+        AtomicLongArray counts = icodePairCounts;
+        if (counts == null) {
+            return null;
+        }
+        // count in the high bits and the pair index in the low 16 bits
+        long[] pairs = new long[counts.length()];
+        int pairCount = 0;
+        for (int i = 0; i != counts.length(); i++) {
+            long count = counts.get(i);
+            if (count != 0) {
+                pairs[pairCount++] = (count << 16) | i;
+            }
+        }
+        Arrays.sort(pairs, 0, pairCount);
+        StringBuilder sb = new StringBuilder();
+        for (int i = pairCount - 1; i >= 0 && pairCount - i <= limit; i--) {
+            int index = (int)(pairs[i] & 0xFFFF);
+            sb.append(pairs[i] >>> 16).append('\t')
+              .append(bytecodeToName((byte)(index >> 8))).append(' ')
+              .append(bytecodeToName((byte)index)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    static int bytecodeSpan(int bytecode)
     {
         switch (bytecode) {
             case Token.THROW :
@@ -709,6 +963,7 @@ public final class Interpreter extends Icode implements Evaluator
                 return 1 + 1;
 
             case Icode_VAR_INC_DEC:
+            case Icode_VAR_INC_DEC_POP:
             case Icode_NAME_INC_DEC:
             case Icode_PROP_INC_DEC:
             case Icode_ELEM_INC_DEC:
@@ -751,6 +1006,8 @@ public final class Interpreter extends Icode implements Evaluator
             case Icode_GETVAR1:
             case Icode_SETVAR1:
             case Icode_SETCONSTVAR1:
+            case Icode_SETVAR1_POP:
+            case Icode_GETVAR1_GETPROP:
                 // byte var index
                 return 1 + 1;
 
@@ -782,6 +1039,57 @@ public final class Interpreter extends Icode implements Evaluator
         return presentLines.getKeys();
     }
 
+    /**
+     * Returns a digest of the interpreted code of a script or function,
+     * its string and number tables and the sizes of its frames. Quickened
+     * operations count as their generic form, so the digest does not depend
+     * on how often the code ran. Serialized frames use it to check that they
+     * are restored with the code they were saved from.
+     * @throws IllegalArgumentException if the code is not interpreted
+     */
+    public static byte[] getCodeDigest(DebuggableScript code)
+    {
+        if (!(code instanceof InterpreterData)) {
+            throw new IllegalArgumentException();
+        }
+        InterpreterData idata = (InterpreterData)code;
+        byte[] iCode = idata.itsICode.clone();
+        for (int pc = 0; pc != iCode.length;) {
+            int bytecode = iCode[pc];
+            iCode[pc] = (byte)genericOp(bytecode);
+            pc += bytecodeSpan(bytecode);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.write(iCode);
+            out.writeInt(idata.itsMaxVars);
+            out.writeInt(idata.itsMaxLocals);
+            out.writeInt(idata.itsMaxStack);
+            out.writeInt(idata.itsMaxFrameArray);
+            out.writeInt(idata.argCount);
+            if (idata.itsStringTable != null) {
+                for (String str : idata.itsStringTable) {
+                    out.writeInt(str.length());
+                    out.writeChars(str);
+                }
+            }
+            if (idata.itsDoubleTable != null) {
+                for (double d : idata.itsDoubleTable) {
+                    out.writeDouble(d);
+                }
+            }
+            return MessageDigest.getInstance("SHA-1").digest(
+                bytes.toByteArray());
+        } catch (IOException ex) {
+            // Should not happen
+            throw new IllegalStateException(ex);
+        } catch (NoSuchAlgorithmException ex) {
+            // Should not happen
+            throw new IllegalStateException(ex);
+        }
+    }
+
     @Override
     public void captureStackInfo(RhinoException ex)
     {
@@ -1016,7 +1324,6 @@ public final class Interpreter extends Icode implements Evaluator
         }
         int operation;
         Object value;
-        RuntimeException returnedException;
     }
 
     public static Object resumeGenerator(Context cx,
@@ -1037,10 +1344,7 @@ public final class Interpreter extends Icode implements Evaluator
           }
           return Undefined.instance;
       }
-      Object result = interpretLoop(cx, frame, generatorState);
-      if (generatorState.returnedException != null)
-          throw generatorState.returnedException;
-      return result;
+      return interpretLoop(cx, frame, generatorState);
     }
 
     public static Object restartContinuation(NativeContinuation c, Context cx,
@@ -1088,6 +1392,7 @@ public final class Interpreter extends Icode implements Evaluator
 
         String stringReg = null;
         int indexReg = -1;
+        int previousOp = Integer.MIN_VALUE;
 
         if (cx.lastInterpreterFrame != null) {
             // save the top frame from the previous interpretLoop
@@ -1162,6 +1467,13 @@ public final class Interpreter extends Icode implements Evaluator
                     // pass the instruction start when it searches the
                     // exception handler
                     int op = iCode[frame.pc++];
+                    if (icodePairCounts != null) {
+                        if (previousOp != Integer.MIN_VALUE) {
+                            icodePairCounts.incrementAndGet(
+                                ((previousOp & 0xFF) << 8) | (op & 0xFF));
+                        }
+                        previousOp = op;
+                    }
                     jumplessRun: {
 
     // Back indent to ease implementation reading
@@ -1193,12 +1505,9 @@ switch (op) {
         continue Loop;
     }
     case Icode_GENERATOR_END: {
-      // throw StopIteration
+      // return to NativeGenerator, which throws StopIteration if needed
       frame.frozen = true;
-      int sourceLine = getIndex(iCode, frame.pc);
-      generatorState.returnedException = new JavaScriptException(
-          NativeIterator.getStopIterationObject(frame.scope),
-          frame.idata.itsSourceFile, sourceLine);
+      frame.result = UniqueTag.ITERATION_END;
       break Loop;
     }
     case Token.THROW: {
@@ -1221,30 +1530,127 @@ switch (op) {
     case Token.LE :
     case Token.GT :
     case Token.LT : {
+        if (stack[stackTop] == DBL_MRK && stack[stackTop - 1] == DBL_MRK) {
+            quicken(frame.idata, frame.pc - 1, quickenedOp(op));
+        }
         stackTop = doCompare(frame, op, stack, sDbl, stackTop);
         continue Loop;
     }
+    case Icode_LT_NUM :
+        if (stack[stackTop] == DBL_MRK && stack[stackTop - 1] == DBL_MRK) {
+            --stackTop;
+            stack[stackTop] = ScriptRuntime.wrapBoolean(
+                                  sDbl[stackTop] < sDbl[stackTop + 1]);
+            continue Loop;
+        }
+        op = deoptimize(frame.idata, frame.pc - 1);
+        stackTop = doCompare(frame, op, stack, sDbl, stackTop);
+        continue Loop;
+    case Icode_LE_NUM :
+        if (stack[stackTop] == DBL_MRK && stack[stackTop - 1] == DBL_MRK) {
+            --stackTop;
+            stack[stackTop] = ScriptRuntime.wrapBoolean(
+                                  sDbl[stackTop] <= sDbl[stackTop + 1]);
+            continue Loop;
+        }
+        op = deoptimize(frame.idata, frame.pc - 1);
+        stackTop = doCompare(frame, op, stack, sDbl, stackTop);
+        continue Loop;
+    case Icode_GT_NUM :
+        if (stack[stackTop] == DBL_MRK && stack[stackTop - 1] == DBL_MRK) {
+            --stackTop;
+            stack[stackTop] = ScriptRuntime.wrapBoolean(
+                                  sDbl[stackTop] > sDbl[stackTop + 1]);
+            continue Loop;
+        }
+        op = deoptimize(frame.idata, frame.pc - 1);
+        stackTop = doCompare(frame, op, stack, sDbl, stackTop);
+        continue Loop;
+    case Icode_GE_NUM :
+        if (stack[stackTop] == DBL_MRK && stack[stackTop - 1] == DBL_MRK) {
+            --stackTop;
+            stack[stackTop] = ScriptRuntime.wrapBoolean(
+                                  sDbl[stackTop] >= sDbl[stackTop + 1]);
+            continue Loop;
+        }
+        op = deoptimize(frame.idata, frame.pc - 1);
+        stackTop = doCompare(frame, op, stack, sDbl, stackTop);
+        continue Loop;
     case Token.IN :
     case Token.INSTANCEOF : {
         stackTop = doInOrInstanceof(cx, op, stack, sDbl, stackTop);
         continue Loop;
     }
+    case Icode_EQ_NUM :
+    case Icode_NE_NUM :
+        if (stack[stackTop] == DBL_MRK && stack[stackTop - 1] == DBL_MRK) {
+            --stackTop;
+            boolean valBln = (sDbl[stackTop] == sDbl[stackTop + 1]);
+            valBln ^= (op == Icode_NE_NUM);
+            stack[stackTop] = ScriptRuntime.wrapBoolean(valBln);
+            continue Loop;
+        }
+        op = deoptimize(frame.idata, frame.pc - 1);
+        --stackTop;
+        stack[stackTop] = ScriptRuntime.wrapBoolean(
+            doEquals(stack, sDbl, stackTop) != (op == Token.NE));
+        continue Loop;
     case Token.EQ :
     case Token.NE : {
+        if (stack[stackTop] == DBL_MRK && stack[stackTop - 1] == DBL_MRK) {
+            quicken(frame.idata, frame.pc - 1, quickenedOp(op));
+        }
         --stackTop;
         boolean valBln = doEquals(stack, sDbl, stackTop);
         valBln ^= (op == Token.NE);
         stack[stackTop] = ScriptRuntime.wrapBoolean(valBln);
         continue Loop;
     }
+    case Icode_SHEQ_NUM :
+    case Icode_SHNE_NUM :
+        if (stack[stackTop] == DBL_MRK && stack[stackTop - 1] == DBL_MRK) {
+            --stackTop;
+            boolean valBln = (sDbl[stackTop] == sDbl[stackTop + 1]);
+            valBln ^= (op == Icode_SHNE_NUM);
+            stack[stackTop] = ScriptRuntime.wrapBoolean(valBln);
+            continue Loop;
+        }
+        op = deoptimize(frame.idata, frame.pc - 1);
+        --stackTop;
+        stack[stackTop] = ScriptRuntime.wrapBoolean(
+            doShallowEquals(stack, sDbl, stackTop) != (op == Token.SHNE));
+        continue Loop;
     case Token.SHEQ :
     case Token.SHNE : {
+        if (stack[stackTop] == DBL_MRK && stack[stackTop - 1] == DBL_MRK) {
+            quicken(frame.idata, frame.pc - 1, quickenedOp(op));
+        }
         --stackTop;
         boolean valBln = doShallowEquals(stack, sDbl, stackTop);
         valBln ^= (op == Token.SHNE);
         stack[stackTop] = ScriptRuntime.wrapBoolean(valBln);
         continue Loop;
     }
+    case Icode_LT_BRANCH :
+    case Icode_LE_BRANCH :
+    case Icode_GT_BRANCH :
+    case Icode_GE_BRANCH :
+    case Icode_EQ_BRANCH :
+    case Icode_NE_BRANCH :
+    case Icode_SHEQ_BRANCH :
+    case Icode_SHNE_BRANCH : {
+        // Comparison followed by IFEQ or IFNE: branch on the result
+        // without wrapping it into Boolean
+        --stackTop;
+        boolean valBln = doBranchCompare(frame, op, stack, sDbl, stackTop);
+        --stackTop;
+        if (valBln != (iCode[frame.pc] == Token.IFEQ)) {
+            frame.pc += 3;
+            continue Loop;
+        }
+        ++frame.pc;
+        break jumplessRun;
+    }
     case Token.IFNE :
         if (stack_boolean(frame, stackTop--)) {
             frame.pc += 2;
@@ -1375,10 +1781,42 @@ switch (op) {
         sDbl[stackTop] = rDbl;
         continue Loop;
     }
-    case Token.ADD :
+    case Icode_ADD_NUM :
+        if (stack[stackTop] == DBL_MRK && stack[stackTop - 1] == DBL_MRK) {
+            --stackTop;
+            sDbl[stackTop] += sDbl[stackTop + 1];
+            continue Loop;
+        }
+        deoptimize(frame.idata, frame.pc - 1);
+        --stackTop;
+        doAdd(stack, sDbl, stackTop, cx);
+        continue Loop;
+    case Icode_ADD_STR : {
+        Object rhs = stack[stackTop];
+        Object lhs = stack[stackTop - 1];
+        if (lhs instanceof CharSequence && rhs instanceof CharSequence) {
+            --stackTop;
+            stack[stackTop] = new ConsString((CharSequence)lhs,
+                                             (CharSequence)rhs);
+            continue Loop;
+        }
+        deoptimize(frame.idata, frame.pc - 1);
         --stackTop;
         doAdd(stack, sDbl, stackTop, cx);
         continue Loop;
+    }
+    case Token.ADD : {
+        Object rhs = stack[stackTop];
+        Object lhs = stack[stackTop - 1];
+        if (rhs == DBL_MRK && lhs == DBL_MRK) {
+            quicken(frame.idata, frame.pc - 1, Icode_ADD_NUM);
+        } else if (lhs instanceof CharSequence && rhs instanceof CharSequence) {
+            quicken(frame.idata, frame.pc - 1, Icode_ADD_STR);
+        }
+        --stackTop;
+        doAdd(stack, sDbl, stackTop, cx);
+        continue Loop;
+    }
     case Token.SUB :
     case Token.MUL :
     case Token.DIV :
@@ -1433,6 +1871,25 @@ switch (op) {
                                                       cx, frame.scope);
         continue Loop;
     }
+    case Icode_GETVAR1_GETPROP : {
+        // GETVAR1 followed by REG_STR_C0..C3 or REG_STR1 and GETPROP
+        indexReg = iCode[frame.pc];
+        stackTop = doGetVar(frame, stack, sDbl, stackTop, vars, varDbls,
+                            indexReg);
+        int strOp = iCode[frame.pc + 1];
+        if (strOp == Icode_REG_STR1) {
+            stringReg = strings[0xFF & iCode[frame.pc + 2]];
+            frame.pc += 4;
+        } else {
+            stringReg = strings[Icode_REG_STR_C0 - strOp];
+            frame.pc += 3;
+        }
+        Object lhs = stack[stackTop];
+        if (lhs == DBL_MRK) lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
+        stack[stackTop] = ScriptRuntime.getObjectProp(lhs, stringReg,
+                                                      cx, frame.scope);
+        continue Loop;
+    }
     case Token.SETPROP : {
         Object rhs = stack[stackTop];
         if (rhs == DBL_MRK) rhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
@@ -1452,7 +1909,34 @@ switch (op) {
         ++frame.pc;
         continue Loop;
     }
+    case Icode_GETELEM_DENSE : {
+        Object lhs = stack[stackTop - 1];
+        if (stack[stackTop] == DBL_MRK && lhs != null
+            && lhs.getClass() == NativeArray.class)
+        {
+            double d = sDbl[stackTop];
+            int index = (int)d;
+            if (index == d) {
+                Object value = ((NativeArray)lhs).getDenseElement(index);
+                if (value != Scriptable.NOT_FOUND) {
+                    stack[--stackTop] = value;
+                    continue Loop;
+                }
+            }
+            // hole or index outside of the dense part, keep the quickened
+            // operation as the type guess was right
+        } else {
+            deoptimize(frame.idata, frame.pc - 1);
+        }
+        stackTop = doGetElem(cx, frame, stack, sDbl, stackTop);
+        continue Loop;
+    }
     case Token.GETELEM : {
+        if (stack[stackTop] == DBL_MRK && stack[stackTop - 1] != null
+            && stack[stackTop - 1].getClass() == NativeArray.class)
+        {
+            quicken(frame.idata, frame.pc - 1, Icode_GETELEM_DENSE);
+        }
         stackTop = doGetElem(cx, frame, stack, sDbl, stackTop);
         continue Loop;
     }
@@ -1542,9 +2026,22 @@ switch (op) {
         stackTop = doCallSpecial(cx, frame, stack, sDbl, stackTop, iCode, indexReg);
         continue Loop;
     }
+    case Icode_PROP_AND_THIS_CALL :
     case Token.CALL :
     case Icode_TAIL_CALL :
     case Token.REF_CALL : {
+        if (op == Icode_PROP_AND_THIS_CALL) {
+            // PROP_AND_THIS followed by REG_IND_C0 and CALL or TAIL_CALL
+            Object obj = stack[stackTop];
+            if (obj == DBL_MRK) obj = ScriptRuntime.wrapNumber(sDbl[stackTop]);
+            stack[stackTop] = ScriptRuntime.getPropFunctionAndThis(obj,
+                                  stringReg, cx, frame.scope);
+            ++stackTop;
+            stack[stackTop] = ScriptRuntime.lastStoredScriptable(cx);
+            indexReg = 0;
+            op = iCode[frame.pc + 1];
+            frame.pc += 2;
+        }
         if (instructionCounting) {
             cx.instructionCount += INVOCATION_COST;
         }
@@ -1597,6 +2094,10 @@ switch (op) {
                 if (op != Icode_TAIL_CALL) {
                     frame.savedStackTop = stackTop;
                     frame.savedCallOp = op;
+                } else {
+                    // the arguments were copied from the stack of the
+                    // current frame, so its arrays can be reused now
+                    frame.releaseStorage(cx);
                 }
                 frame = calleeFrame;
                 continue StateLoop;
@@ -1764,6 +2265,15 @@ switch (op) {
         stackTop = doSetVar(frame, stack, sDbl, stackTop, vars, varDbls,
                             varAttributes, indexReg);
         continue Loop;
+    case Icode_SETVAR1_POP :
+        // SETVAR1 followed by POP
+        indexReg = iCode[frame.pc];
+        frame.pc += 2;
+        stackTop = doSetVar(frame, stack, sDbl, stackTop, vars, varDbls,
+                            varAttributes, indexReg);
+        stack[stackTop] = null;
+        stackTop--;
+        continue Loop;
     case Icode_GETVAR1:
         indexReg = iCode[frame.pc++];
         // fallthrough
@@ -1775,6 +2285,15 @@ switch (op) {
                                vars, varDbls, varAttributes, indexReg);
         continue Loop;
     }
+    case Icode_VAR_INC_DEC_POP : {
+        // VAR_INC_DEC followed by POP
+        stackTop = doVarIncDec(cx, frame, stack, sDbl, stackTop,
+                               vars, varDbls, varAttributes, indexReg);
+        ++frame.pc;
+        stack[stackTop] = null;
+        stackTop--;
+        continue Loop;
+    }
     case Icode_ZERO :
         ++stackTop;
         stack[stackTop] = DBL_MRK;
@@ -2113,6 +2632,7 @@ switch (op) {
                 exitFrame(cx, frame, null);
                 interpreterResult = frame.result;
                 interpreterResultDbl = frame.resultDbl;
+                frame.releaseStorage(cx);
                 if (frame.parentFrame != null) {
                     frame = frame.parentFrame;
                     if (frame.frozen) {
@@ -2225,6 +2745,7 @@ switch (op) {
                 // to parent and try to look there
 
                 exitFrame(cx, frame, throwable);
+                frame.releaseStorage(cx);
 
                 frame = frame.parentFrame;
                 if (frame == null) { break; }
@@ -2303,6 +2824,58 @@ switch (op) {
     private static int doCompare(CallFrame frame, int op, Object[] stack,
                                  double[] sDbl, int stackTop) {
         --stackTop;
+        boolean valBln = compare(frame, op, stack, sDbl, stackTop);
+        stack[stackTop] = ScriptRuntime.wrapBoolean(valBln);
+        return stackTop;
+    }
+
+    /**
+     * Evaluates the comparison of a *_BRANCH superinstruction with the left
+     * operand at stackTop and the right operand at stackTop + 1.
+     */
+    private static boolean doBranchCompare(CallFrame frame, int op,
+                                           Object[] stack, double[] sDbl,
+                                           int stackTop) {
+        if (stack[stackTop] == DOUBLE_MARK
+            && stack[stackTop + 1] == DOUBLE_MARK)
+        {
+            double lDbl = sDbl[stackTop];
+            double rDbl = sDbl[stackTop + 1];
+            switch (op) {
+              case Icode_LT_BRANCH:   return lDbl < rDbl;
+              case Icode_LE_BRANCH:   return lDbl <= rDbl;
+              case Icode_GT_BRANCH:   return lDbl > rDbl;
+              case Icode_GE_BRANCH:   return lDbl >= rDbl;
+              case Icode_EQ_BRANCH:
+              case Icode_SHEQ_BRANCH: return lDbl == rDbl;
+              case Icode_NE_BRANCH:
+              case Icode_SHNE_BRANCH: return lDbl != rDbl;
+            }
+            throw Kit.codeBug();
+        }
+        switch (op) {
+          case Icode_LT_BRANCH:
+            return compare(frame, Token.LT, stack, sDbl, stackTop);
+          case Icode_LE_BRANCH:
+            return compare(frame, Token.LE, stack, sDbl, stackTop);
+          case Icode_GT_BRANCH:
+            return compare(frame, Token.GT, stack, sDbl, stackTop);
+          case Icode_GE_BRANCH:
+            return compare(frame, Token.GE, stack, sDbl, stackTop);
+          case Icode_EQ_BRANCH:
+            return doEquals(stack, sDbl, stackTop);
+          case Icode_NE_BRANCH:
+            return !doEquals(stack, sDbl, stackTop);
+          case Icode_SHEQ_BRANCH:
+            return doShallowEquals(stack, sDbl, stackTop);
+          case Icode_SHNE_BRANCH:
+            return !doShallowEquals(stack, sDbl, stackTop);
+        }
+        throw Kit.codeBug();
+    }
+
+    private static boolean compare(CallFrame frame, int op, Object[] stack,
+                                   double[] sDbl, int stackTop) {
         Object rhs = stack[stackTop + 1];
         Object lhs = stack[stackTop];
         boolean valBln;
@@ -2354,8 +2927,7 @@ switch (op) {
                     throw Kit.codeBug();
             }
         }
-        stack[stackTop] = ScriptRuntime.wrapBoolean(valBln);
-        return stackTop;
+        return valBln;
     }
 
     private static int doBitOp(CallFrame frame, int op, Object[] stack,
@@ -2396,6 +2968,82 @@ switch (op) {
         return stackTop;
     }
 
+    /**
+     * Returns the quickened variant of a generic comparison that is used
+     * once both operands were seen to be numbers.
+     */
+    private static int quickenedOp(int op)
+    {
+        switch (op) {
+          case Token.EQ:   return Icode_EQ_NUM;
+          case Token.NE:   return Icode_NE_NUM;
+          case Token.SHEQ: return Icode_SHEQ_NUM;
+          case Token.SHNE: return Icode_SHNE_NUM;
+          case Token.LT:   return Icode_LT_NUM;
+          case Token.LE:   return Icode_LE_NUM;
+          case Token.GT:   return Icode_GT_NUM;
+          case Token.GE:   return Icode_GE_NUM;
+        }
+        throw Kit.codeBug();
+    }
+
+    /**
+     * Rewrites the generic operation at pc to its quickened variant op,
+     * unless the site already went back to the generic form
+     * MAX_DEOPTIMIZATIONS times.
+     */
+    private static void quicken(InterpreterData idata, int pc, int op)
+    {
+        byte[] counts = idata.itsDeoptCounts;
+        if (counts == null || counts[pc] < MAX_DEOPTIMIZATIONS) {
+            idata.itsICode[pc] = (byte)op;
+        }
+    }
+
+    /**
+     * Rewrites the quickened operation at pc back to its generic form
+     * after its guard failed, counts that for the site and returns the
+     * generic operation.
+     */
+    private static int deoptimize(InterpreterData idata, int pc)
+    {
+        byte[] iCode = idata.itsICode;
+        byte[] counts = idata.itsDeoptCounts;
+        if (counts == null) {
+            counts = new byte[iCode.length];
+            idata.itsDeoptCounts = counts;
+        }
+        if (counts[pc] < MAX_DEOPTIMIZATIONS) {
+            ++counts[pc];
+        }
+        int op = genericOp(iCode[pc]);
+        if (op == iCode[pc]) throw Kit.codeBug();
+        iCode[pc] = (byte)op;
+        return op;
+    }
+
+    /**
+     * Returns the generic form of a quickened operation, other operations
+     * unchanged.
+     */
+    private static int genericOp(int op)
+    {
+        switch (op) {
+          case Icode_ADD_NUM:
+          case Icode_ADD_STR:  return Token.ADD;
+          case Icode_GETELEM_DENSE: return Token.GETELEM;
+          case Icode_EQ_NUM:   return Token.EQ;
+          case Icode_NE_NUM:   return Token.NE;
+          case Icode_SHEQ_NUM: return Token.SHEQ;
+          case Icode_SHNE_NUM: return Token.SHNE;
+          case Icode_LT_NUM:   return Token.LT;
+          case Icode_LE_NUM:   return Token.LE;
+          case Icode_GT_NUM:   return Token.GT;
+          case Icode_GE_NUM:   return Token.GE;
+        }
+        return op;
+    }
+
     private static int doGetElem(Context cx, CallFrame frame, Object[] stack,
                                  double[] sDbl, int stackTop) {
         --stackTop;
@@ -3043,17 +3691,14 @@ switch (op) {
         ScriptRuntime.setObjectProtoAndParent(
             c, ScriptRuntime.getTopCallScope(cx));
 
-        // Make sure that all frames are frozen
+        // Make sure that all frames are frozen. Frames frozen by an earlier
+        // capture are shared as is, so only the frames entered since then
+        // are visited here and nothing is copied until a frame is resumed.
         CallFrame x = frame;
-        CallFrame outermost = frame;
         while (x != null && !x.frozen) {
             x.frozen = true;
             // Allow to GC unused stack space
-            for (int i = x.savedStackTop + 1; i != x.stack.length; ++i) {
-                // Allow to GC unused stack space
-                x.stack[i] = null;
-                x.stackAttributes[i] = ScriptableObject.EMPTY;
-            }
+            Arrays.fill(x.stack, x.savedStackTop + 1, x.stack.length, null);
             if (x.savedCallOp == Token.CALL) {
                 // the call will always overwrite the stack top with the result
                 x.stack[x.savedStackTop] = null;
@@ -3063,20 +3708,29 @@ switch (op) {
                 // object so it shall not be cleared: see comments in
                 // setCallResult
             }
-            outermost = x;
             x = x.parentFrame;
         }
 
         if (requireContinuationsTopFrame) {
-            while (outermost.parentFrame != null)
+            CallFrame outermost = frame;
+            while (!outermost.continuationsTopChecked
+                   && outermost.parentFrame != null)
+            {
                 outermost = outermost.parentFrame;
+            }
 
-            if (!outermost.isContinuationsTopFrame) {
+            if (!outermost.continuationsTopChecked
+                && !outermost.isContinuationsTopFrame)
+            {
                 throw new IllegalStateException("Cannot capture continuation " +
                         "from JavaScript code not called directly by " +
                         "executeScriptWithContinuations or " +
                         "callFunctionWithContinuations");
             }
+            for (x = frame; x != outermost; x = x.parentFrame) {
+                x.continuationsTopChecked = true;
+            }
+            outermost.continuationsTopChecked = true;
         }
 
         c.initImplementation(frame);
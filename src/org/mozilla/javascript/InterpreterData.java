@@ -56,6 +56,9 @@ final class InterpreterData implements Serializable, DebuggableScript
     Object[] itsRegExpLiterals;
 
     byte[] itsICode;
+    // Number of times the quickened operation at each pc of itsICode went
+    // back to its generic form, allocated when that first happens
+    transient byte[] itsDeoptCounts;
 
     int[] itsExceptionTable;
 
@@ -6,7 +6,11 @@
 
 package org.mozilla.javascript;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.lang.reflect.Constructor;
@@ -15,9 +19,12 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.ProtectionDomain;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 
@@ -35,6 +42,7 @@ public final class JavaAdapter implements IdFunctionCall
         Class<?> superClass;
         Class<?>[] interfaces;
         ObjToIntMap names;
+        private String className;
 
         JavaAdapterSignature(Class<?> superClass, Class<?>[] interfaces,
                              ObjToIntMap names)
@@ -76,8 +84,108 @@ public final class JavaAdapter implements IdFunctionCall
         {
             return (superClass.hashCode() + Arrays.hashCode(interfaces)) ^ names.size();
         }
+
+        /**
+         * Returns a class name that depends only on the super class, the
+         * interfaces, the members of both that the adapter is generated
+         * from and the function names and arities, so the same adapter
+         * class can be found again by a later JVM, but not once one of
+         * the classes has changed.
+         */
+        String getClassName()
+        {
+            if (className == null) {
+                className = computeClassName();
+            }
+            return className;
+        }
+
+        private String computeClassName()
+        {
+            StringBuilder sb = new StringBuilder();
+            sb.append(ADAPTER_CODE_VERSION).append(';');
+            sb.append(superClass.getName()).append(';');
+            appendMembers(sb, superClass, true);
+            for (Class<?> intf : interfaces) {
+                sb.append(intf.getName()).append(';');
+                appendMembers(sb, intf, false);
+            }
+            sb.append(';');
+            String[] keys = new String[names.size()];
+            names.getKeys(keys, 0);
+            Arrays.sort(keys);
+            for (String key : keys) {
+                sb.append(key).append('/').append(names.get(key, 0))
+                  .append(',');
+            }
+            byte[] digest;
+            try {
+                MessageDigest md = MessageDigest.getInstance("SHA-1");
+                digest = md.digest(sb.toString().getBytes("UTF-8"));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            StringBuilder name = new StringBuilder("adapter$");
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16));
+                name.append(Character.forDigit(b & 0xF, 16));
+            }
+            return name.toString();
+        }
+
+        /**
+         * Appends the signatures of the constructors and methods of c that
+         * {@link #createAdapterCode} looks at, in sorted order.
+         */
+        private static void appendMembers(StringBuilder sb, Class<?> c,
+                                          boolean isSuperClass)
+        {
+            ArrayList<String> members = new ArrayList<String>();
+            if (isSuperClass) {
+                for (Constructor<?> ctor : c.getDeclaredConstructors()) {
+                    int mod = ctor.getModifiers();
+                    if (Modifier.isPublic(mod) || Modifier.isProtected(mod)) {
+                        StringBuilder member = new StringBuilder("<init>");
+                        appendMethodSignature(ctor.getParameterTypes(),
+                                              Void.TYPE, member);
+                        members.add(member.toString());
+                    }
+                }
+            }
+            Method[] methods = isSuperClass ? getOverridableMethods(c)
+                                            : c.getMethods();
+            for (Method method : methods) {
+                StringBuilder member = new StringBuilder(method.getName());
+                appendMethodSignature(method.getParameterTypes(),
+                                      method.getReturnType(), member);
+                member.append('/').append(method.getModifiers()
+                    & (Modifier.ABSTRACT | Modifier.STATIC | Modifier.FINAL));
+                members.add(member.toString());
+            }
+            Collections.sort(members);
+            for (String member : members) {
+                sb.append(member).append(',');
+            }
+            sb.append(';');
+        }
     }
 
+    /**
+     * Bumped whenever {@link #createAdapterCode} changes the shape of the
+     * generated classes so that stale prebuilt or cached adapters are
+     * not picked up.
+     */
+    private static final int ADAPTER_CODE_VERSION = 1;
+
+    /**
+     * System property naming a directory in which generated adapter classes
+     * are stored and from which they are loaded by later runs.
+     */
+    public static final String ADAPTER_CACHE_DIR_PROPERTY =
+        "rhino.adapter.cache.dir";
+
     public static void init(Context cx, Scriptable scope, boolean sealed)
     {
         JavaAdapter obj = new JavaAdapter();
@@ -339,11 +447,18 @@ public final class JavaAdapter implements IdFunctionCall
         sig = new JavaAdapterSignature(superClass, interfaces, names);
         Class<?> adapterClass = generated.get(sig);
         if (adapterClass == null) {
-            String adapterName = "adapter" + cache.newClassSerialNumber();
-            byte[] code = createAdapterCode(names, adapterName,
-                                            superClass, interfaces, null);
-
-            adapterClass = loadAdapterClass(adapterName, code);
+            adapterClass = loadPrebuiltAdapterClass(sig);
+            if (adapterClass == null) {
+                File cacheDir = getAdapterCacheDirectory();
+                if (cacheDir != null) {
+                    adapterClass = loadCachedAdapterClass(cacheDir, sig);
+                } else {
+                    String adapterName = "adapter" + cache.newClassSerialNumber();
+                    byte[] code = createAdapterCode(names, adapterName,
+                                                    superClass, interfaces, null);
+                    adapterClass = loadAdapterClass(adapterName, code);
+                }
+            }
             if (cache.isCachingEnabled()) {
                 generated.put(sig, adapterClass);
             }
@@ -351,6 +466,135 @@ public final class JavaAdapter implements IdFunctionCall
         return adapterClass;
     }
 
+    /**
+     * Returns the name of the class that {@link #createAdapterCode} should
+     * generate so that the adapter for the given super class, interfaces
+     * and function names is found on the class path instead of being
+     * generated at runtime. Used by the jsc tool to prebuild adapters.
+     *
+     * @param superClass the class to extend, java.lang.Object for
+     *        interface-only adapters
+     * @param interfaces the interfaces to implement in the order they are
+     *        given to the JavaAdapter constructor
+     * @param functionNames map from the function names of the
+     *        implementation object to their arities
+     */
+    public static String getAdapterClassName(Class<?> superClass,
+                                             Class<?>[] interfaces,
+                                             ObjToIntMap functionNames)
+    {
+        return new JavaAdapterSignature(superClass, interfaces,
+                                        functionNames).getClassName();
+    }
+
+    private static Class<?> loadPrebuiltAdapterClass(JavaAdapterSignature sig)
+    {
+        ClassLoader loader;
+        Context cx = Context.getCurrentContext();
+        if (cx != null) {
+            loader = cx.getApplicationClassLoader();
+        } else {
+            loader = JavaAdapter.class.getClassLoader();
+        }
+        Class<?> c;
+        try {
+            c = Class.forName(sig.getClassName(), true, loader);
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+        return isAdapterFor(c, sig) ? c : null;
+    }
+
+    private static boolean isAdapterFor(Class<?> c, JavaAdapterSignature sig)
+    {
+        // The prebuilt class may have been linked against a different copy
+        // of the super class or the interfaces; such a class can not be used.
+        return c.getSuperclass() == sig.superClass
+            && Arrays.equals(c.getInterfaces(), sig.interfaces);
+    }
+
+    private static File getAdapterCacheDirectory()
+    {
+        String dir;
+        try {
+            dir = System.getProperty(ADAPTER_CACHE_DIR_PROPERTY);
+        } catch (SecurityException e) {
+            return null;
+        }
+        return dir == null || dir.length() == 0 ? null : new File(dir);
+    }
+
+    private static Class<?> loadCachedAdapterClass(File cacheDir,
+                                                   JavaAdapterSignature sig)
+    {
+        String adapterName = sig.getClassName();
+        File file = new File(cacheDir, adapterName + ".class");
+        byte[] code = readClassFile(file);
+        if (code != null) {
+            try {
+                Class<?> c = loadAdapterClass(adapterName, code);
+                if (isAdapterFor(c, sig)) {
+                    return c;
+                }
+            } catch (LinkageError e) {
+                // Corrupt or incompatible file, regenerate it below
+            }
+        }
+        code = createAdapterCode(sig.names, adapterName, sig.superClass,
+                                 sig.interfaces, null);
+        writeClassFile(file, code);
+        return loadAdapterClass(adapterName, code);
+    }
+
+    private static byte[] readClassFile(File file)
+    {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                return Kit.readStream(in, (int) file.length() + 1);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeClassFile(File file, byte[] code)
+    {
+        // The cache is only an optimization, so failures to store the class
+        // are ignored. Write to a temporary file first so that a concurrent
+        // reader never sees a partially written class.
+        try {
+            File dir = file.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                return;
+            }
+            File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+            try {
+                FileOutputStream out = new FileOutputStream(tmp);
+                try {
+                    out.write(code);
+                } finally {
+                    out.close();
+                }
+                if (!tmp.renameTo(file)) {
+                    file.delete();
+                    tmp.renameTo(file);
+                }
+            } finally {
+                tmp.delete();
+            }
+        } catch (IOException e) {
+        } catch (SecurityException e) {
+        }
+    }
+
     public static byte[] createAdapterCode(ObjToIntMap functionNames,
                                            String adapterName,
                                            Class<?> superClass,
@@ -1018,7 +1262,7 @@ public final class JavaAdapter implements IdFunctionCall
      * Generates code to push typed parameters onto the operand stack
      * prior to a direct Java method call.
      */
-    private static int generatePushParam(ClassFileWriter cfw, int paramOffset,
+    static int generatePushParam(ClassFileWriter cfw, int paramOffset,
                                          Class<?> paramType)
     {
         if (!paramType.isPrimitive()) {
@@ -1055,7 +1299,7 @@ public final class JavaAdapter implements IdFunctionCall
      * that returns the same type.
      * Generates the appropriate RETURN bytecode.
      */
-    private static void generatePopResult(ClassFileWriter cfw,
+    static void generatePopResult(ClassFileWriter cfw,
                                           Class<?> retType)
     {
         if (retType.isPrimitive()) {
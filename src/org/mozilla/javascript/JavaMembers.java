@@ -17,9 +17,12 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  *
@@ -49,7 +52,15 @@ class JavaMembers
             this.cl = cl;
             boolean includePrivate = cx.hasFeature(
                     Context.FEATURE_ENHANCED_JAVA_ACCESS);
-            reflect(scope, includeProtected, includePrivate);
+            ReflectedClass reflected;
+            if (cx.hasFeature(Context.FEATURE_SHARED_CLASS_CACHE)) {
+                reflected = ReflectedClass.lookup(cl, includeProtected,
+                                                  includePrivate);
+            } else {
+                reflected = new ReflectedClass(cl, includeProtected,
+                                               includePrivate);
+            }
+            reflect(scope, reflected, includePrivate);
         } finally {
             Context.exit();
         }
@@ -420,62 +431,19 @@ class JavaMembers
         }
     }
 
-    private void reflect(Scriptable scope,
-                         boolean includeProtected,
+    private void reflect(Scriptable scope, ReflectedClass reflected,
                          boolean includePrivate)
     {
-        // We reflect methods first, because we want overloaded field/method
-        // names to be allocated to the NativeJavaMethod before the field
-        // gets in the way.
-
-        Method[] methods = discoverAccessibleMethods(cl, includeProtected,
-                                                     includePrivate);
-        for (Method method : methods) {
-            int mods = method.getModifiers();
-            boolean isStatic = Modifier.isStatic(mods);
-            Map<String,Object> ht = isStatic ? staticMembers : members;
-            String name = method.getName();
-            Object value = ht.get(name);
-            if (value == null) {
-                ht.put(name, method);
-            } else {
-                ObjArray overloadedMethods;
-                if (value instanceof ObjArray) {
-                    overloadedMethods = (ObjArray)value;
-                } else {
-                    if (!(value instanceof Method)) Kit.codeBug();
-                    // value should be instance of Method as at this stage
-                    // staticMembers and members can only contain methods
-                    overloadedMethods = new ObjArray();
-                    overloadedMethods.add(value);
-                    ht.put(name, overloadedMethods);
-                }
-                overloadedMethods.add(method);
-            }
-        }
-
-        // replace Method instances by wrapped NativeJavaMethod objects
-        // first in staticMembers and then in members
+        // Wrap the shared MemberBox arrays into NativeJavaMethod objects
+        // bound to this scope, first in staticMembers and then in members
         for (int tableCursor = 0; tableCursor != 2; ++tableCursor) {
             boolean isStatic = (tableCursor == 0);
             Map<String,Object> ht = isStatic ? staticMembers : members;
-            for (Map.Entry<String, Object> entry: ht.entrySet()) {
-                MemberBox[] methodBoxes;
-                Object value = entry.getValue();
-                if (value instanceof Method) {
-                    methodBoxes = new MemberBox[1];
-                    methodBoxes[0] = new MemberBox((Method)value);
-                } else {
-                    ObjArray overloadedMethods = (ObjArray)value;
-                    int N = overloadedMethods.size();
-                    if (N < 2) Kit.codeBug();
-                    methodBoxes = new MemberBox[N];
-                    for (int i = 0; i != N; ++i) {
-                        Method method = (Method)overloadedMethods.get(i);
-                        methodBoxes[i] = new MemberBox(method);
-                    }
-                }
-                NativeJavaMethod fun = new NativeJavaMethod(methodBoxes);
+            Map<String,MemberBox[]> boxes = isStatic
+                                            ? reflected.staticMethods
+                                            : reflected.methods;
+            for (Map.Entry<String,MemberBox[]> entry: boxes.entrySet()) {
+                NativeJavaMethod fun = new NativeJavaMethod(entry.getValue());
                 if (scope != null) {
                     ScriptRuntime.setFunctionProtoAndParent(fun, scope);
                 }
@@ -484,8 +452,7 @@ class JavaMembers
         }
 
         // Reflect fields.
-        Field[] fields = getAccessibleFields(includeProtected, includePrivate);
-        for (Field field : fields) {
+        for (Field field : reflected.fields) {
             String name = field.getName();
             int mods = field.getModifiers();
             try {
@@ -634,15 +601,11 @@ class JavaMembers
         }
 
         // Reflect constructors
-        Constructor<?>[] constructors = getAccessibleConstructors(includePrivate);
-        MemberBox[] ctorMembers = new MemberBox[constructors.length];
-        for (int i = 0; i != constructors.length; ++i) {
-            ctorMembers[i] = new MemberBox(constructors[i]);
-        }
-        ctors = new NativeJavaMethod(ctorMembers, cl.getSimpleName());
+        ctors = new NativeJavaMethod(reflected.ctors, cl.getSimpleName());
     }
 
-    private Constructor<?>[] getAccessibleConstructors(boolean includePrivate)
+    private static Constructor<?>[] getAccessibleConstructors(Class<?> cl,
+                                                              boolean includePrivate)
     {
       // The JVM currently doesn't allow changing access on java.lang.Class
       // constructors, so don't try
@@ -662,8 +625,9 @@ class JavaMembers
       return cl.getConstructors();
     }
 
-    private Field[] getAccessibleFields(boolean includeProtected,
-                                        boolean includePrivate) {
+    private static Field[] getAccessibleFields(Class<?> cl,
+                                               boolean includeProtected,
+                                               boolean includePrivate) {
         if (includePrivate || includeProtected) {
             try {
                 List<Field> fieldsList = new ArrayList<Field>();
@@ -850,6 +814,30 @@ class JavaMembers
         return members;
     }
 
+    /**
+     * Returns the getters of the instance bean properties other than
+     * "class", by property name in sorted order.
+     */
+    Map<String,MemberBox> getBeanGetters()
+    {
+        Map<String,MemberBox> getters = beanGetters;
+        if (getters == null) {
+            getters = new TreeMap<String,MemberBox>();
+            for (Map.Entry<String,Object> entry : members.entrySet()) {
+                Object member = entry.getValue();
+                if (member instanceof BeanProperty
+                    && ((BeanProperty) member).getter != null
+                    && !"class".equals(entry.getKey()))
+                {
+                    getters.put(entry.getKey(), ((BeanProperty) member).getter);
+                }
+            }
+            getters = Collections.unmodifiableMap(getters);
+            beanGetters = getters;
+        }
+        return getters;
+    }
+
     RuntimeException reportMemberNotFound(String memberName)
     {
         return Context.reportRuntimeError2(
@@ -861,7 +849,100 @@ class JavaMembers
     private Map<String,FieldAndMethods> fieldAndMethods;
     private Map<String,Object> staticMembers;
     private Map<String,FieldAndMethods> staticFieldAndMethods;
+    private volatile Map<String,MemberBox> beanGetters;
     NativeJavaMethod ctors; // we use NativeJavaMethod for ctor overload resolution
+
+    /**
+     * Scope independent reflection data of a class: the accessible methods
+     * grouped by name, fields and constructors. Instances are immutable once
+     * constructed, so with {@link Context#FEATURE_SHARED_CLASS_CACHE} they
+     * are shared by the JavaMembers of all {@link ClassCache} instances.
+     */
+    static final class ReflectedClass
+    {
+        // Shared instances are attached to the reflected class itself, so
+        // they do not prevent classes and their loaders from being unloaded.
+        // Slots are indexed by the includeProtected and includePrivate flags.
+        private static final ClassValue<AtomicReferenceArray<ReflectedClass>>
+            sharedCache = new ClassValue<AtomicReferenceArray<ReflectedClass>>() {
+                @Override
+                protected AtomicReferenceArray<ReflectedClass> computeValue(
+                    Class<?> type)
+                {
+                    return new AtomicReferenceArray<ReflectedClass>(4);
+                }
+            };
+
+        final Map<String,MemberBox[]> methods;
+        final Map<String,MemberBox[]> staticMethods;
+        final Field[] fields;
+        final MemberBox[] ctors;
+
+        static ReflectedClass lookup(Class<?> cl, boolean includeProtected,
+                                     boolean includePrivate)
+        {
+            AtomicReferenceArray<ReflectedClass> slots = sharedCache.get(cl);
+            int index = (includeProtected ? 1 : 0) | (includePrivate ? 2 : 0);
+            ReflectedClass reflected = slots.get(index);
+            if (reflected == null) {
+                reflected = new ReflectedClass(cl, includeProtected,
+                                               includePrivate);
+                if (!slots.compareAndSet(index, null, reflected)) {
+                    reflected = slots.get(index);
+                }
+            }
+            return reflected;
+        }
+
+        ReflectedClass(Class<?> cl, boolean includeProtected,
+                       boolean includePrivate)
+        {
+            // We reflect methods first, because we want overloaded
+            // field/method names to be allocated to the NativeJavaMethod
+            // before the field gets in the way.
+            Map<String,List<MemberBox>> instanceBoxes =
+                new HashMap<String,List<MemberBox>>();
+            Map<String,List<MemberBox>> staticBoxes =
+                new HashMap<String,List<MemberBox>>();
+            Method[] accessible = discoverAccessibleMethods(cl,
+                    includeProtected, includePrivate);
+            for (Method method : accessible) {
+                boolean isStatic = Modifier.isStatic(method.getModifiers());
+                Map<String,List<MemberBox>> ht = isStatic ? staticBoxes
+                                                          : instanceBoxes;
+                List<MemberBox> overloads = ht.get(method.getName());
+                if (overloads == null) {
+                    overloads = new ArrayList<MemberBox>(1);
+                    ht.put(method.getName(), overloads);
+                }
+                overloads.add(new MemberBox(method));
+            }
+            methods = toArrays(instanceBoxes);
+            staticMethods = toArrays(staticBoxes);
+
+            fields = getAccessibleFields(cl, includeProtected, includePrivate);
+
+            Constructor<?>[] constructors = getAccessibleConstructors(cl,
+                    includePrivate);
+            ctors = new MemberBox[constructors.length];
+            for (int i = 0; i != constructors.length; ++i) {
+                ctors[i] = new MemberBox(constructors[i]);
+            }
+        }
+
+        private static Map<String,MemberBox[]> toArrays(
+            Map<String,List<MemberBox>> ht)
+        {
+            Map<String,MemberBox[]> result =
+                new HashMap<String,MemberBox[]>(ht.size() * 2);
+            for (Map.Entry<String,List<MemberBox>> entry : ht.entrySet()) {
+                List<MemberBox> overloads = entry.getValue();
+                result.put(entry.getKey(),
+                           overloads.toArray(new MemberBox[overloads.size()]));
+            }
+            return result;
+        }
+    }
 }
 
 class BeanProperty
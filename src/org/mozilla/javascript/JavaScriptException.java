@@ -54,6 +54,22 @@ public class JavaScriptException extends RhinoException
         }
     }
 
+    /**
+     * Records the Java stack unless the current Context has
+     * {@link Context#FEATURE_OMIT_JAVA_STACK_IN_THROW} set.
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace()
+    {
+        Context cx = Context.getCurrentContext();
+        if (cx != null
+            && cx.hasFeature(Context.FEATURE_OMIT_JAVA_STACK_IN_THROW))
+        {
+            return this;
+        }
+        return super.fillInStackTrace();
+    }
+
     @Override
     public String details()
     {
@@ -10,6 +10,9 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Member;
@@ -33,6 +36,20 @@ final class MemberBox implements Serializable
     transient Object delegateTo;
     transient boolean vararg;
 
+    /**
+     * Number of reflective calls after which {@link #invoke} switches to
+     * a direct {@link MethodHandle} invoker for the method.
+     */
+    private static final int INVOKER_THRESHOLD = 64;
+
+    // Direct invoker of type (Object, Object[])Object, created lazily
+    // once the method becomes hot. UNAVAILABLE_INVOKER marks methods for
+    // which no invoker can be built so the reflective path is kept.
+    private transient volatile MethodHandle invoker;
+    private transient int invocationCount;
+
+    private static final MethodHandle UNAVAILABLE_INVOKER =
+        MethodHandles.constant(Object.class, null);
 
     MemberBox(Method method)
     {
@@ -132,6 +149,13 @@ final class MemberBox implements Serializable
 
     Object invoke(Object target, Object[] args)
     {
+        MethodHandle handle = invoker;
+        if (handle == null && ++invocationCount >= INVOKER_THRESHOLD) {
+            handle = createInvoker();
+        }
+        if (handle != null && handle != UNAVAILABLE_INVOKER) {
+            return invokeDirect(handle, target, args);
+        }
         Method method = method();
         try {
             try {
@@ -163,6 +187,46 @@ final class MemberBox implements Serializable
         }
     }
 
+    private static Object invokeDirect(MethodHandle handle, Object target,
+                                       Object[] args)
+    {
+        try {
+            return handle.invokeExact(target, args);
+        } catch (ContinuationPending cp) {
+            // Must allow ContinuationPending exceptions to propagate unhindered
+            throw cp;
+        } catch (Throwable e) {
+            throw Context.throwAsScriptRuntimeEx(e);
+        }
+    }
+
+    /**
+     * Build a spreading {@link MethodHandle} for the boxed method so hot
+     * Java calls skip the access checks and argument validation of
+     * {@link Method#invoke}. The handle is only built from a method that
+     * was already invoked successfully through reflection, so any access
+     * recovery done by {@link #searchAccessibleMethod} or
+     * {@link VMBridge#tryToMakeAccessible} is taken into account.
+     */
+    private MethodHandle createInvoker()
+    {
+        MethodHandle handle;
+        try {
+            Method method = method();
+            handle = MethodHandles.lookup().unreflect(method).asFixedArity();
+            if (Modifier.isStatic(method.getModifiers())) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            int arity = handle.type().parameterCount() - 1;
+            handle = handle.asType(MethodType.genericMethodType(arity + 1))
+                           .asSpreader(Object[].class, arity);
+        } catch (IllegalAccessException | RuntimeException ex) {
+            handle = UNAVAILABLE_INVOKER;
+        }
+        invoker = handle;
+        return handle;
+    }
+
     Object newInstance(Object[] args)
     {
         Constructor<?> ctor = ctor();
@@ -399,6 +399,18 @@ public class NativeArray extends IdScriptableObject implements List
         return super.get(index, start);
     }
 
+    /**
+     * Returns the element at the given index when it is stored in the dense
+     * part of the array or NOT_FOUND when the regular property lookup has
+     * to be used. Used by the interpreter for quickened element access.
+     */
+    Object getDenseElement(int index)
+    {
+        if (denseOnly && dense != null && 0 <= index && index < dense.length)
+            return dense[index];
+        return NOT_FOUND;
+    }
+
     @Override
     public boolean has(int index, Scriptable start)
     {
@@ -110,21 +110,22 @@ public final class NativeGenerator extends IdScriptableObject {
 
           case Id_next:
             // arguments to next() are ignored
-            generator.firstTime = false;
-            return generator.resume(cx, scope, GENERATOR_SEND,
-                                    Undefined.instance);
+            return generator.throwIfEnded(scope,
+                                          generator.next(cx, scope));
 
           case Id_send: {
             Object arg = args.length > 0 ? args[0] : Undefined.instance;
             if (generator.firstTime && !arg.equals(Undefined.instance)) {
                 throw ScriptRuntime.typeError0("msg.send.newborn");
             }
-            return generator.resume(cx, scope, GENERATOR_SEND, arg);
+            return generator.throwIfEnded(scope,
+                generator.resume(cx, scope, GENERATOR_SEND, arg));
           }
 
           case Id_throw:
-            return generator.resume(cx, scope, GENERATOR_THROW,
-                args.length > 0 ? args[0] : Undefined.instance);
+            return generator.throwIfEnded(scope,
+                generator.resume(cx, scope, GENERATOR_THROW,
+                    args.length > 0 ? args[0] : Undefined.instance));
 
           case Id___iterator__:
             return thisObj;
@@ -134,19 +135,50 @@ public final class NativeGenerator extends IdScriptableObject {
         }
     }
 
+    /**
+     * Returns true if <code>f</code> is the built-in next method of
+     * generators.
+     */
+    static boolean isNextMethod(Object f)
+    {
+        if (f instanceof IdFunctionObject) {
+            IdFunctionObject idf = (IdFunctionObject)f;
+            return idf.hasTag(GENERATOR_TAG) && idf.methodId() == Id_next;
+        }
+        return false;
+    }
+
+    /**
+     * Resumes the generator as its next method does, but returns
+     * {@link UniqueTag#ITERATION_END} instead of throwing StopIteration
+     * when the generator has completed.
+     */
+    Object next(Context cx, Scriptable scope)
+    {
+        firstTime = false;
+        return resume(cx, scope, GENERATOR_SEND, Undefined.instance);
+    }
+
+    private Object throwIfEnded(Scriptable scope, Object result)
+    {
+        if (result == UniqueTag.ITERATION_END) {
+            throw new JavaScriptException(
+                NativeIterator.getStopIterationObject(scope),
+                lineSource, lineNumber);
+        }
+        return result;
+    }
+
     private Object resume(Context cx, Scriptable scope, int operation,
                           Object value)
     {
         if (savedState == null) {
             if (operation == GENERATOR_CLOSE)
                 return Undefined.instance;
-            Object thrown;
             if (operation == GENERATOR_THROW) {
-                thrown = value;
-            } else {
-                thrown = NativeIterator.getStopIterationObject(scope);
+                throw new JavaScriptException(value, lineSource, lineNumber);
             }
-            throw new JavaScriptException(thrown, lineSource, lineNumber);
+            return UniqueTag.ITERATION_END;
         }
         try {
             synchronized (this) {
@@ -157,8 +189,15 @@ public final class NativeGenerator extends IdScriptableObject {
                   throw ScriptRuntime.typeError0("msg.already.exec.gen");
               locked = true;
             }
-            return function.resumeGenerator(cx, scope, operation, savedState,
-                                            value);
+            Object result = function.resumeGenerator(cx, scope, operation,
+                                                     savedState, value);
+            if (result == UniqueTag.ITERATION_END) {
+                // The generator body has completed
+                savedState = null;
+                if (operation == GENERATOR_CLOSE)
+                    return Undefined.instance;
+            }
+            return result;
         } catch (GeneratorClosedException e) {
             // On closing a generator in the compile path, the generator
             // throws a special exception. This ensures execution of all pending
@@ -6,12 +6,13 @@
 
 package org.mozilla.javascript;
 
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Stack;
+import java.util.Map;
 
 import org.mozilla.javascript.json.JsonParser;
 
@@ -28,6 +29,9 @@ public final class NativeJSON extends IdScriptableObject
 
     private static final int MAX_STRINGIFY_GAP_LENGTH = 10;
 
+    // Output is handed to an Appendable once this much is buffered
+    private static final int FLUSH_LENGTH = 8192;
+
     static void init(Scriptable scope, boolean sealed)
     {
         NativeJSON obj = new NativeJSON();
@@ -196,14 +200,27 @@ public final class NativeJSON extends IdScriptableObject
             this.replacer = replacer;
             this.propertyList = propertyList;
             this.space = space;
+
+            // Java data can only be written directly when no replacer needs
+            // a Scriptable holder for its members
+            this.javaData = replacer == null && propertyList == null;
+            this.javaBeans = cx.hasFeature(Context.FEATURE_JSON_JAVA_BEANS);
         }
 
-        Stack<Scriptable> stack = new Stack<Scriptable>();
+        // The objects and Java containers being written, compared by identity
+        List<Object> stack = new ArrayList<Object>();
         String indent;
         String gap;
         Callable replacer;
         List<Object> propertyList;
         Object space;
+        boolean javaData;
+        boolean javaBeans;
+
+        // All output goes to out, which is handed on to sink in chunks
+        // when there is one
+        StringBuilder out = new StringBuilder();
+        Appendable sink;
 
         Context cx;
         Scriptable scope;
@@ -211,6 +228,43 @@ public final class NativeJSON extends IdScriptableObject
 
     public static Object stringify(Context cx, Scriptable scope, Object value,
                                    Object replacer, Object space)
+    {
+        StringifyState state = createState(cx, scope, replacer, space);
+        try {
+            if (!writeRoot(value, state)) {
+                return Undefined.instance;
+            }
+        } catch (IOException ex) {
+            throw Kit.codeBug();
+        }
+        return state.out.toString();
+    }
+
+    /**
+     * Writes the JSON text for <code>value</code> to <code>out</code>,
+     * which gets the text in chunks while it is produced rather than as
+     * one String. Otherwise this behaves like
+     * {@link #stringify(Context, Scriptable, Object, Object, Object)}.
+     *
+     * @return false, with nothing written, if <code>value</code> has no
+     *         JSON text, as for undefined or a function
+     */
+    public static boolean stringify(Context cx, Scriptable scope, Object value,
+                                    Object replacer, Object space,
+                                    Appendable out)
+        throws IOException
+    {
+        StringifyState state = createState(cx, scope, replacer, space);
+        state.sink = out;
+        if (!writeRoot(value, state)) {
+            return false;
+        }
+        out.append(state.out);
+        return true;
+    }
+
+    private static StringifyState createState(Context cx, Scriptable scope,
+                                              Object replacer, Object space)
     {
         String indent = "";
         String gap = "";
@@ -251,30 +305,37 @@ public final class NativeJSON extends IdScriptableObject
             }
         }
 
-        StringifyState state = new StringifyState(cx, scope,
+        return new StringifyState(cx, scope,
             indent,
             gap,
             replacerFunction,
             propertyList,
             space);
+    }
 
+    private static boolean writeRoot(Object value, StringifyState state)
+        throws IOException
+    {
         ScriptableObject wrapper = new NativeObject();
-        wrapper.setParentScope(scope);
-        wrapper.setPrototype(ScriptableObject.getObjectPrototype(scope));
+        wrapper.setParentScope(state.scope);
+        wrapper.setPrototype(ScriptableObject.getObjectPrototype(state.scope));
         wrapper.defineProperty("", value, 0);
-        return str("", wrapper, state);
+        value = str("", getProperty(wrapper, ""), wrapper, state);
+        if (value == Undefined.instance) {
+            return false;
+        }
+        write(value, state);
+        return true;
     }
 
-    private static Object str(Object key, Scriptable holder,
+    /**
+     * Applies toJSON and the replacer function to the property value and
+     * unwraps primitive wrappers. Returns Undefined.instance if the result
+     * has no JSON text.
+     */
+    private static Object str(Object key, Object value, Scriptable holder,
                               StringifyState state)
     {
-        Object value = null;
-        if (key instanceof String) {
-            value = getProperty(holder, (String) key);
-        } else {
-            value = getProperty(holder, ((Number) key).intValue());
-        }
-
         if (value instanceof Scriptable && hasProperty((Scriptable) value, "toJSON")) {
             Object toJSON = getProperty((Scriptable) value, "toJSON");
             if (toJSON instanceof Callable) {
@@ -297,55 +358,105 @@ public final class NativeJSON extends IdScriptableObject
             value = ((NativeBoolean) value).getDefaultValue(ScriptRuntime.BooleanClass);
         }
 
-        if (value == null) return "null";
-        if (value.equals(Boolean.TRUE)) return "true";
-        if (value.equals(Boolean.FALSE)) return "false";
-
-        if (value instanceof CharSequence) {
-            return quote(value.toString());
-        }
-
-        if (value instanceof Number) {
-            double d = ((Number) value).doubleValue();
-            if (!Double.isNaN(d) && d != Double.POSITIVE_INFINITY &&
-                d != Double.NEGATIVE_INFINITY)
-            {
-                return ScriptRuntime.toString(value);
+        if (value instanceof NativeJavaObject && !(value instanceof Callable)) {
+            Object javaValue = ((Wrapper) value).unwrap();
+            if (javaValue instanceof Class) {
+                return Undefined.instance;
             }
-            return "null";
-        }
-
-        if (value instanceof Scriptable && !(value instanceof Callable)) {
-            if (value instanceof NativeArray) {
-                return ja((NativeArray) value, state);
+            if (!isJavaData(javaValue, state)) {
+                // The members of the wrapper lead to new wrappers without end
+                throw javaObjectError(javaValue);
+            }
+            if (state.javaData) {
+                value = javaValue;
             }
-            return jo((Scriptable) value, state);
         }
 
+        if (value == null || value instanceof Boolean
+            || value instanceof CharSequence || value instanceof Number
+            || (value instanceof Scriptable && !(value instanceof Callable))
+            || (state.javaData && isJavaData(value, state)))
+        {
+            return value;
+        }
+        if (!(value instanceof Scriptable || value instanceof Class
+              || value instanceof UniqueTag || value instanceof Undefined
+              || isJavaData(value, state)))
+        {
+            // From a Java container, or passed to stringify from Java
+            throw javaObjectError(value);
+        }
         return Undefined.instance;
     }
 
-    private static String join(Collection<Object> objs, String delimiter) {
-        if (objs == null || objs.isEmpty()) {
-            return "";
-        }
-        Iterator<Object> iter = objs.iterator();
-        if (!iter.hasNext()) return "";
-        StringBuilder builder = new StringBuilder(iter.next().toString());
-        while (iter.hasNext()) {
-            builder.append(delimiter).append(iter.next().toString());
+    private static EcmaError javaObjectError(Object value)
+    {
+        return ScriptRuntime.typeError1("msg.json.java.object",
+                                        value.getClass().getName());
+    }
+
+    /**
+     * Returns true if value is a Java object that write can serialize
+     * without going through a wrapper.
+     */
+    private static boolean isJavaData(Object value, StringifyState state)
+    {
+        if (value == null || value instanceof Boolean
+            || value instanceof CharSequence || value instanceof Number
+            || value instanceof Character || value instanceof Enum
+            || value instanceof Map || value instanceof Iterable
+            || value.getClass().isArray())
+        {
+            return true;
         }
-        return builder.toString();
+        return state.javaBeans && !(value instanceof Scriptable)
+            && !(value instanceof Class);
     }
 
-    private static String jo(Scriptable value, StringifyState state) {
-        if (state.stack.search(value) != -1) {
-            throw ScriptRuntime.typeError0("msg.cyclic.value");
+    /**
+     * Appends the JSON text of a value that was returned by str.
+     */
+    private static void write(Object value, StringifyState state)
+        throws IOException
+    {
+        StringBuilder out = state.out;
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof Boolean) {
+            out.append(((Boolean) value).booleanValue() ? "true" : "false");
+        } else if (value instanceof CharSequence) {
+            quote(out, value.toString());
+        } else if (value instanceof Integer) {
+            out.append(((Integer) value).intValue());
+        } else if (value instanceof Number) {
+            double d = ((Number) value).doubleValue();
+            if (!Double.isNaN(d) && d != Double.POSITIVE_INFINITY &&
+                d != Double.NEGATIVE_INFINITY)
+            {
+                out.append(ScriptRuntime.toString(value));
+            } else {
+                out.append("null");
+            }
+        } else if (value instanceof NativeArray) {
+            ja((NativeArray) value, state);
+        } else if (value instanceof Scriptable) {
+            jo((Scriptable) value, state);
+        } else if (value instanceof Character) {
+            quote(out, value.toString());
+        } else if (value instanceof Enum) {
+            quote(out, ((Enum<?>) value).name());
+        } else if (value instanceof Map || !(value instanceof Iterable
+                                             || value.getClass().isArray())) {
+            javaObject(value, state);
+        } else {
+            javaArray(value, state);
         }
-        state.stack.push(value);
+    }
 
-        String stepback = state.indent;
-        state.indent = state.indent + state.gap;
+    private static void jo(Scriptable value, StringifyState state)
+        throws IOException
+    {
+        String stepback = enter(value, state);
         Object[] k = null;
         if (state.propertyList != null) {
             k = state.propertyList.toArray();
@@ -353,90 +464,198 @@ public final class NativeJSON extends IdScriptableObject
             k = value.getIds();
         }
 
-        List<Object> partial = new LinkedList<Object>();
-
+        state.out.append('{');
+        boolean empty = true;
         for (Object p : k) {
-            Object strP = str(p, value, state);
-            if (strP != Undefined.instance) {
-                String member = quote(p.toString()) + ":";
-                if (state.gap.length() > 0) {
-                    member = member + " ";
-                }
-                member = member + strP;
-                partial.add(member);
+            Object v;
+            if (p instanceof String) {
+                v = getProperty(value, (String) p);
+            } else {
+                v = getProperty(value, ((Number) p).intValue());
+            }
+            v = str(p, v, value, state);
+            if (v != Undefined.instance) {
+                member(p.toString(), v, empty, state);
+                empty = false;
             }
         }
+        leave('}', empty, stepback, state);
+    }
 
-        final String finalValue;
-
-        if (partial.isEmpty()) {
-            finalValue = "{}";
-        } else {
-            if (state.gap.length() == 0) {
-                finalValue = '{' + join(partial, ",") + '}';
+    private static void ja(NativeArray value, StringifyState state)
+        throws IOException
+    {
+        String stepback = enter(value, state);
+        state.out.append('[');
+        long len = value.getLength();
+        for (long index = 0; index < len; index++) {
+            Object v;
+            if (index > Integer.MAX_VALUE) {
+                String key = Long.toString(index);
+                v = str(key, getProperty(value, key), value, state);
             } else {
-                String separator = ",\n" + state.indent;
-                String properties = join(partial, separator);
-                finalValue = "{\n" + state.indent + properties + '\n' +
-                    stepback + '}';
+                int i = (int) index;
+                // Elements of dense arrays are read without a lookup
+                v = value.getDenseElement(i);
+                if (v == NOT_FOUND) {
+                    v = getProperty(value, i);
+                }
+                v = str(Integer.valueOf(i), v, value, state);
             }
+            element(v, index == 0, state);
         }
+        leave(']', len == 0, stepback, state);
+    }
 
-        state.stack.pop();
-        state.indent = stepback;
-        return finalValue;
+    /**
+     * Writes a Map, or the bean properties of another Java object, as a
+     * JSON object.
+     */
+    private static void javaObject(Object value, StringifyState state)
+        throws IOException
+    {
+        String stepback = enter(value, state);
+        state.out.append('{');
+        boolean empty = true;
+        if (value instanceof Map) {
+            for (Map.Entry<?,?> entry : ((Map<?,?>) value).entrySet()) {
+                String key = ScriptRuntime.toString(entry.getKey());
+                Object v = str(key, entry.getValue(), null, state);
+                if (v != Undefined.instance) {
+                    member(key, v, empty, state);
+                    empty = false;
+                }
+            }
+        } else {
+            JavaMembers members = JavaMembers.lookupClass(state.scope,
+                value.getClass(), null, false);
+            for (Map.Entry<String,MemberBox> getter
+                     : members.getBeanGetters().entrySet())
+            {
+                String key = getter.getKey();
+                Object v = getter.getValue().invoke(value, Context.emptyArgs);
+                v = str(key, v, null, state);
+                if (v != Undefined.instance) {
+                    member(key, v, empty, state);
+                    empty = false;
+                }
+            }
+        }
+        leave('}', empty, stepback, state);
     }
 
-    private static String ja(NativeArray value, StringifyState state) {
-        if (state.stack.search(value) != -1) {
-            throw ScriptRuntime.typeError0("msg.cyclic.value");
+    /**
+     * Writes an Iterable or a Java array as a JSON array.
+     */
+    private static void javaArray(Object value, StringifyState state)
+        throws IOException
+    {
+        String stepback = enter(value, state);
+        state.out.append('[');
+        int index = 0;
+        if (value instanceof Iterable) {
+            for (Object e : (Iterable<?>) value) {
+                element(str(Integer.valueOf(index), e, null, state),
+                        index == 0, state);
+                index++;
+            }
+        } else {
+            Object[] objects = value instanceof Object[] ? (Object[]) value : null;
+            for (int len = Array.getLength(value); index < len; index++) {
+                Object e = objects != null ? objects[index] : Array.get(value, index);
+                element(str(Integer.valueOf(index), e, null, state),
+                        index == 0, state);
+            }
         }
-        state.stack.push(value);
+        leave(']', index == 0, stepback, state);
+    }
 
+    /**
+     * Checks that value is not already being written and starts a new
+     * level of indentation. Returns the indentation to go back to.
+     */
+    private static String enter(Object value, StringifyState state)
+    {
+        for (Object o : state.stack) {
+            if (o == value) {
+                throw ScriptRuntime.typeError0("msg.cyclic.value");
+            }
+        }
+        state.stack.add(value);
         String stepback = state.indent;
-        state.indent = state.indent + state.gap;
-        List<Object> partial = new LinkedList<Object>();
+        if (state.gap.length() > 0) {
+            state.indent = state.indent + state.gap;
+        }
+        return stepback;
+    }
 
-        long len = value.getLength();
-        for (long index = 0; index < len; index++) {
-            Object strP;
-            if (index > Integer.MAX_VALUE) {
-                strP = str(Long.toString(index), value, state);
-            } else {
-                strP = str((int) index, value, state);
-            }
-            if (strP == Undefined.instance) {
-                partial.add("null");
-            } else {
-                partial.add(strP);
-            }
+    private static void leave(char close, boolean empty, String stepback,
+                              StringifyState state)
+    {
+        if (!empty && state.gap.length() > 0) {
+            state.out.append('\n').append(stepback);
         }
+        state.out.append(close);
+        state.stack.remove(state.stack.size() - 1);
+        state.indent = stepback;
+    }
 
-        final String finalValue;
+    private static void member(String key, Object value, boolean first,
+                               StringifyState state)
+        throws IOException
+    {
+        StringBuilder out = state.out;
+        if (!first) {
+            out.append(',');
+        }
+        boolean pretty = state.gap.length() > 0;
+        if (pretty) {
+            out.append('\n').append(state.indent);
+        }
+        quote(out, key);
+        out.append(pretty ? ": " : ":");
+        write(value, state);
+        flush(state);
+    }
 
-        if (partial.isEmpty()) {
-            finalValue = "[]";
+    private static void element(Object value, boolean first,
+                                StringifyState state)
+        throws IOException
+    {
+        StringBuilder out = state.out;
+        if (!first) {
+            out.append(',');
+        }
+        if (state.gap.length() > 0) {
+            out.append('\n').append(state.indent);
+        }
+        if (value == Undefined.instance) {
+            out.append("null");
         } else {
-            if (state.gap.length() == 0) {
-                finalValue = '[' + join(partial, ",") + ']';
-            } else {
-                String separator = ",\n" + state.indent;
-                String properties = join(partial, separator);
-                finalValue = "[\n" + state.indent + properties + '\n' + stepback + ']';
-            }
+            write(value, state);
         }
+        flush(state);
+    }
 
-        state.stack.pop();
-        state.indent = stepback;
-        return finalValue;
+    private static void flush(StringifyState state) throws IOException {
+        if (state.sink != null && state.out.length() >= FLUSH_LENGTH) {
+            state.sink.append(state.out);
+            state.out.setLength(0);
+        }
     }
 
-    private static String quote(String string) {
-        StringBuilder product = new StringBuilder(string.length()+2); // two extra chars for " on either side
+    private static void quote(StringBuilder product, String string) {
         product.append('"');
         int length = string.length();
+        // Copy runs of characters that need no escape in one go
+        int start = 0;
         for (int i = 0; i < length; i++) {
             char c = string.charAt(i);
+            if (c >= ' ' && c != '"' && c != '\\') {
+                continue;
+            }
+            product.append(string, start, i);
+            start = i + 1;
             switch (c) {
                 case '"':
                     product.append("\\\"");
@@ -460,19 +679,14 @@ public final class NativeJSON extends IdScriptableObject
                     product.append("\\t");
                     break;
                 default:
-                    if (c < ' ') {
-                        product.append("\\u");
-                        String hex = String.format("%04x", (int) c);
-                        product.append(hex);
-                    }
-                    else {
-                        product.append(c);
-                    }
+                    product.append("\\u");
+                    String hex = String.format("%04x", (int) c);
+                    product.append(hex);
                     break;
             }
         }
+        product.append(string, start, length);
         product.append('"');
-        return product.toString();
     }
 
 // #string_id_map#
@@ -0,0 +1,166 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript;
+
+import java.util.List;
+
+/**
+ * This class reflects a java.util.List into the JavaScript environment as
+ * an array-like object. Elements are read and written through the list
+ * itself, so no copy is made and changes are visible on both sides.
+ * The Java methods of the list remain accessible, and Array.prototype is
+ * used as the prototype so generic array methods work on the list.
+ *
+ * @see Context#FEATURE_ENABLE_JAVA_LIST_ACCESS
+ * @see NativeJavaArray
+ * @see NativeJavaMap
+ */
+
+public class NativeJavaList extends NativeJavaObject
+{
+    private static final long serialVersionUID = 6403865639690547921L;
+
+    public NativeJavaList(Scriptable scope, Object list, Class<?> staticType)
+    {
+        super(scope, list, staticType);
+        if (!(list instanceof List)) {
+            throw new IllegalArgumentException("List expected");
+        }
+    }
+
+    @Override
+    public String getClassName()
+    {
+        return "JavaList";
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object> list()
+    {
+        return (List<Object>) javaObject;
+    }
+
+    @Override
+    public boolean has(String name, Scriptable start)
+    {
+        return name.equals("length") || super.has(name, start);
+    }
+
+    @Override
+    public boolean has(int index, Scriptable start)
+    {
+        return 0 <= index && index < list().size();
+    }
+
+    @Override
+    public boolean has(Symbol key, Scriptable start)
+    {
+        return SymbolKey.IS_CONCAT_SPREADABLE.equals(key);
+    }
+
+    @Override
+    public Object get(String name, Scriptable start)
+    {
+        if (name.equals("length")) {
+            return Integer.valueOf(list().size());
+        }
+        return super.get(name, start);
+    }
+
+    @Override
+    public Object get(int index, Scriptable start)
+    {
+        List<Object> list = list();
+        if (0 <= index && index < list.size()) {
+            Context cx = Context.getContext();
+            Object obj = list.get(index);
+            return cx.getWrapFactory().wrap(cx, this, obj,
+                                            obj == null ? null : obj.getClass());
+        }
+        return Undefined.instance;
+    }
+
+    @Override
+    public Object get(Symbol key, Scriptable start)
+    {
+        if (SymbolKey.IS_CONCAT_SPREADABLE.equals(key)) {
+            return Boolean.TRUE;
+        }
+        return Scriptable.NOT_FOUND;
+    }
+
+    @Override
+    public void put(String name, Scriptable start, Object value)
+    {
+        if (name.equals("length")) {
+            setLength(value);
+        } else if (members.has(name, false)) {
+            members.put(this, name, javaObject, value, false);
+        } else {
+            // Do not let the assignment fall through to Array.prototype
+            throw members.reportMemberNotFound(name);
+        }
+    }
+
+    @Override
+    public void put(int index, Scriptable start, Object value)
+    {
+        List<Object> list = list();
+        int size = list.size();
+        Object element = Context.jsToJava(value, ScriptRuntime.ObjectClass);
+        if (0 <= index && index < size) {
+            list.set(index, element);
+        } else if (index == size) {
+            // Appending as in arr[arr.length] = value
+            list.add(element);
+        } else {
+            throw Context.reportRuntimeError2(
+                "msg.java.array.index.out.of.bounds", String.valueOf(index),
+                String.valueOf(size - 1));
+        }
+    }
+
+    private void setLength(Object value)
+    {
+        double d = ScriptRuntime.toNumber(value);
+        long newLength = ScriptRuntime.toUint32(d);
+        if (newLength != d || newLength > Integer.MAX_VALUE) {
+            String msg = ScriptRuntime.getMessage0("msg.arraylength.bad");
+            throw ScriptRuntime.constructError("RangeError", msg);
+        }
+        List<Object> list = list();
+        int size = list.size();
+        if (newLength < size) {
+            list.subList((int) newLength, size).clear();
+        } else {
+            for (long i = size; i < newLength; i++) {
+                list.add(null);
+            }
+        }
+    }
+
+    @Override
+    public Object[] getIds()
+    {
+        int length = list().size();
+        Object[] result = new Object[length];
+        int i = length;
+        while (--i >= 0)
+            result[i] = Integer.valueOf(i);
+        return result;
+    }
+
+    @Override
+    public Scriptable getPrototype()
+    {
+        if (prototype == null) {
+            prototype =
+                ScriptableObject.getArrayPrototype(this.getParentScope());
+        }
+        return prototype;
+    }
+}
@@ -0,0 +1,184 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class reflects a java.util.Map into the JavaScript environment as
+ * a property bag: entries are read, written and enumerated as properties
+ * of the wrapper, backed directly by the map. Java members of the map
+ * take precedence over entries with the same name, so <code>map.get</code>
+ * or <code>map.size</code> keep referring to the Java methods.
+ * Integer keys and their string forms name the same property, so an entry
+ * can be reached both as <code>map[1]</code> and <code>map['1']</code>
+ * whichever of the two the map actually uses.
+ *
+ * @see Context#FEATURE_ENABLE_JAVA_MAP_ACCESS
+ * @see NativeJavaList
+ */
+
+public class NativeJavaMap extends NativeJavaObject
+{
+    private static final long serialVersionUID = -3786257752907047381L;
+
+    public NativeJavaMap(Scriptable scope, Object map, Class<?> staticType)
+    {
+        super(scope, map, staticType);
+        if (!(map instanceof Map)) {
+            throw new IllegalArgumentException("Map expected");
+        }
+    }
+
+    @Override
+    public String getClassName()
+    {
+        return "JavaMap";
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Object,Object> map()
+    {
+        return (Map<Object,Object>) javaObject;
+    }
+
+    /**
+     * Returns the key of the entry for the property name: the name itself,
+     * or the Integer it is the string form of when only that is present.
+     */
+    private static Object nameKey(Map<Object,Object> map, String name)
+    {
+        if (!map.containsKey(name)) {
+            try {
+                Integer key = Integer.valueOf(name);
+                if (key.toString().equals(name) && map.containsKey(key)) {
+                    return key;
+                }
+            } catch (NumberFormatException e) {
+                // not an integer key
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Returns the key of the entry for the index: the Integer, or its
+     * string form when only that is present.
+     */
+    private static Object indexKey(Map<Object,Object> map, int index)
+    {
+        Object key = Integer.valueOf(index);
+        if (!map.containsKey(key)) {
+            String name = String.valueOf(index);
+            if (map.containsKey(name)) {
+                return name;
+            }
+        }
+        return key;
+    }
+
+    @Override
+    public boolean has(String name, Scriptable start)
+    {
+        if (super.has(name, start)) {
+            return true;
+        }
+        Map<Object,Object> map = map();
+        return map.containsKey(nameKey(map, name));
+    }
+
+    @Override
+    public boolean has(int index, Scriptable start)
+    {
+        Map<Object,Object> map = map();
+        return map.containsKey(indexKey(map, index));
+    }
+
+    @Override
+    public Object get(String name, Scriptable start)
+    {
+        if (!members.has(name, false)) {
+            Map<Object,Object> map = map();
+            Object key = nameKey(map, name);
+            if (map.containsKey(key)) {
+                return wrapValue(map.get(key));
+            }
+        }
+        return super.get(name, start);
+    }
+
+    @Override
+    public Object get(int index, Scriptable start)
+    {
+        Map<Object,Object> map = map();
+        Object key = indexKey(map, index);
+        if (map.containsKey(key)) {
+            return wrapValue(map.get(key));
+        }
+        return Scriptable.NOT_FOUND;
+    }
+
+    private Object wrapValue(Object obj)
+    {
+        Context cx = Context.getContext();
+        return cx.getWrapFactory().wrap(cx, this, obj,
+                                        obj == null ? null : obj.getClass());
+    }
+
+    @Override
+    public void put(String name, Scriptable start, Object value)
+    {
+        if (members.has(name, false)) {
+            super.put(name, start, value);
+        } else {
+            Map<Object,Object> map = map();
+            map.put(nameKey(map, name),
+                    Context.jsToJava(value, ScriptRuntime.ObjectClass));
+        }
+    }
+
+    @Override
+    public void put(int index, Scriptable start, Object value)
+    {
+        Map<Object,Object> map = map();
+        map.put(indexKey(map, index),
+                Context.jsToJava(value, ScriptRuntime.ObjectClass));
+    }
+
+    @Override
+    public void delete(String name)
+    {
+        if (!members.has(name, false)) {
+            Map<Object,Object> map = map();
+            map.remove(nameKey(map, name));
+        }
+    }
+
+    @Override
+    public void delete(int index)
+    {
+        Map<Object,Object> map = map();
+        map.remove(indexKey(map, index));
+    }
+
+    @Override
+    public Object[] getIds()
+    {
+        Map<Object,Object> map = map();
+        List<Object> ids = new ArrayList<Object>(map.size());
+        for (Object key : map.keySet()) {
+            if (key instanceof Integer) {
+                ids.add(key);
+            } else if (key != null) {
+                ids.add(ScriptRuntime.toString(key));
+            }
+        }
+        return ids.toArray();
+    }
+}
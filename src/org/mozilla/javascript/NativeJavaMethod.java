@@ -9,7 +9,8 @@ package org.mozilla.javascript;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.util.Arrays;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class reflects Java methods into the JavaScript environment and
@@ -251,23 +252,62 @@ public class NativeJavaMethod extends BaseFunction
 
     int findCachedFunction(Context cx, Object[] args) {
         if (methods.length > 1) {
-            for (ResolvedOverload ovl : overloadCache) {
-                if (ovl.matches(args)) {
+            AtomicReferenceArray<ResolvedOverload> cache = overloadCache;
+            if (cache == null) {
+                cache = new AtomicReferenceArray<>(OVERLOAD_CACHE_SIZE);
+                overloadCache = cache;
+            }
+            int hash = ResolvedOverload.hash(args);
+            int mask = OVERLOAD_CACHE_SIZE - 1;
+            int slot = hash & mask;
+            for (int probe = 0; probe != OVERLOAD_CACHE_PROBES; ++probe) {
+                ResolvedOverload ovl = cache.get((slot + probe) & mask);
+                if (ovl == null) {
+                    break;
+                }
+                if (ovl.hash == hash && ovl.matches(args)) {
+                    overloadCacheHits.increment();
                     return ovl.index;
                 }
             }
+            overloadCacheMisses.increment();
             int index = findFunction(cx, methods, args);
-            // As a sanity measure, don't let the lookup cache grow longer
-            // than twice the number of overloaded methods
-            if (overloadCache.size() < methods.length * 2) {
-                ResolvedOverload ovl = new ResolvedOverload(args, index);
-                overloadCache.addIfAbsent(ovl);
+            ResolvedOverload ovl = new ResolvedOverload(args, hash, index);
+            boolean stored = false;
+            for (int probe = 0; probe != OVERLOAD_CACHE_PROBES; ++probe) {
+                if (cache.compareAndSet((slot + probe) & mask, null, ovl)) {
+                    stored = true;
+                    break;
+                }
+            }
+            if (!stored) {
+                // All probed slots are taken by other type vectors: evict
+                // the entry in the home slot instead of growing the table
+                cache.set(slot, ovl);
             }
             return index;
         }
         return findFunction(cx, methods, args);
     }
 
+    /**
+     * Returns the number of calls whose overload was resolved from the
+     * argument type cache.
+     */
+    public long getOverloadCacheHits()
+    {
+        return overloadCacheHits.sum();
+    }
+
+    /**
+     * Returns the number of calls that required full overload resolution
+     * because their argument types were not found in the cache.
+     */
+    public long getOverloadCacheMisses()
+    {
+        return overloadCacheMisses.sum();
+    }
+
     /**
      * Find the index of the correct function to call given the set of methods
      * or constructors and the arguments.
@@ -546,17 +586,30 @@ public class NativeJavaMethod extends BaseFunction
         }
     }
 
+    // Size of the overload resolution cache, must be a power of 2
+    private static final int OVERLOAD_CACHE_SIZE = 64;
+    // Number of slots probed before an entry is evicted
+    private static final int OVERLOAD_CACHE_PROBES = 4;
+
     MemberBox[] methods;
     private String functionName;
-    private transient final CopyOnWriteArrayList<ResolvedOverload> overloadCache = new CopyOnWriteArrayList<>();
+    private transient volatile AtomicReferenceArray<ResolvedOverload> overloadCache;
+    private final LongAdder overloadCacheHits = new LongAdder();
+    private final LongAdder overloadCacheMisses = new LongAdder();
 }
 
 class ResolvedOverload {
     final Class<?>[] types;
+    final int hash;
     final int index;
 
     ResolvedOverload(Object[] args, int index) {
+        this(args, hash(args), index);
+    }
+
+    ResolvedOverload(Object[] args, int hash, int index) {
         this.index = index;
+        this.hash = hash;
         types = new Class<?>[args.length];
         for (int i = 0, l = args.length; i < l; i++) {
             Object arg = args[i];
@@ -566,6 +619,21 @@ class ResolvedOverload {
         }
     }
 
+    /**
+     * Hash of the type vector of the given arguments, computed without
+     * allocating the vector itself.
+     */
+    static int hash(Object[] args) {
+        int h = args.length;
+        for (int i = 0, l = args.length; i < l; i++) {
+            Object arg = args[i];
+            if (arg instanceof Wrapper)
+                arg = ((Wrapper)arg).unwrap();
+            h = 31 * h + (arg == null ? 0 : arg.getClass().hashCode());
+        }
+        return h ^ (h >>> 16);
+    }
+
     boolean matches(Object[] args) {
         if (args.length != types.length) {
             return false;
@@ -594,6 +662,6 @@ class ResolvedOverload {
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(types);
+        return hash;
     }
 }
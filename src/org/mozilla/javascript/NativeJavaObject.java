@@ -13,9 +13,13 @@ import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.util.Date;
 import java.util.Map;
 
+import org.mozilla.javascript.typedarrays.NativeArrayBuffer;
+import org.mozilla.javascript.typedarrays.NativeArrayBufferView;
+
 /**
  * This class reflects non-Array Java objects into the JavaScript environment.  It
  * reflect fields directly, and uses NativeJavaMethod objects to reflect (possibly
@@ -402,6 +406,18 @@ public class NativeJavaObject
                     // and string conversion, per LC3.
                     return 2;
                 }
+                if (to == byte[].class && fromObj instanceof NativeArrayBuffer) {
+                    // The bytes of an ArrayBuffer are passed without copying
+                    return 2;
+                }
+            }
+            else if (to == ByteBuffer.class) {
+                if (fromObj instanceof NativeArrayBuffer
+                    || fromObj instanceof NativeArrayBufferView)
+                {
+                    // ArrayBuffers and their views are wrapped without copying
+                    return 2;
+                }
             }
             else if (to == ScriptRuntime.ObjectClass) {
                 return 3;
@@ -669,6 +685,19 @@ public class NativeJavaObject
                 // XXX: This will replace NaN by 0
                 return new Date((long)time);
             }
+            else if (type == byte[].class && value instanceof NativeArrayBuffer) {
+                return ((NativeArrayBuffer)value).getBuffer();
+            }
+            else if (type == ByteBuffer.class
+                     && value instanceof NativeArrayBuffer)
+            {
+                return ((NativeArrayBuffer)value).asByteBuffer();
+            }
+            else if (type == ByteBuffer.class
+                     && value instanceof NativeArrayBufferView)
+            {
+                return ((NativeArrayBufferView)value).asByteBuffer();
+            }
             else if (type.isArray() && value instanceof NativeArray) {
                 // Make a new java array, and coerce the JS array components
                 // to the target (component) type.
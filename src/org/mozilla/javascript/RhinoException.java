@@ -23,19 +23,21 @@ public abstract class RhinoException extends RuntimeException
 {
     private static final Pattern JAVA_STACK_PATTERN = Pattern.compile("_c_(.*)_\\d+");
 
+    // The stack helpers of the interpreter keep no state, so a single
+    // instance serves all exceptions instead of one per construction
+    private static final Evaluator STACK_EVALUATOR = Context.createInterpreter();
+
     RhinoException()
     {
-        Evaluator e = Context.createInterpreter();
-        if (e != null)
-            e.captureStackInfo(this);
+        if (STACK_EVALUATOR != null)
+            STACK_EVALUATOR.captureStackInfo(this);
     }
 
     RhinoException(String details)
     {
         super(details);
-        Evaluator e = Context.createInterpreter();
-        if (e != null)
-            e.captureStackInfo(this);
+        if (STACK_EVALUATOR != null)
+            STACK_EVALUATOR.captureStackInfo(this);
     }
 
     @Override
@@ -185,9 +187,8 @@ public abstract class RhinoException extends RuntimeException
         CharArrayWriter writer = new CharArrayWriter();
         super.printStackTrace(new PrintWriter(writer));
         String origStackTrace = writer.toString();
-        Evaluator e = Context.createInterpreter();
-        if (e != null)
-            return e.getPatchedStack(this, origStackTrace);
+        if (STACK_EVALUATOR != null)
+            return STACK_EVALUATOR.getPatchedStack(this, origStackTrace);
         return null;
     }
 
@@ -296,9 +297,8 @@ public abstract class RhinoException extends RuntimeException
         List<ScriptStackElement> list = new ArrayList<ScriptStackElement>();
         ScriptStackElement[][] interpreterStack = null;
         if (interpreterStackInfo != null) {
-            Evaluator interpreter = Context.createInterpreter();
-            if (interpreter instanceof Interpreter)
-                interpreterStack = ((Interpreter) interpreter).getScriptStackElements(this);
+            if (STACK_EVALUATOR instanceof Interpreter)
+                interpreterStack = ((Interpreter) STACK_EVALUATOR).getScriptStackElements(this);
         }
 
         int interpreterStackIndex = 0;
@@ -306,6 +306,22 @@ public abstract class RhinoException extends RuntimeException
         int count = 0;
         boolean printStarted = (hideFunction == null);
 
+        if (stack.length == 0 && interpreterStack != null) {
+            // No Java stack was recorded, see
+            // Context.FEATURE_OMIT_JAVA_STACK_IN_THROW, so there is nothing
+            // to interleave the interpreter frames with
+            for (ScriptStackElement[] group : interpreterStack) {
+                for (ScriptStackElement elem : group) {
+                    if (!printStarted && hideFunction.equals(elem.functionName)) {
+                        printStarted = true;
+                    } else if (printStarted && ((limit < 0) || (count < limit))) {
+                        list.add(elem);
+                        count++;
+                    }
+                }
+            }
+        }
+
         // Pattern to recover function name from java method name -
         // see Codegen.getBodyMethodName()
         // kudos to Marc Guillemot for coming up with this
@@ -2295,6 +2295,19 @@ public class ScriptRuntime {
             Callable f = (Callable) v;
             Context cx = Context.getContext();
             try {
+                if (x.iterator instanceof NativeGenerator &&
+                    NativeGenerator.isNextMethod(f))
+                {
+                    // Generator completion needs no StopIteration here,
+                    // but the body may still throw one itself
+                    Object value = ((NativeGenerator) x.iterator).next(cx,
+                        x.iterator.getParentScope());
+                    if (value == UniqueTag.ITERATION_END) {
+                        return Boolean.FALSE;
+                    }
+                    x.currentId = value;
+                    return Boolean.TRUE;
+                }
                 x.currentId = f.call(cx, x.iterator.getParentScope(),
                                      x.iterator, emptyArgs);
                 return Boolean.TRUE;
@@ -2345,6 +2358,18 @@ public class ScriptRuntime {
         Callable f = (Callable) v;
         Context cx = Context.getContext();
         Scriptable scope = enumObj.iterator.getParentScope();
+        if (enumObj.iterator instanceof ES6Iterator &&
+            ((ES6Iterator) enumObj.iterator).isNextMethod(f))
+        {
+            // Built-in iterators need no result object here
+            Object value = ((ES6Iterator) enumObj.iterator).nextValueOrEnd(
+                cx, scope);
+            if (value == UniqueTag.ITERATION_END) {
+                return Boolean.FALSE;
+            }
+            enumObj.currentId = value;
+            return Boolean.TRUE;
+        }
         Object r = f.call(cx, scope, enumObj.iterator, emptyArgs);
         Scriptable iteratorResult = toObject(cx, scope, r);
         Object done = ScriptableObject.getProperty(iteratorResult, ES6Iterator.DONE_PROPERTY);
@@ -4079,6 +4104,20 @@ public class ScriptRuntime {
         return object;
     }
 
+    /**
+     * Creates a plain object with room for capacity properties, for
+     * callers that know how many properties they are going to add.
+     */
+    public static Scriptable newPresizedObject(Scriptable scope, int capacity)
+    {
+        NativeObject result = new NativeObject();
+        setBuiltinProtoAndParent(result, scope, TopLevel.Builtins.Object);
+        if (capacity > 0) {
+            result.presizeSlots(capacity);
+        }
+        return result;
+    }
+
     public static boolean isArrayObject(Object obj)
     {
         return obj instanceof NativeArray || obj instanceof Arguments;
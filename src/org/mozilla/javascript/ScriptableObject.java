@@ -386,6 +386,16 @@ public abstract class ScriptableObject implements Scriptable,
         slotMap = createSlotMap(0);
     }
 
+    /**
+     * Makes room for capacity properties in this new, still empty object.
+     */
+    void presizeSlots(int capacity)
+    {
+        if (slotMap.isEmpty()) {
+            slotMap.presize(capacity);
+        }
+    }
+
     /**
      * Gets the value that will be returned by calling the typeof operator on this object.
      * @return default is "object" unless {@link #avoidObjectDetection()} is <code>true</code> in which
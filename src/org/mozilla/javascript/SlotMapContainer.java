@@ -82,6 +82,18 @@ class SlotMapContainer
     return map.iterator();
   }
 
+  /**
+   * Prepares the still empty map for capacity slots.
+   */
+  void presize(int capacity)
+  {
+    if (capacity > LARGE_HASH_SIZE) {
+      map = new HashSlotMap();
+    } else if (map instanceof EmbeddedSlotMap) {
+      ((EmbeddedSlotMap) map).presize(capacity);
+    }
+  }
+
   public long readLock()
   {
     // No locking in the default implementation
@@ -24,6 +24,7 @@ public final class UniqueTag implements Serializable
     private static final int ID_NOT_FOUND    = 1;
     private static final int ID_NULL_VALUE   = 2;
     private static final int ID_DOUBLE_MARK  = 3;
+    private static final int ID_ITERATION_END = 4;
 
     /**
      * Tag to mark non-existing values.
@@ -44,6 +45,14 @@ public final class UniqueTag implements Serializable
     public static final UniqueTag
         DOUBLE_MARK = new UniqueTag(ID_DOUBLE_MARK);
 
+    /**
+     * Tag returned by a resumed generator when its body has completed and
+     * by the built-in iterators used in loops once they are exhausted,
+     * in place of throwing StopIteration or creating a done result.
+     */
+    public static final UniqueTag
+        ITERATION_END = new UniqueTag(ID_ITERATION_END);
+
     private final int tagId;
 
     private UniqueTag(int tagId)
@@ -60,6 +69,8 @@ public final class UniqueTag implements Serializable
             return NULL_VALUE;
           case ID_DOUBLE_MARK:
             return DOUBLE_MARK;
+          case ID_ITERATION_END:
+            return ITERATION_END;
         }
         throw new IllegalStateException(String.valueOf(tagId));
     }
@@ -79,6 +90,9 @@ public final class UniqueTag implements Serializable
           case ID_DOUBLE_MARK:
             name = "DOUBLE_MARK";
             break;
+          case ID_ITERATION_END:
+            name = "ITERATION_END";
+            break;
           default:
             throw Kit.codeBug();
         }
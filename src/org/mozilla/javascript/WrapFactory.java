@@ -8,6 +8,9 @@
 
 package org.mozilla.javascript;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * Embeddings that wish to provide their own custom wrappings for Java
  * objects may extend this class and call
@@ -105,6 +108,11 @@ public class WrapFactory
      * when they can not convert <tt>javaObject</tt> to JavaScript primitive
      * value or JavaScript array.
      * <p>
+     * Instances of java.util.List are wrapped as {@link NativeJavaList} when
+     * {@link Context#FEATURE_ENABLE_JAVA_LIST_ACCESS} is set, and instances
+     * of java.util.Map as {@link NativeJavaMap} when
+     * {@link Context#FEATURE_ENABLE_JAVA_MAP_ACCESS} is set.
+     * <p>
      * Subclasses can override the method to provide custom wrappers
      * for Java objects.
      * @param cx the current Context for this thread
@@ -117,6 +125,16 @@ public class WrapFactory
     public Scriptable wrapAsJavaObject(Context cx, Scriptable scope,
                                        Object javaObject, Class<?> staticType)
     {
+        if (javaObject instanceof List && cx != null
+            && cx.hasFeature(Context.FEATURE_ENABLE_JAVA_LIST_ACCESS))
+        {
+            return new NativeJavaList(scope, javaObject, staticType);
+        }
+        if (javaObject instanceof Map && cx != null
+            && cx.hasFeature(Context.FEATURE_ENABLE_JAVA_MAP_ACCESS))
+        {
+            return new NativeJavaMap(scope, javaObject, staticType);
+        }
         return new NativeJavaObject(scope, javaObject, staticType);
     }
 
@@ -6,28 +6,96 @@
 
 package org.mozilla.javascript.json;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ScriptRuntime;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
 
 /**
  * This class converts a stream of JSON tokens into a JSON value.
  *
+ * <p>Input is read in chunks, so a document given as a {@link Reader} or
+ * {@link CharBuffer} never has to be held in memory as a whole. Besides
+ * {@link #parseValue(String)} and {@link #parse(Readable)}, which return the
+ * complete value, the parser can be used incrementally: after
+ * {@link #setInput(Readable)} the
+ * {@link #peek()}, {@link #beginArray()}, {@link #beginObject()},
+ * {@link #hasNext()}, {@link #nextName()} and {@link #nextValue()} methods
+ * walk through the document, so that e.g. the elements of a large array can
+ * be converted and consumed one at a time.
+ *
  * See ECMA 15.12.
  * @author Raphael Speyer
  * @author Hannes Wallnoefer
  */
 public class JsonParser {
 
+    /**
+     * Kinds of the next token in the input, as returned by {@link #peek()}.
+     */
+    public static final int
+        OBJECT       = 1,
+        ARRAY        = 2,
+        STRING       = 3,
+        NUMBER       = 4,
+        BOOLEAN      = 5,
+        NULL         = 6,
+        NAME         = 7,
+        END_OBJECT   = 8,
+        END_ARRAY    = 9,
+        END_DOCUMENT = 10;
+
+    // States of the containers entered with beginArray and beginObject
+    private static final int
+        DOCUMENT       = 0,  // before the top level value
+        DOCUMENT_DONE  = 1,  // after the top level value
+        ARRAY_FIRST    = 2,  // after '['
+        ARRAY_NEXT     = 3,  // after an element
+        ARRAY_ELEMENT  = 4,  // after ','
+        OBJECT_FIRST   = 5,  // after '{'
+        OBJECT_NEXT    = 6,  // after a member
+        OBJECT_NAME    = 7,  // after ','
+        OBJECT_VALUE   = 8;  // after a name and ':'
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // Limits of the table of names read in one parse
+    private static final int MAX_NAMES = 1536;
+    private static final int MAX_NAME_LENGTH = 64;
+
     private Context cx;
     private Scriptable scope;
 
+    private Readable in;
+    private char[] buf;
     private int pos;
-    private int length;
-    private String src;
+    private int limit;
+    // Number of chars already dropped from the front of buf
+    private int offset;
+    // Start of the token being read, kept in buf when it is refilled
+    private int mark;
+
+    private int[] stack;
+    private int depth;
+    // Number of members of the last object read by nextValue
+    private int recordSize;
+
+    // Object member names read so far, so that records with the same keys
+    // share their name Strings. ids holds the name itself or, for names
+    // that are array indexes, the index as an Integer.
+    private String[] names;
+    private Object[] ids;
+    private int nameCount;
+    // Table slot of the name last returned by readName, or -1
+    private int nameSlot;
 
     public JsonParser(Context cx, Scriptable scope) {
         this.cx = cx;
@@ -38,24 +106,348 @@ public class JsonParser {
         if (json == null) {
             throw new ParseException("Input string may not be null");
         }
-        pos = 0;
-        length = json.length();
-        src = json;
+        if (json.length() <= BUFFER_SIZE) {
+            start(null, json.toCharArray());
+            limit = buf.length;
+        } else {
+            start(new StringReader(json), new char[BUFFER_SIZE]);
+        }
+        try {
+            return readDocument();
+        } finally {
+            start(null, null);
+        }
+    }
+
+    /**
+     * Parses the JSON text read from <code>json</code>, which is not closed.
+     */
+    public synchronized Object parse(Readable json) throws ParseException {
+        if (json == null) {
+            throw new ParseException("Input reader may not be null");
+        }
+        start(json, new char[BUFFER_SIZE]);
+        try {
+            return readDocument();
+        } finally {
+            start(null, null);
+        }
+    }
+
+    private Object readDocument() throws ParseException {
         Object value = readValue();
         consumeWhitespace();
-        if (pos < length) {
-            throw new ParseException("Expected end of stream at char " + pos);
+        if (pos < limit || fill()) {
+            throw new ParseException("Expected end of stream at char " + (offset + pos));
+        }
+        return value;
+    }
+
+    private void start(Readable in, char[] buf) {
+        this.in = in;
+        this.buf = buf;
+        pos = 0;
+        limit = 0;
+        offset = 0;
+        mark = -1;
+        stack = null;
+        depth = 0;
+        recordSize = 0;
+        names = null;
+        ids = null;
+        nameCount = 0;
+    }
+
+    /**
+     * Starts reading the JSON text from <code>json</code> incrementally.
+     * The reader is not closed by the parser. Until the end of the document
+     * is reached, the parser must not be used by more than one thread.
+     */
+    public synchronized void setInput(Readable json) {
+        if (json == null) {
+            throw new IllegalArgumentException("Input reader may not be null");
+        }
+        start(json, new char[BUFFER_SIZE]);
+        stack = new int[32];
+        stack[0] = DOCUMENT;
+    }
+
+    /**
+     * Returns the kind of the next token without consuming it.
+     */
+    public int peek() throws ParseException {
+        if (stack == null) {
+            throw new IllegalStateException("No input");
+        }
+        for (;;) {
+            consumeWhitespace();
+            int c = pos < limit || fill() ? buf[pos] : -1;
+            switch (stack[depth]) {
+                case DOCUMENT:
+                    if (c == -1) {
+                        throw new ParseException("Empty JSON string");
+                    }
+                    return valueKind(c);
+                case DOCUMENT_DONE:
+                    if (c != -1) {
+                        throw new ParseException("Expected end of stream at char " + (offset + pos));
+                    }
+                    return END_DOCUMENT;
+                case ARRAY_FIRST:
+                    if (c == ']') {
+                        return END_ARRAY;
+                    }
+                    return valueKind(c);
+                case ARRAY_NEXT:
+                    if (c == ']') {
+                        return END_ARRAY;
+                    } else if (c == ',') {
+                        pos += 1;
+                        stack[depth] = ARRAY_ELEMENT;
+                        continue;
+                    } else if (c == -1) {
+                        throw new ParseException("Unterminated array literal");
+                    }
+                    throw new ParseException("Missing comma in array literal");
+                case ARRAY_ELEMENT:
+                    if (c == ']') {
+                        throw new ParseException("Unexpected comma in array literal");
+                    }
+                    return valueKind(c);
+                case OBJECT_NEXT:
+                    if (c == '}') {
+                        return END_OBJECT;
+                    } else if (c == ',') {
+                        pos += 1;
+                        stack[depth] = OBJECT_NAME;
+                        continue;
+                    } else if (c == -1) {
+                        throw new ParseException("Unterminated object literal");
+                    }
+                    throw new ParseException("Missing comma in object literal");
+                case OBJECT_FIRST:
+                    if (c == '}') {
+                        return END_OBJECT;
+                    }
+                    return nameKind(c);
+                case OBJECT_NAME:
+                    if (c == '}') {
+                        throw new ParseException("Unexpected comma in object literal");
+                    }
+                    return nameKind(c);
+                case OBJECT_VALUE:
+                    return valueKind(c);
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+    }
+
+    private static int nameKind(int c) throws ParseException {
+        if (c == '"') {
+            return NAME;
+        } else if (c == -1) {
+            throw new ParseException("Unterminated object literal");
+        }
+        throw new ParseException("Unexpected token in object literal");
+    }
+
+    private static int valueKind(int c) throws ParseException {
+        switch (c) {
+            case '{':
+                return OBJECT;
+            case '[':
+                return ARRAY;
+            case '"':
+                return STRING;
+            case 't':
+            case 'f':
+                return BOOLEAN;
+            case 'n':
+                return NULL;
+            case '1':
+            case '2':
+            case '3':
+            case '4':
+            case '5':
+            case '6':
+            case '7':
+            case '8':
+            case '9':
+            case '0':
+            case '-':
+                return NUMBER;
+            case -1:
+                throw new ParseException("Unexpected end of stream");
+            default:
+                throw new ParseException("Unexpected token: " + (char) c);
+        }
+    }
+
+    /**
+     * Returns true if the current array or object has another element or
+     * member.
+     */
+    public boolean hasNext() throws ParseException {
+        int kind = peek();
+        return kind != END_ARRAY && kind != END_OBJECT && kind != END_DOCUMENT;
+    }
+
+    /**
+     * Consumes the '[' of the next value, which must be an array.
+     */
+    public void beginArray() throws ParseException {
+        expect(ARRAY, "array");
+        pos += 1;
+        valueRead();
+        push(ARRAY_FIRST);
+    }
+
+    /**
+     * Consumes the ']' of the current array.
+     */
+    public void endArray() throws ParseException {
+        expect(END_ARRAY, "end of array");
+        pos += 1;
+        depth -= 1;
+    }
+
+    /**
+     * Consumes the '{' of the next value, which must be an object.
+     */
+    public void beginObject() throws ParseException {
+        expect(OBJECT, "object");
+        pos += 1;
+        valueRead();
+        push(OBJECT_FIRST);
+    }
+
+    /**
+     * Consumes the '}' of the current object.
+     */
+    public void endObject() throws ParseException {
+        expect(END_OBJECT, "end of object");
+        pos += 1;
+        depth -= 1;
+    }
+
+    /**
+     * Reads the name of the next member of the current object.
+     */
+    public String nextName() throws ParseException {
+        expect(NAME, "name");
+        pos += 1;
+        String name = readName();
+        consume(':');
+        stack[depth] = OBJECT_VALUE;
+        return name;
+    }
+
+    /**
+     * Reads the next value completely and returns it as it would be
+     * returned by {@link #parseValue(String)}.
+     */
+    public Object nextValue() throws ParseException {
+        int kind = peek();
+        if (kind == NAME || kind >= END_OBJECT) {
+            throw new ParseException("Expected value");
+        }
+        Object value;
+        if (kind == OBJECT) {
+            consumeWhitespace();
+            pos += 1;
+            value = readObject(recordSize);
+            recordSize = ((ScriptableObject) value).size();
+        } else {
+            value = readValue();
         }
+        valueRead();
         return value;
     }
 
+    private void expect(int kind, String what) throws ParseException {
+        if (peek() != kind) {
+            throw new ParseException("Expected " + what);
+        }
+    }
+
+    private void valueRead() {
+        switch (stack[depth]) {
+            case DOCUMENT:
+                stack[depth] = DOCUMENT_DONE;
+                break;
+            case OBJECT_VALUE:
+                stack[depth] = OBJECT_NEXT;
+                break;
+            default:
+                stack[depth] = ARRAY_NEXT;
+                break;
+        }
+    }
+
+    private void push(int state) {
+        if (++depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth] = state;
+    }
+
+    /**
+     * Reads more input into buf, keeping the chars from mark or, if no
+     * token is being read, from pos. Returns false at the end of input.
+     */
+    private boolean fill() throws ParseException {
+        if (in == null) {
+            return false;
+        }
+        int keep = mark < 0 ? pos : mark;
+        if (keep > 0) {
+            System.arraycopy(buf, keep, buf, 0, limit - keep);
+            offset += keep;
+            pos -= keep;
+            limit -= keep;
+            if (mark >= 0) {
+                mark = 0;
+            }
+        } else if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        int n;
+        try {
+            do {
+                if (in instanceof Reader) {
+                    n = ((Reader) in).read(buf, limit, buf.length - limit);
+                } else {
+                    n = in.read(CharBuffer.wrap(buf, limit, buf.length - limit));
+                }
+            } while (n == 0);
+        } catch (IOException ex) {
+            throw new ParseException(ex);
+        }
+        if (n < 0) {
+            in = null;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    private boolean require(int count) throws ParseException {
+        while (limit - pos < count) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private Object readValue() throws ParseException {
         consumeWhitespace();
-        while (pos < length) {
-            char c = src.charAt(pos++);
+        while (pos < limit || fill()) {
+            char c = buf[pos++];
             switch (c) {
                 case '{':
-                    return readObject();
+                    return readObject(0);
                 case '[':
                     return readArray();
                 case 't':
@@ -85,19 +477,20 @@ public class JsonParser {
         throw new ParseException("Empty JSON string");
     }
 
-    private Object readObject() throws ParseException {
+    private Object readObject(int capacity) throws ParseException {
         consumeWhitespace();
-        Scriptable object = cx.newObject(scope);
+        Scriptable object = ScriptRuntime.newPresizedObject(scope, capacity);
         // handle empty object literal case early
-        if (pos < length && src.charAt(pos) == '}') {
+        if ((pos < limit || fill()) && buf[pos] == '}') {
             pos += 1;
             return object;
         }
-        String id;
+        String name;
+        Object id;
         Object value;
         boolean needsComma = false;
-        while (pos < length) {
-            char c = src.charAt(pos++);
+        while (pos < limit || fill()) {
+            char c = buf[pos++];
             switch(c) {
                 case '}':
                     if (!needsComma) {
@@ -114,15 +507,15 @@ public class JsonParser {
                     if (needsComma) {
                         throw new ParseException("Missing comma in object literal");
                     }
-                    id = readString();
+                    name = readName();
+                    id = nameSlot >= 0 ? ids[nameSlot] : toId(name);
                     consume(':');
                     value = readValue();
 
-                    long index = ScriptRuntime.indexFromString(id);
-                    if (index < 0) {
-                      object.put(id, object, value);
+                    if (id instanceof String) {
+                      object.put(name, object, value);
                     } else {
-                      object.put((int)index, object, value);
+                      object.put(((Integer) id).intValue(), object, value);
                     }
 
                     needsComma = true;
@@ -138,14 +531,17 @@ public class JsonParser {
     private Object readArray() throws ParseException {
         consumeWhitespace();
         // handle empty array literal case early
-        if (pos < length && src.charAt(pos) == ']') {
+        if ((pos < limit || fill()) && buf[pos] == ']') {
             pos += 1;
             return cx.newArray(scope, 0);
         }
         List<Object> list = new ArrayList<Object>();
         boolean needsComma = false;
-        while (pos < length) {
-            char c = src.charAt(pos);
+        // Objects in an array are mostly records with the same keys, so
+        // each is made with room for as many members as the one before
+        int capacity = 0;
+        while (pos < limit || fill()) {
+            char c = buf[pos];
             switch(c) {
                 case ']':
                     if (!needsComma) {
@@ -164,7 +560,14 @@ public class JsonParser {
                     if (needsComma) {
                         throw new ParseException("Missing comma in array literal");
                     }
-                    list.add(readValue());
+                    if (c == '{') {
+                        pos += 1;
+                        Object record = readObject(capacity);
+                        capacity = ((ScriptableObject) record).size();
+                        list.add(record);
+                    } else {
+                        list.add(readValue());
+                    }
                     needsComma = true;
             }
             consumeWhitespace();
@@ -172,20 +575,114 @@ public class JsonParser {
         throw new ParseException("Unterminated array literal");
     }
 
+    /**
+     * Reads an object member name. Names without escapes are looked up in
+     * the table of names and only copied from the input the first time.
+     */
+    private String readName() throws ParseException {
+        mark = pos;
+        int hash = 0;
+        while (pos < limit || fill()) {
+            char c = buf[pos++];
+            if (c == '"') {
+                String name = internName(mark, pos - 1 - mark, hash);
+                mark = -1;
+                return name;
+            } else if (c == '\\' || c <= '\u001F') {
+                break;
+            }
+            hash = 31 * hash + c;
+        }
+        // Leave escapes and errors to readString
+        pos = mark;
+        nameSlot = -1;
+        return readString();
+    }
+
+    private String internName(int start, int length, int hash) {
+        if (names == null) {
+            names = new String[16];
+            ids = new Object[16];
+        }
+        int mask = names.length - 1;
+        int i = hash & mask;
+        for (String name; (name = names[i]) != null; i = (i + 1) & mask) {
+            // String.hashCode is computed like hash and cached
+            if (name.hashCode() == hash && name.length() == length
+                    && nameMatches(name, start)) {
+                nameSlot = i;
+                return name;
+            }
+        }
+        String name = new String(buf, start, length);
+        if (nameCount == MAX_NAMES || length > MAX_NAME_LENGTH) {
+            nameSlot = -1;
+            return name;
+        }
+        if (4 * (nameCount + 1) > 3 * names.length) {
+            growNames();
+            mask = names.length - 1;
+            i = hash & mask;
+            while (names[i] != null) {
+                i = (i + 1) & mask;
+            }
+        }
+        names[i] = name;
+        ids[i] = toId(name);
+        nameCount += 1;
+        nameSlot = i;
+        return name;
+    }
+
+    private boolean nameMatches(String name, int start) {
+        for (int i = 0, n = name.length(); i < n; i++) {
+            if (name.charAt(i) != buf[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void growNames() {
+        String[] oldNames = names;
+        Object[] oldIds = ids;
+        names = new String[oldNames.length * 2];
+        ids = new Object[names.length];
+        int mask = names.length - 1;
+        for (int j = 0; j < oldNames.length; j++) {
+            String name = oldNames[j];
+            if (name != null) {
+                int i = name.hashCode() & mask;
+                while (names[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                names[i] = name;
+                ids[i] = oldIds[j];
+            }
+        }
+    }
+
+    private static Object toId(String name) {
+        long index = ScriptRuntime.indexFromString(name);
+        return index < 0 ? name : (Object) Integer.valueOf((int) index);
+    }
+
     private String readString() throws ParseException {
         /*
          * Optimization: if the source contains no escaped characters, create the
          * string directly from the source text.
          */
-        int stringStart = pos;
-        while (pos < length) {
-            char c = src.charAt(pos++);
+        mark = pos;
+        while (pos < limit || fill()) {
+            char c = buf[pos++];
             if (c <= '\u001F') {
                 throw new ParseException("String contains control character");
             } else if (c == '\\') {
                 break;
             } else if (c == '"') {
-                return src.substring(stringStart, pos - 1);
+                String s = new String(buf, mark, pos - 1 - mark);
+                mark = -1;
+                return s;
             }
         }
 
@@ -195,13 +692,10 @@ public class JsonParser {
          * character, and repeat until the entire string is consumed.
          */
         StringBuilder b = new StringBuilder();
-        while (pos < length) {
-            assert src.charAt(pos - 1) == '\\';
-            b.append(src, stringStart, pos - 1);
-            if (pos >= length) {
-                throw new ParseException("Unterminated string");
-            }
-            char c = src.charAt(pos++);
+        while (pos < limit || fill()) {
+            assert buf[pos - 1] == '\\';
+            b.append(buf, mark, pos - 1 - mark);
+            char c = buf[pos++];
             switch (c) {
                 case '"':
                     b.append('"');
@@ -228,15 +722,15 @@ public class JsonParser {
                     b.append('\t');
                     break;
                 case 'u':
-                    if (length - pos < 5) {
-                        throw new ParseException("Invalid character code: \\u" + src.substring(pos));
+                    if (!require(5)) {
+                        throw new ParseException("Invalid character code: \\u" + new String(buf, pos, limit - pos));
                     }
-                    int code = fromHex(src.charAt(pos + 0)) << 12
-                             | fromHex(src.charAt(pos + 1)) << 8
-                             | fromHex(src.charAt(pos + 2)) << 4
-                             | fromHex(src.charAt(pos + 3));
+                    int code = fromHex(buf[pos + 0]) << 12
+                             | fromHex(buf[pos + 1]) << 8
+                             | fromHex(buf[pos + 2]) << 4
+                             | fromHex(buf[pos + 3]);
                     if (code < 0) {
-                        throw new ParseException("Invalid character code: " + src.substring(pos, pos + 4));
+                        throw new ParseException("Invalid character code: " + new String(buf, pos, 4));
                     }
                     pos += 4;
                     b.append((char) code);
@@ -244,15 +738,16 @@ public class JsonParser {
                 default:
                     throw new ParseException("Unexpected character in string: '\\" + c + "'");
             }
-            stringStart = pos;
-            while (pos < length) {
-                c = src.charAt(pos++);
+            mark = pos;
+            while (pos < limit || fill()) {
+                c = buf[pos++];
                 if (c <= '\u001F') {
                     throw new ParseException("String contains control character");
                 } else if (c == '\\') {
                     break;
                 } else if (c == '"') {
-                    b.append(src, stringStart, pos - 1);
+                    b.append(buf, mark, pos - 1 - mark);
+                    mark = -1;
                     return b.toString();
                 }
             }
@@ -269,44 +764,45 @@ public class JsonParser {
 
     private Number readNumber(char c) throws ParseException {
         assert c == '-' || (c >= '0' && c <= '9');
-        final int numberStart = pos - 1;
+        mark = pos - 1;
         if (c == '-') {
-            c = nextOrNumberError(numberStart);
+            c = nextOrNumberError();
             if (!(c >= '0' && c <= '9')) {
-                throw numberError(numberStart, pos);
+                throw numberError();
             }
         }
         if (c != '0') {
             readDigits();
         }
         // read optional fraction part
-        if (pos < length) {
-            c = src.charAt(pos);
+        if (pos < limit || fill()) {
+            c = buf[pos];
             if (c == '.') {
                 pos += 1;
-                c = nextOrNumberError(numberStart);
+                c = nextOrNumberError();
                 if (!(c >= '0' && c <= '9')) {
-                    throw numberError(numberStart, pos);
+                    throw numberError();
                 }
                 readDigits();
             }
         }
         // read optional exponent part
-        if (pos < length) {
-            c = src.charAt(pos);
+        if (pos < limit || fill()) {
+            c = buf[pos];
             if (c == 'e' || c == 'E') {
                 pos += 1;
-                c = nextOrNumberError(numberStart);
+                c = nextOrNumberError();
                 if (c == '-' || c == '+') {
-                    c = nextOrNumberError(numberStart);
+                    c = nextOrNumberError();
                 }
                 if (!(c >= '0' && c <= '9')) {
-                    throw numberError(numberStart, pos);
+                    throw numberError();
                 }
                 readDigits();
             }
         }
-        String num = src.substring(numberStart, pos);
+        String num = new String(buf, mark, pos - mark);
+        mark = -1;
         final double dval = Double.parseDouble(num);
         final int ival = (int)dval;
         if (ival == dval) {
@@ -315,20 +811,20 @@ public class JsonParser {
         return Double.valueOf(dval);
     }
 
-    private ParseException numberError(int start, int end) {
-        return new ParseException("Unsupported number format: " + src.substring(start, end));
+    private ParseException numberError() {
+        return new ParseException("Unsupported number format: " + new String(buf, mark, pos - mark));
     }
 
-    private char nextOrNumberError(int numberStart) throws ParseException {
-        if (pos >= length) {
-            throw numberError(numberStart, length);
+    private char nextOrNumberError() throws ParseException {
+        if (pos >= limit && !fill()) {
+            throw numberError();
         }
-        return src.charAt(pos++);
+        return buf[pos++];
     }
 
-    private void readDigits() {
-        for (; pos < length; ++pos) {
-            char c = src.charAt(pos);
+    private void readDigits() throws ParseException {
+        for (; pos < limit || fill(); ++pos) {
+            char c = buf[pos];
             if (!(c >= '0' && c <= '9')) {
                 break;
             }
@@ -336,10 +832,10 @@ public class JsonParser {
     }
 
     private Boolean readTrue() throws ParseException {
-        if (length - pos < 3
-                || src.charAt(pos) != 'r'
-                || src.charAt(pos + 1) != 'u'
-                || src.charAt(pos + 2) != 'e') {
+        if (!require(3)
+                || buf[pos] != 'r'
+                || buf[pos + 1] != 'u'
+                || buf[pos + 2] != 'e') {
             throw new ParseException("Unexpected token: t");
         }
         pos += 3;
@@ -347,11 +843,11 @@ public class JsonParser {
     }
 
     private Boolean readFalse() throws ParseException {
-        if (length - pos < 4
-                || src.charAt(pos) != 'a'
-                || src.charAt(pos + 1) != 'l'
-                || src.charAt(pos + 2) != 's'
-                || src.charAt(pos + 3) != 'e') {
+        if (!require(4)
+                || buf[pos] != 'a'
+                || buf[pos + 1] != 'l'
+                || buf[pos + 2] != 's'
+                || buf[pos + 3] != 'e') {
             throw new ParseException("Unexpected token: f");
         }
         pos += 4;
@@ -359,19 +855,19 @@ public class JsonParser {
     }
 
     private Object readNull() throws ParseException {
-        if (length - pos < 3
-                || src.charAt(pos) != 'u'
-                || src.charAt(pos + 1) != 'l'
-                || src.charAt(pos + 2) != 'l') {
+        if (!require(3)
+                || buf[pos] != 'u'
+                || buf[pos + 1] != 'l'
+                || buf[pos + 2] != 'l') {
             throw new ParseException("Unexpected token: n");
         }
         pos += 3;
         return null;
     }
 
-    private void consumeWhitespace() {
-        while (pos < length) {
-            char c = src.charAt(pos);
+    private void consumeWhitespace() throws ParseException {
+        while (pos < limit || fill()) {
+            char c = buf[pos];
             switch (c) {
                 case ' ':
                 case '\t':
@@ -387,10 +883,10 @@ public class JsonParser {
 
     private void consume(char token) throws ParseException {
         consumeWhitespace();
-        if (pos >= length) {
+        if (pos >= limit && !fill()) {
             throw new ParseException("Expected " + token + " but reached end of stream");
         }
-        char c = src.charAt(pos++);
+        char c = buf[pos++];
         if (c == token) {
             return;
         }
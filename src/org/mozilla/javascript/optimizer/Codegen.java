@@ -1804,12 +1804,9 @@ class BodyCodegen
             // change state for re-entry
             generateSetGeneratorResumptionPoint(GENERATOR_TERMINATE);
 
-            // throw StopIteration
-            cfw.addALoad(variableObjectLocal);
-            addOptRuntimeInvoke("throwStopIteration",
-                    "(Ljava/lang/Object;)V");
-
-            Codegen.pushUndefined(cfw);
+            // tell NativeGenerator that the body has completed
+            cfw.add(ByteCode.GETSTATIC, "org/mozilla/javascript/UniqueTag",
+                    "ITERATION_END", "Lorg/mozilla/javascript/UniqueTag;");
             cfw.add(ByteCode.ARETURN);
 
         } else if (fnCurrent == null) {
@@ -247,6 +247,12 @@ public final class OptRuntime extends ScriptRuntime
         });
     }
 
+    /**
+     * @deprecated Generated code now returns
+     * {@link org.mozilla.javascript.UniqueTag#ITERATION_END} when a
+     * generator completes. Kept for classes compiled by older versions.
+     */
+    @Deprecated
     public static void throwStopIteration(Object obj) {
         throw new JavaScriptException(
             NativeIterator.getStopIterationObject((Scriptable)obj), "", 0);
@@ -6,8 +6,6 @@
 
 package org.mozilla.javascript.regexp;
 
-import java.io.Serializable;
-
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Function;
 import org.mozilla.javascript.IdFunctionObject;
@@ -52,63 +50,73 @@ public class NativeRegExp extends IdScriptableObject implements Function
 
     private static final boolean debug = false;
 
-    private static final byte REOP_SIMPLE_START  = 1;  /* start of 'simple opcodes' */
-    private static final byte REOP_EMPTY         = 1;  /* match rest of input against rest of r.e. */
-    private static final byte REOP_BOL           = 2;  /* beginning of input (or line if multiline) */
-    private static final byte REOP_EOL           = 3;  /* end of input (or line if multiline) */
-    private static final byte REOP_WBDRY         = 4;  /* match "" at word boundary */
-    private static final byte REOP_WNONBDRY      = 5;  /* match "" at word non-boundary */
-    private static final byte REOP_DOT           = 6;  /* stands for any character */
-    private static final byte REOP_DIGIT         = 7;  /* match a digit char: [0-9] */
-    private static final byte REOP_NONDIGIT      = 8;  /* match a non-digit char: [^0-9] */
-    private static final byte REOP_ALNUM         = 9;  /* match an alphanumeric char: [0-9a-z_A-Z] */
-    private static final byte REOP_NONALNUM      = 10; /* match a non-alphanumeric char: [^0-9a-z_A-Z] */
-    private static final byte REOP_SPACE         = 11; /* match a whitespace char */
-    private static final byte REOP_NONSPACE      = 12; /* match a non-whitespace char */
-    private static final byte REOP_BACKREF       = 13; /* back-reference (e.g., \1) to a parenthetical */
-    private static final byte REOP_FLAT          = 14; /* match a flat string */
-    private static final byte REOP_FLAT1         = 15; /* match a single char */
-    private static final byte REOP_FLATi         = 16; /* case-independent REOP_FLAT */
-    private static final byte REOP_FLAT1i        = 17; /* case-independent REOP_FLAT1 */
-    private static final byte REOP_UCFLAT1       = 18; /* single Unicode char */
-    private static final byte REOP_UCFLAT1i      = 19; /* case-independent REOP_UCFLAT1 */
+    static final byte REOP_SIMPLE_START  = 1;  /* start of 'simple opcodes' */
+    static final byte REOP_EMPTY         = 1;  /* match rest of input against rest of r.e. */
+    static final byte REOP_BOL           = 2;  /* beginning of input (or line if multiline) */
+    static final byte REOP_EOL           = 3;  /* end of input (or line if multiline) */
+    static final byte REOP_WBDRY         = 4;  /* match "" at word boundary */
+    static final byte REOP_WNONBDRY      = 5;  /* match "" at word non-boundary */
+    static final byte REOP_DOT           = 6;  /* stands for any character */
+    static final byte REOP_DIGIT         = 7;  /* match a digit char: [0-9] */
+    static final byte REOP_NONDIGIT      = 8;  /* match a non-digit char: [^0-9] */
+    static final byte REOP_ALNUM         = 9;  /* match an alphanumeric char: [0-9a-z_A-Z] */
+    static final byte REOP_NONALNUM      = 10; /* match a non-alphanumeric char: [^0-9a-z_A-Z] */
+    static final byte REOP_SPACE         = 11; /* match a whitespace char */
+    static final byte REOP_NONSPACE      = 12; /* match a non-whitespace char */
+    static final byte REOP_BACKREF       = 13; /* back-reference (e.g., \1) to a parenthetical */
+    static final byte REOP_FLAT          = 14; /* match a flat string */
+    static final byte REOP_FLAT1         = 15; /* match a single char */
+    static final byte REOP_FLATi         = 16; /* case-independent REOP_FLAT */
+    static final byte REOP_FLAT1i        = 17; /* case-independent REOP_FLAT1 */
+    static final byte REOP_UCFLAT1       = 18; /* single Unicode char */
+    static final byte REOP_UCFLAT1i      = 19; /* case-independent REOP_UCFLAT1 */
 //    private static final byte REOP_UCFLAT        = 20; /* flat Unicode string; len immediate counts chars */
 //    private static final byte REOP_UCFLATi       = 21; /* case-independent REOP_UCFLAT */
-    private static final byte REOP_CLASS         = 22; /* character class with index */
-    private static final byte REOP_NCLASS        = 23; /* negated character class with index */
-    private static final byte REOP_SIMPLE_END    = 23; /* end of 'simple opcodes' */
-    private static final byte REOP_QUANT         = 25; /* quantified atom: atom{1,2} */
-    private static final byte REOP_STAR          = 26; /* zero or more occurrences of kid */
-    private static final byte REOP_PLUS          = 27; /* one or more occurrences of kid */
-    private static final byte REOP_OPT           = 28; /* optional subexpression in kid */
-    private static final byte REOP_LPAREN        = 29; /* left paren bytecode: kid is u.num'th sub-regexp */
-    private static final byte REOP_RPAREN        = 30; /* right paren bytecode */
-    private static final byte REOP_ALT           = 31; /* alternative subexpressions in kid and next */
-    private static final byte REOP_JUMP          = 32; /* for deoptimized closure loops */
+    static final byte REOP_CLASS         = 22; /* character class with index */
+    static final byte REOP_NCLASS        = 23; /* negated character class with index */
+    static final byte REOP_SIMPLE_END    = 23; /* end of 'simple opcodes' */
+    static final byte REOP_QUANT         = 25; /* quantified atom: atom{1,2} */
+    static final byte REOP_STAR          = 26; /* zero or more occurrences of kid */
+    static final byte REOP_PLUS          = 27; /* one or more occurrences of kid */
+    static final byte REOP_OPT           = 28; /* optional subexpression in kid */
+    static final byte REOP_LPAREN        = 29; /* left paren bytecode: kid is u.num'th sub-regexp */
+    static final byte REOP_RPAREN        = 30; /* right paren bytecode */
+    static final byte REOP_ALT           = 31; /* alternative subexpressions in kid and next */
+    static final byte REOP_JUMP          = 32; /* for deoptimized closure loops */
 //    private static final byte REOP_DOTSTAR       = 33; /* optimize .* to use a single opcode */
 //    private static final byte REOP_ANCHOR        = 34; /* like .* but skips left context to unanchored r.e. */
 //    private static final byte REOP_EOLONLY       = 35; /* $ not preceded by any pattern */
 //    private static final byte REOP_BACKREFi      = 37; /* case-independent REOP_BACKREF */
 //    private static final byte REOP_LPARENNON     = 40; /* non-capturing version of REOP_LPAREN */
-    private static final byte REOP_ASSERT        = 41; /* zero width positive lookahead assertion */
-    private static final byte REOP_ASSERT_NOT    = 42; /* zero width negative lookahead assertion */
-    private static final byte REOP_ASSERTTEST    = 43; /* sentinel at end of assertion child */
-    private static final byte REOP_ASSERTNOTTEST = 44; /* sentinel at end of !assertion child */
-    private static final byte REOP_MINIMALSTAR   = 45; /* non-greedy version of * */
-    private static final byte REOP_MINIMALPLUS   = 46; /* non-greedy version of + */
-    private static final byte REOP_MINIMALOPT    = 47; /* non-greedy version of ? */
-    private static final byte REOP_MINIMALQUANT  = 48; /* non-greedy version of {} */
-    private static final byte REOP_ENDCHILD      = 49; /* sentinel at end of quantifier child */
-    private static final byte REOP_REPEAT        = 51; /* directs execution of greedy quantifier */
-    private static final byte REOP_MINIMALREPEAT = 52; /* directs execution of non-greedy quantifier */
-    private static final byte REOP_ALTPREREQ     = 53; /* prerequisite for ALT, either of two chars */
-    private static final byte REOP_ALTPREREQi    = 54; /* case-independent REOP_ALTPREREQ */
-    private static final byte REOP_ALTPREREQ2    = 55; /* prerequisite for ALT, a char or a class */
+    static final byte REOP_ASSERT        = 41; /* zero width positive lookahead assertion */
+    static final byte REOP_ASSERT_NOT    = 42; /* zero width negative lookahead assertion */
+    static final byte REOP_ASSERTTEST    = 43; /* sentinel at end of assertion child */
+    static final byte REOP_ASSERTNOTTEST = 44; /* sentinel at end of !assertion child */
+    static final byte REOP_MINIMALSTAR   = 45; /* non-greedy version of * */
+    static final byte REOP_MINIMALPLUS   = 46; /* non-greedy version of + */
+    static final byte REOP_MINIMALOPT    = 47; /* non-greedy version of ? */
+    static final byte REOP_MINIMALQUANT  = 48; /* non-greedy version of {} */
+    static final byte REOP_ENDCHILD      = 49; /* sentinel at end of quantifier child */
+    static final byte REOP_REPEAT        = 51; /* directs execution of greedy quantifier */
+    static final byte REOP_MINIMALREPEAT = 52; /* directs execution of non-greedy quantifier */
+    static final byte REOP_ALTPREREQ     = 53; /* prerequisite for ALT, either of two chars */
+    static final byte REOP_ALTPREREQi    = 54; /* case-independent REOP_ALTPREREQ */
+    static final byte REOP_ALTPREREQ2    = 55; /* prerequisite for ALT, a char or a class */
 //    private static final byte REOP_ENDALT        = 56; /* end of final alternate */
-    private static final byte REOP_END           = 57;
+    static final byte REOP_END           = 57;
 
     private static final int ANCHOR_BOL = -2;
 
+    // Number of executions after which the program of a regular expression
+    // is compiled to JVM bytecode when the optimizer is enabled
+    private static final int COMPILE_THRESHOLD = 100;
+
+    // Backtracks allowed in one search by default, plus BACKTRACK_PER_CHAR
+    // for each input character searched, before the search is finished by
+    // the linear time matcher
+    private static final int BACKTRACK_LIMIT = 10000;
+    private static final int BACKTRACK_PER_CHAR = 16;
+
 
     public static void init(Context cx, Scriptable scope, boolean sealed)
     {
@@ -281,6 +289,19 @@ public class NativeRegExp extends IdScriptableObject implements Function
     }
 
     static RECompiled compileRE(Context cx, String str, String global, boolean flat)
+    {
+        RECompiled regexp = RegExpCache.get(str, global, flat);
+        if (regexp == null) {
+            regexp = compileUncached(cx, str, global, flat);
+            if (regexp != null) {
+                RegExpCache.put(str, global, flat, regexp);
+            }
+        }
+        return regexp;
+    }
+
+    private static RECompiled compileUncached(Context cx, String str,
+                                              String global, boolean flat)
     {
         RECompiled regexp = new RECompiled(str);
         int length = str.length();
@@ -374,20 +395,168 @@ public class NativeRegExp extends IdScriptableObject implements Function
                 break;
         }
 
+        initPrefilters(regexp, state.result);
+
         if (debug) {
             if (regexp.anchorCh >= 0) {
                 System.out.println("Anchor ch = '" + (char)regexp.anchorCh + "'");
             }
+            if (regexp.prefix != null) {
+                System.out.println("Prefix = \"" + regexp.prefix + "\"");
+            }
+            if (regexp.required != null) {
+                System.out.println("Required = \"" + regexp.required + "\"");
+            }
         }
         return regexp;
     }
 
+    /*
+     * Find the literal every match starts with, the longest literal every
+     * match contains and the first simple op every match starts with, so
+     * matchRegExp can skip start positions where no match is possible.
+     * Must run after emitREBytecode, which merges adjacent FLAT nodes.
+     */
+    private static void initPrefilters(RECompiled regexp, RENode result)
+    {
+        if ((regexp.flags & JSREG_FOLD) == 0) {
+            LiteralScan scan = new LiteralScan(regexp.source);
+            scan.scan(result, true);
+            scan.endRun();
+            if (scan.prefix != null && scan.prefix.length() != 0) {
+                regexp.prefix = scan.prefix;
+            }
+            if (scan.required != null
+                && (regexp.prefix == null
+                    || scan.required.length() > regexp.prefix.length()))
+            {
+                regexp.required = scan.required;
+            }
+        }
+        if (regexp.prefix == null && regexp.anchorCh == -1) {
+            regexp.firstPc = findFirstSimpleOp(regexp.program);
+        }
+    }
+
+    /*
+     * Collects runs of literal characters that every match must contain,
+     * walking only nodes that match exactly once.
+     */
+    private static final class LiteralScan
+    {
+        final char[] source;
+        final StringBuilder run = new StringBuilder();
+        boolean atStart = true;
+        String prefix;
+        String required;
+
+        LiteralScan(char[] source)
+        {
+            this.source = source;
+        }
+
+        void scan(RENode t, boolean once)
+        {
+            for (; t != null; t = t.next) {
+                switch (t.op) {
+                  case REOP_FLAT:
+                    if (!once) {
+                        break;
+                    }
+                    if (t.flatIndex != -1) {
+                        run.append(source, t.flatIndex, t.length);
+                    } else {
+                        run.append(t.chr);
+                    }
+                    continue;
+                  case REOP_LPAREN:
+                    scan(t.kid, once);
+                    continue;
+                  case REOP_EMPTY:
+                  case REOP_BOL:
+                  case REOP_EOL:
+                  case REOP_WBDRY:
+                  case REOP_WNONBDRY:
+                  case REOP_ASSERT:
+                  case REOP_ASSERT_NOT:
+                    // zero width, the literals around them stay adjacent
+                    continue;
+                  case REOP_QUANT:
+                    endRun();
+                    atStart = false;
+                    // the atom of x{n,} with n > 0 matches at least once
+                    scan(t.kid, once && t.min > 0);
+                    endRun();
+                    continue;
+                  default:
+                    break;
+                }
+                endRun();
+                atStart = false;
+            }
+        }
+
+        void endRun()
+        {
+            if (run.length() == 0) {
+                return;
+            }
+            String literal = run.toString();
+            run.setLength(0);
+            if (atStart && prefix == null) {
+                prefix = literal;
+            }
+            atStart = false;
+            if (required == null || literal.length() > required.length()) {
+                required = literal;
+            }
+        }
+    }
+
+    /*
+     * Return the pc of the single character op every match starts with,
+     * or -1 if there is none.
+     */
+    private static int findFirstSimpleOp(byte[] program)
+    {
+        int pc = 0;
+        for (;;) {
+            byte op = program[pc];
+            switch (op) {
+              case REOP_LPAREN:
+                pc += 1 + INDEX_LEN;
+                continue;
+              case REOP_PLUS:
+              case REOP_MINIMALPLUS:
+                // <parencount> <parenindex> <next> then the atom
+                pc += 1 + 3 * INDEX_LEN;
+                continue;
+              case REOP_QUANT:
+              case REOP_MINIMALQUANT:
+                if (getIndex(program, pc + 1) == 0) {
+                    return -1;
+                }
+                pc += 1 + 5 * INDEX_LEN;
+                continue;
+              case REOP_EMPTY:
+              case REOP_BOL:
+              case REOP_EOL:
+              case REOP_WBDRY:
+              case REOP_WNONBDRY:
+              case REOP_BACKREF:
+                return -1;
+              default:
+                return reopIsSimple(op) ? pc : -1;
+            }
+        }
+    }
+
     static boolean isDigit(char c)
     {
         return '0' <= c && c <= '9';
     }
 
-    private static boolean isWord(char c)
+    static boolean isWord(char c)
     {
         return ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z') || isDigit(c) || c == '_';
     }
@@ -397,12 +566,12 @@ public class NativeRegExp extends IdScriptableObject implements Function
         return ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z');
     }
 
-    private static boolean isLineTerm(char c)
+    static boolean isLineTerm(char c)
     {
         return ScriptRuntime.isJSLineTerminator(c);
     }
 
-    private static boolean isREWhiteSpace(int c)
+    static boolean isREWhiteSpace(int c)
     {
         return ScriptRuntime.isJSWhitespaceOrLineTerminator(c);
     }
@@ -418,7 +587,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
      *    code point value is less than decimal 128, then return ch.
      * 6. Return cu.
      */
-    private static char upcase(char ch)
+    static char upcase(char ch)
     {
         if (ch < 128) {
             if ('a' <= ch && ch <= 'z') {
@@ -1199,7 +1368,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
         addIndex(array, from, pc - from);
     }
 
-    private static int getOffset(byte[] array, int pc)
+    static int getOffset(byte[] array, int pc)
     {
         return getIndex(array, pc);
     }
@@ -1214,12 +1383,12 @@ public class NativeRegExp extends IdScriptableObject implements Function
         return pc + 2;
     }
 
-    private static int getIndex(byte[] array, int pc)
+    static int getIndex(byte[] array, int pc)
     {
         return ((array[pc] & 0xFF) << 8) | (array[pc + 1] & 0xFF);
     }
 
-    private static final int INDEX_LEN  = 2;
+    static final int INDEX_LEN  = 2;
 
     private static int
     emitREBytecode(CompilerState state, RECompiled re, int pc, RENode t)
@@ -1361,36 +1530,93 @@ public class NativeRegExp extends IdScriptableObject implements Function
 
     private static void
     pushProgState(REGlobalData gData, int min, int max, int cp,
-                  REBackTrackData backTrackLastToSave,
+                  int backTrackLastToSave,
                   int continuationOp, int continuationPc)
     {
-        gData.stateStackTop = new REProgState(gData.stateStackTop, min, max,
-                                              cp, backTrackLastToSave,
-                                              continuationOp, continuationPc);
+        int top = gData.stateStackTop;
+        int[] stack = gData.stateStack;
+        if (top + REGlobalData.STATE_SIZE > stack.length) {
+            stack = new int[2 * stack.length];
+            System.arraycopy(gData.stateStack, 0, stack, 0, top);
+            gData.stateStack = stack;
+        }
+        stack[top + REGlobalData.STATE_MIN] = min;
+        stack[top + REGlobalData.STATE_MAX] = max;
+        stack[top + REGlobalData.STATE_INDEX] = cp;
+        stack[top + REGlobalData.STATE_CONTINUATION_OP] = continuationOp;
+        stack[top + REGlobalData.STATE_CONTINUATION_PC] = continuationPc;
+        stack[top + REGlobalData.STATE_BACKTRACK] = backTrackLastToSave;
+        gData.stateStackTop = top + REGlobalData.STATE_SIZE;
     }
 
-    private static REProgState
+    /**
+     * Pop the top program state and return its offset in
+     * gData.stateStack. The fields stay valid until the next push.
+     */
+    private static int
     popProgState(REGlobalData gData)
     {
-        REProgState state = gData.stateStackTop;
-        gData.stateStackTop = state.previous;
-        return state;
+        return gData.stateStackTop -= REGlobalData.STATE_SIZE;
     }
 
     private static void
     pushBackTrackState(REGlobalData gData, byte op, int pc)
     {
-        REProgState state = gData.stateStackTop;
-        gData.backTrackStackTop = new REBackTrackData(gData, op, pc,
-                gData.cp, state.continuationOp, state.continuationPc);
+        int state = gData.stateStackTop - REGlobalData.STATE_SIZE;
+        pushBackTrackState(gData, op, pc, gData.cp,
+                gData.stateStack[state + REGlobalData.STATE_CONTINUATION_OP],
+                gData.stateStack[state + REGlobalData.STATE_CONTINUATION_PC]);
     }
 
+    /*
+     * A backtrack record saves the whole state stack and the parens, so
+     * that later pushes may overwrite them in place.
+     */
     private static void
     pushBackTrackState(REGlobalData gData, byte op, int pc,
                        int cp, int continuationOp, int continuationPc)
     {
-        gData.backTrackStackTop = new REBackTrackData(gData, op, pc,
-                cp, continuationOp, continuationPc);
+        int previous = gData.backTrackStackTop;
+        int[] stack = gData.backTrackStack;
+        int at = 0;
+        int parensAt = 0;
+        int parenCount = gData.parens == null ? 0 : gData.parens.length;
+        if (previous >= 0) {
+            at = previous + REGlobalData.BACKTRACK_SIZE
+                 + stack[previous + REGlobalData.BACKTRACK_STATE_TOP];
+            parensAt = stack[previous + REGlobalData.BACKTRACK_PARENS]
+                       + parenCount;
+        }
+        int stateTop = gData.stateStackTop;
+        int size = at + REGlobalData.BACKTRACK_SIZE + stateTop;
+        if (size > stack.length) {
+            stack = new int[Math.max(2 * stack.length, size)];
+            System.arraycopy(gData.backTrackStack, 0, stack, 0, at);
+            gData.backTrackStack = stack;
+        }
+        stack[at + REGlobalData.BACKTRACK_PREVIOUS] = previous;
+        stack[at + REGlobalData.BACKTRACK_OP] = op;
+        stack[at + REGlobalData.BACKTRACK_PC] = pc;
+        stack[at + REGlobalData.BACKTRACK_CP] = cp;
+        stack[at + REGlobalData.BACKTRACK_CONTINUATION_OP] = continuationOp;
+        stack[at + REGlobalData.BACKTRACK_CONTINUATION_PC] = continuationPc;
+        stack[at + REGlobalData.BACKTRACK_STATE_TOP] = stateTop;
+        stack[at + REGlobalData.BACKTRACK_PARENS] = parensAt;
+        System.arraycopy(gData.stateStack, 0, stack,
+                         at + REGlobalData.BACKTRACK_SIZE, stateTop);
+        if (parenCount != 0) {
+            long[] parensStack = gData.parensStack;
+            if (parensAt + parenCount > parensStack.length) {
+                parensStack = new long[Math.max(2 * parensStack.length,
+                                                parensAt + parenCount)];
+                System.arraycopy(gData.parensStack, 0, parensStack, 0,
+                                 parensAt);
+                gData.parensStack = parensStack;
+            }
+            System.arraycopy(gData.parens, 0, parensStack, parensAt,
+                             parenCount);
+        }
+        gData.backTrackStackTop = at;
     }
 
     /*
@@ -1526,7 +1752,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
     }
 
     /* Compile the source of the class into a RECharSet */
-    private static void
+    static void
     processCharSet(REGlobalData gData, RECharSet charSet)
     {
         synchronized (charSet) {
@@ -1755,7 +1981,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
      *   get a match, true if we do and update the state of the
      *   input and pc if the update flag is true.
      */
-    private static int simpleMatch(REGlobalData gData, String input, int op,
+    static int simpleMatch(REGlobalData gData, String input, int op,
                                    byte[] program, int pc, int end, boolean updatecp)
     {
         boolean result = false;
@@ -2093,11 +2319,15 @@ public class NativeRegExp extends IdScriptableObject implements Function
                     case REOP_ASSERTTEST:
                     case REOP_ASSERTNOTTEST:
                     {
-                        REProgState state = popProgState(gData);
-                        gData.cp = state.index;
-                        gData.backTrackStackTop = state.backTrack;
-                        continuationPc = state.continuationPc;
-                        continuationOp = state.continuationOp;
+                        int state = popProgState(gData);
+                        int[] stack = gData.stateStack;
+                        gData.cp = stack[state + REGlobalData.STATE_INDEX];
+                        gData.backTrackStackTop =
+                            stack[state + REGlobalData.STATE_BACKTRACK];
+                        continuationPc =
+                            stack[state + REGlobalData.STATE_CONTINUATION_PC];
+                        continuationOp =
+                            stack[state + REGlobalData.STATE_CONTINUATION_OP];
                         if (op == REOP_ASSERTNOTTEST) {
                             result = !result;
                         }
@@ -2150,7 +2380,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
                             default:
                                 throw Kit.codeBug();
                         }
-                        pushProgState(gData, min, max, gData.cp, null,
+                        pushProgState(gData, min, max, gData.cp, -1,
                                 continuationOp, continuationPc);
                         if (greedy) {
                             pushBackTrackState(gData, REOP_REPEAT, pc);
@@ -2190,33 +2420,41 @@ public class NativeRegExp extends IdScriptableObject implements Function
                     {
                         int nextpc, nextop;
                         do {
-                            REProgState state = popProgState(gData);
+                            int state = popProgState(gData);
+                            int[] stack = gData.stateStack;
+                            int stateMin = stack[state + REGlobalData.STATE_MIN];
+                            int stateMax = stack[state + REGlobalData.STATE_MAX];
+                            int stateContinuationOp =
+                                stack[state + REGlobalData.STATE_CONTINUATION_OP];
+                            int stateContinuationPc =
+                                stack[state + REGlobalData.STATE_CONTINUATION_PC];
                             if (!result) {
                                 // Failed, see if we have enough children.
-                                if (state.min == 0)
+                                if (stateMin == 0)
                                     result = true;
-                                continuationPc = state.continuationPc;
-                                continuationOp = state.continuationOp;
+                                continuationPc = stateContinuationPc;
+                                continuationOp = stateContinuationOp;
                                 pc += 2 * INDEX_LEN;  /* <parencount> & <parenindex> */
                                 pc += getOffset(program, pc);
                                 break switchStatement;
                             }
-                            if (state.min == 0 && gData.cp == state.index) {
+                            if (stateMin == 0 && gData.cp
+                                    == stack[state + REGlobalData.STATE_INDEX]) {
                                 // matched an empty string, that'll get us nowhere
                                 result = false;
-                                continuationPc = state.continuationPc;
-                                continuationOp = state.continuationOp;
+                                continuationPc = stateContinuationPc;
+                                continuationOp = stateContinuationOp;
                                 pc += 2 * INDEX_LEN;
                                 pc += getOffset(program, pc);
                                 break switchStatement;
                             }
-                            int new_min = state.min, new_max = state.max;
+                            int new_min = stateMin, new_max = stateMax;
                             if (new_min != 0) new_min--;
                             if (new_max != -1) new_max--;
                             if (new_max == 0) {
                                 result = true;
-                                continuationPc = state.continuationPc;
-                                continuationOp = state.continuationOp;
+                                continuationPc = stateContinuationPc;
+                                continuationOp = stateContinuationOp;
                                 pc += 2 * INDEX_LEN;
                                 pc += getOffset(program, pc);
                                 break switchStatement;
@@ -2229,8 +2467,8 @@ public class NativeRegExp extends IdScriptableObject implements Function
                                 int match = simpleMatch(gData, input, nextop, program, nextpc, end, true);
                                 if (match < 0) {
                                     result = (new_min == 0);
-                                    continuationPc = state.continuationPc;
-                                    continuationOp = state.continuationOp;
+                                    continuationPc = stateContinuationPc;
+                                    continuationOp = stateContinuationOp;
                                     pc += 2 * INDEX_LEN;  /* <parencount> & <parenindex> */
                                     pc += getOffset(program, pc);
                                     break switchStatement;
@@ -2240,11 +2478,11 @@ public class NativeRegExp extends IdScriptableObject implements Function
                             }
                             continuationOp = REOP_REPEAT;
                             continuationPc = pc;
-                            pushProgState(gData, new_min, new_max, startcp, null,
-                                    state.continuationOp, state.continuationPc);
+                            pushProgState(gData, new_min, new_max, startcp, -1,
+                                    stateContinuationOp, stateContinuationPc);
                             if (new_min == 0) {
                                 pushBackTrackState(gData, REOP_REPEAT, pc, startcp,
-                                        state.continuationOp, state.continuationPc);
+                                        stateContinuationOp, stateContinuationPc);
                                 int parenCount = getIndex(program, pc);
                                 int parenIndex = getIndex(program, pc + INDEX_LEN);
                                 for (int k = 0; k < parenCount; k++) {
@@ -2260,14 +2498,21 @@ public class NativeRegExp extends IdScriptableObject implements Function
 
                     case REOP_MINIMALREPEAT:
                     {
-                        REProgState state = popProgState(gData);
+                        int state = popProgState(gData);
+                        int[] stack = gData.stateStack;
+                        int stateMin = stack[state + REGlobalData.STATE_MIN];
+                        int stateMax = stack[state + REGlobalData.STATE_MAX];
+                        int stateContinuationOp =
+                            stack[state + REGlobalData.STATE_CONTINUATION_OP];
+                        int stateContinuationPc =
+                            stack[state + REGlobalData.STATE_CONTINUATION_PC];
                         if (!result) {
                             //
                             // Non-greedy failure - try to consume another child.
                             //
-                            if (state.max == -1 || state.max > 0) {
-                                pushProgState(gData, state.min, state.max, gData.cp, null,
-                                        state.continuationOp, state.continuationPc);
+                            if (stateMax == -1 || stateMax > 0) {
+                                pushProgState(gData, stateMin, stateMax, gData.cp, -1,
+                                        stateContinuationOp, stateContinuationPc);
                                 continuationOp = REOP_MINIMALREPEAT;
                                 continuationPc = pc;
                                 int parenCount = getIndex(program, pc);
@@ -2281,22 +2526,23 @@ public class NativeRegExp extends IdScriptableObject implements Function
                                 continue;
                             }
                             // Don't need to adjust pc since we're going to pop.
-                            continuationPc = state.continuationPc;
-                            continuationOp = state.continuationOp;
+                            continuationPc = stateContinuationPc;
+                            continuationOp = stateContinuationOp;
                             break;
                         }
-                        if (state.min == 0 && gData.cp == state.index) {
+                        if (stateMin == 0 && gData.cp
+                                == stack[state + REGlobalData.STATE_INDEX]) {
                             // Matched an empty string, that'll get us nowhere.
                             result = false;
-                            continuationPc = state.continuationPc;
-                            continuationOp = state.continuationOp;
+                            continuationPc = stateContinuationPc;
+                            continuationOp = stateContinuationOp;
                             break;
                         }
-                        int new_min = state.min, new_max = state.max;
+                        int new_min = stateMin, new_max = stateMax;
                         if (new_min != 0) new_min--;
                         if (new_max != -1) new_max--;
-                        pushProgState(gData, new_min, new_max, gData.cp, null,
-                                state.continuationOp, state.continuationPc);
+                        pushProgState(gData, new_min, new_max, gData.cp, -1,
+                                stateContinuationOp, stateContinuationPc);
                         if (new_min != 0) {
                             continuationOp = REOP_MINIMALREPEAT;
                             continuationPc = pc;
@@ -2309,8 +2555,8 @@ public class NativeRegExp extends IdScriptableObject implements Function
                             }
                             op = program[pc++];
                         } else {
-                            continuationPc = state.continuationPc;
-                            continuationOp = state.continuationOp;
+                            continuationPc = stateContinuationPc;
+                            continuationOp = stateContinuationOp;
                             pushBackTrackState(gData, REOP_MINIMALREPEAT, pc);
                             popProgState(gData);
                             pc += 2 * INDEX_LEN;
@@ -2333,16 +2579,31 @@ public class NativeRegExp extends IdScriptableObject implements Function
              *  Otherwise this is a complete and utter failure.
              */
             if (!result) {
-                REBackTrackData backTrackData = gData.backTrackStackTop;
-                if (backTrackData != null) {
-                    gData.backTrackStackTop = backTrackData.previous;
-                    gData.parens = backTrackData.parens;
-                    gData.cp = backTrackData.cp;
-                    gData.stateStackTop = backTrackData.stateStackTop;
-                    continuationOp = backTrackData.continuationOp;
-                    continuationPc = backTrackData.continuationPc;
-                    pc = backTrackData.pc;
-                    op = backTrackData.op;
+                int backTrack = gData.backTrackStackTop;
+                if (backTrack >= 0) {
+                    if (++gData.backtrackCount > gData.backtrackLimit) {
+                        // matchRegExp takes over
+                        return false;
+                    }
+                    int[] stack = gData.backTrackStack;
+                    int stateTop = stack[backTrack + REGlobalData.BACKTRACK_STATE_TOP];
+                    System.arraycopy(stack, backTrack + REGlobalData.BACKTRACK_SIZE,
+                                     gData.stateStack, 0, stateTop);
+                    gData.stateStackTop = stateTop;
+                    if (gData.parens != null) {
+                        System.arraycopy(gData.parensStack,
+                                stack[backTrack + REGlobalData.BACKTRACK_PARENS],
+                                gData.parens, 0, gData.parens.length);
+                    }
+                    gData.backTrackStackTop =
+                        stack[backTrack + REGlobalData.BACKTRACK_PREVIOUS];
+                    gData.cp = stack[backTrack + REGlobalData.BACKTRACK_CP];
+                    continuationOp =
+                        stack[backTrack + REGlobalData.BACKTRACK_CONTINUATION_OP];
+                    continuationPc =
+                        stack[backTrack + REGlobalData.BACKTRACK_CONTINUATION_PC];
+                    pc = stack[backTrack + REGlobalData.BACKTRACK_PC];
+                    op = stack[backTrack + REGlobalData.BACKTRACK_OP];
                     continue;
                 }
                 return false;
@@ -2355,21 +2616,48 @@ public class NativeRegExp extends IdScriptableObject implements Function
 
     private static boolean
     matchRegExp(REGlobalData gData, RECompiled re,
-                String input, int start, int end, boolean multiline)
+                String input, int start, int end, boolean multiline,
+                RegExpMatcher matcher, int engine)
     {
-        if (re.parenCount != 0) {
-            gData.parens = new long[re.parenCount];
-        } else {
+        if (re.parenCount == 0) {
             gData.parens = null;
+        } else if (gData.parens == null
+                   || gData.parens.length != re.parenCount) {
+            gData.parens = new long[re.parenCount];
         }
 
-        gData.backTrackStackTop = null;
-        gData.stateStackTop = null;
+        gData.backTrackStackTop = -1;
+        gData.stateStackTop = 0;
 
         gData.multiline = multiline || (re.flags & JSREG_MULTILINE) != 0;
         gData.regexp = re;
 
+        if (engine == Context.REGEXP_ENGINE_LINEAR) {
+            RENfa nfa = RENfa.get(re);
+            if (nfa != null) {
+                return nfa.search(gData, input, start, start, end);
+            }
+        }
+        gData.backtrackCount = 0;
+        gData.backtrackLimit = Integer.MAX_VALUE;
+        if (engine == Context.REGEXP_ENGINE_DEFAULT
+            && end - start < (Integer.MAX_VALUE - BACKTRACK_LIMIT)
+                             / BACKTRACK_PER_CHAR)
+        {
+            gData.backtrackLimit = BACKTRACK_LIMIT
+                                   + BACKTRACK_PER_CHAR * (end - start);
+        }
+
         int anchorCh = gData.regexp.anchorCh;
+        // Position of the required literal at or after i
+        int requiredIndex = -1;
+        // Captures of the compiled matcher, followed by its retry budget
+        int[] caps = null;
+        int budget = 2 * re.parenCount;
+        if (matcher != null) {
+            caps = new int[budget + 1];
+            caps[budget] = gData.backtrackLimit;
+        }
         //
         // have to include the position beyond the last character
         //  in order to detect end-of-input/line condition
@@ -2380,7 +2668,12 @@ public class NativeRegExp extends IdScriptableObject implements Function
             // the string until that match is made, or fail if it can't be
             // found at all.
             //
-            if (anchorCh >= 0) {
+            if (re.prefix != null) {
+                i = input.indexOf(re.prefix, i);
+                if (i < 0) {
+                    return false;
+                }
+            } else if (anchorCh >= 0) {
                 for (;;) {
                     if (i == end) {
                         return false;
@@ -2394,19 +2687,85 @@ public class NativeRegExp extends IdScriptableObject implements Function
                     }
                     ++i;
                 }
+            } else if (re.firstPc >= 0) {
+                byte op = re.program[re.firstPc];
+                gData.cp = i;
+                while (simpleMatch(gData, input, op, re.program,
+                                   re.firstPc + 1, end, false) < 0)
+                {
+                    if (gData.cp == end) {
+                        return false;
+                    }
+                    gData.cp++;
+                }
+                i = gData.cp;
+            }
+            if (re.required != null && i > requiredIndex) {
+                requiredIndex = input.indexOf(re.required, i);
+                if (requiredIndex < 0) {
+                    return false;
+                }
             }
             gData.cp = i;
             gData.skipped = i - start;
+            if (matcher != null) {
+                int matchEnd = matcher.match(input, i, end, gData.multiline,
+                                             caps);
+                if (matchEnd < 0 && caps[budget] < 0) {
+                    // Same as for the interpreter below
+                    caps[budget] = Integer.MAX_VALUE;
+                    RENfa nfa = RENfa.get(re);
+                    if (nfa != null) {
+                        return nfa.search(gData, input, start, i, end);
+                    }
+                    matchEnd = matcher.match(input, i, end, gData.multiline,
+                                             caps);
+                }
+                if (matchEnd >= 0) {
+                    gData.cp = matchEnd;
+                    // all groups take part in matches of compiled programs
+                    for (int j = 0; j < re.parenCount; j++) {
+                        gData.setParens(j, caps[2 * j], caps[2 * j + 1]);
+                    }
+                    return true;
+                }
+                if (anchorCh == ANCHOR_BOL && !gData.multiline) {
+                    gData.skipped = end;
+                    return false;
+                }
+                continue;
+            }
             for (int j = 0; j < re.parenCount; j++) {
                 gData.parens[j] = -1L;
             }
             boolean result = executeREBytecode(gData, input, end);
 
-            gData.backTrackStackTop = null;
-            gData.stateStackTop = null;
+            gData.backTrackStackTop = -1;
+            gData.stateStackTop = 0;
             if (result) {
                 return true;
             }
+            if (gData.backtrackCount > gData.backtrackLimit) {
+                // Backtracking takes too long, possibly exponentially so.
+                // Finish the search from i in linear time if the program
+                // allows, else just go on.
+                gData.backtrackLimit = Integer.MAX_VALUE;
+                RENfa nfa = RENfa.get(re);
+                if (nfa != null) {
+                    return nfa.search(gData, input, start, i, end);
+                }
+                for (int j = 0; j < re.parenCount; j++) {
+                    gData.parens[j] = -1L;
+                }
+                gData.cp = i;
+                gData.skipped = i - start;
+                result = executeREBytecode(gData, input, end);
+                gData.backTrackStackTop = -1;
+                gData.stateStackTop = 0;
+                if (result) {
+                    return true;
+                }
+            }
             if (anchorCh == ANCHOR_BOL && !gData.multiline) {
                 gData.skipped = end;
                 return false;
@@ -2422,18 +2781,37 @@ public class NativeRegExp extends IdScriptableObject implements Function
     Object executeRegExp(Context cx, Scriptable scope, RegExpImpl res,
                          String str, int indexp[], int matchType)
     {
-        REGlobalData gData = new REGlobalData();
+        // Take the match state of this Context so that a nested match
+        // can not share it
+        REGlobalData gData = res.globalData;
+        if (gData == null) {
+            gData = new REGlobalData();
+        } else {
+            res.globalData = null;
+        }
 
         int start = indexp[0];
         int end = str.length();
         if (start > end)
             start = end;
+        RegExpMatcher matcher = re.matcher;
+        if (matcher == null && re.execCount < COMPILE_THRESHOLD
+            && cx.getOptimizationLevel() >= 0)
+        {
+            if (++re.execCount == COMPILE_THRESHOLD) {
+                matcher = REBytecodeCompiler.compile(re);
+                re.matcher = matcher;
+            }
+        }
         //
         // Call the recursive matcher to do the real work.
         //
         boolean matches = matchRegExp(gData, re, str, start, end,
-                                      res.multiline);
+                                      res.multiline, matcher,
+                                      cx.getRegExpEngine());
         if (!matches) {
+            gData.reset();
+            res.globalData = gData;
             if (matchType != PREFIX) return null;
             return Undefined.instance;
         }
@@ -2466,28 +2844,18 @@ public class NativeRegExp extends IdScriptableObject implements Function
             obj.put(0, obj, matchstr);
         }
 
-        if (re.parenCount == 0) {
-            res.parens = null;
-            res.lastParen = new SubString();
-        } else {
-            SubString parsub = null;
-            int num;
-            res.parens = new SubString[re.parenCount];
-            for (num = 0; num < re.parenCount; num++) {
+        res.setParenCaptures(str, gData.parens, re.parenCount);
+        if (matchType != TEST) {
+            for (int num = 0; num < re.parenCount; num++) {
                 int cap_index = gData.parensIndex(num);
                 if (cap_index != -1) {
                     int cap_length = gData.parensLength(num);
-                    parsub = new SubString(str, cap_index, cap_length);
-                    res.parens[num] = parsub;
-                    if (matchType != TEST)
-                        obj.put(num+1, obj, parsub.toString());
-                }
-                else {
-                    if (matchType != TEST)
-                        obj.put(num+1, obj, Undefined.instance);
+                    obj.put(num+1, obj,
+                            str.substring(cap_index, cap_index + cap_length));
+                } else {
+                    obj.put(num+1, obj, Undefined.instance);
                 }
             }
-            res.lastParen = parsub;
         }
 
         if (! (matchType == TEST)) {
@@ -2539,6 +2907,8 @@ public class NativeRegExp extends IdScriptableObject implements Function
         res.rightContext.index = ep;
         res.rightContext.length = end - ep;
 
+        gData.reset();
+        res.globalData = gData;
         return result;
     }
 
@@ -2776,23 +3146,6 @@ public class NativeRegExp extends IdScriptableObject implements Function
 
 }       // class NativeRegExp
 
-class RECompiled implements Serializable
-{
-    private static final long serialVersionUID = -6144956577595844213L;
-
-    final char[] source;    /* locked source string, sans // */
-    int parenCount;         /* number of parenthesized submatches */
-    int flags;              /* flags  */
-    byte[] program;         /* regular expression bytecode */
-    int classCount;         /* count [...] bitmaps */
-    RECharSet[] classList;  /* list of [...] bitmaps */
-    int anchorCh = -1;      /* if >= 0, then re starts with this literal char */
-
-    RECompiled(String str) {
-        this.source = str.toCharArray();
-    }
-}
-
 class RENode {
 
     RENode(byte op)
@@ -2856,125 +3209,3 @@ class CompilerState {
     int         progLength;   /* estimated bytecode length */
     RENode      result;
 }
-
-class REProgState
-{
-    REProgState(REProgState previous, int min, int max, int index,
-                REBackTrackData backTrack,
-                int continuationOp, int continuationPc)
-    {
-        this.previous = previous;
-        this.min = min;
-        this.max = max;
-        this.index = index;
-        this.continuationOp = continuationOp;
-        this.continuationPc = continuationPc;
-        this.backTrack = backTrack;
-    }
-
-    final REProgState previous; // previous state in stack
-
-    final int min;                      /* current quantifier min */
-    final int max;                      /* current quantifier max */
-    final int index;                    /* progress in text */
-    final int continuationOp;
-    final int continuationPc;
-    final REBackTrackData backTrack; // used by ASSERT_  to recover state
-}
-
-class REBackTrackData {
-
-    REBackTrackData(REGlobalData gData, int op, int pc, int cp,
-                    int continuationOp, int continuationPc)
-    {
-        previous = gData.backTrackStackTop;
-        this.op = op;
-        this.pc = pc;
-        this.cp = cp;
-        this.continuationOp = continuationOp;
-        this.continuationPc = continuationPc;
-        parens = gData.parens;
-        stateStackTop = gData.stateStackTop;
-    }
-
-    final REBackTrackData previous;
-
-    final int op;                             /* operator */
-    final int pc;                             /* bytecode pointer */
-    final int cp;                             /* char buffer index */
-    final int continuationOp;                 /* continuation op */
-    final int continuationPc;                 /* continuation pc */
-    final long[] parens;                      /* parenthesis captures */
-    final REProgState stateStackTop;          /* state of op that backtracked */
-}
-
-class REGlobalData {
-    boolean multiline;
-    RECompiled regexp;              /* the RE in execution */
-    int skipped;                    /* chars skipped anchoring this r.e. */
-
-    int cp;                         /* char buffer index */
-    long[] parens;                  /* parens captures */
-
-    REProgState stateStackTop;       /* stack of state of current ancestors */
-
-    REBackTrackData backTrackStackTop;  /* last matched-so-far position */
-
-
-    /**
-     * Get start of parenthesis capture contents, -1 for empty.
-     */
-    int parensIndex(int i)
-    {
-        return (int)(parens[i]);
-    }
-
-    /**
-     * Get length of parenthesis capture contents.
-     */
-    int parensLength(int i)
-    {
-        return (int)(parens[i] >>> 32);
-    }
-
-    void setParens(int i, int index, int length)
-    {
-        // clone parens array if it is shared with backtrack state
-        if (backTrackStackTop != null && backTrackStackTop.parens == parens) {
-            parens = parens.clone();
-        }
-        parens[i] = (index & 0xffffffffL) | ((long)length << 32);
-    }
-
-}
-
-/*
- * This struct holds a bitmap representation of a class from a regexp.
- * There's a list of these referenced by the classList field in the NativeRegExp
- * struct below. The initial state has startIndex set to the offset in the
- * original regexp source of the beginning of the class contents. The first
- * use of the class converts the source representation into a bitmap.
- *
- */
-final class RECharSet implements Serializable
-{
-    private static final long serialVersionUID = 7931787979395898394L;
-
-    RECharSet(int length, int startIndex, int strlength, boolean sense)
-    {
-        this.length = length;
-        this.startIndex = startIndex;
-        this.strlength = strlength;
-        this.sense = sense;
-    }
-
-    final int length;
-    final int startIndex;
-    final int strlength;
-    final boolean sense;
-
-    volatile transient boolean converted;
-    volatile transient byte[] bits;
-}
-
-
@@ -0,0 +1,809 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.regexp;
+
+import static org.mozilla.classfile.ClassFileWriter.ACC_FINAL;
+import static org.mozilla.classfile.ClassFileWriter.ACC_PUBLIC;
+import static org.mozilla.javascript.regexp.NativeRegExp.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mozilla.classfile.ByteCode;
+import org.mozilla.classfile.ClassFileWriter;
+import org.mozilla.javascript.DefiningClassLoader;
+
+/**
+ * Translates the program of a compiled regular expression into a JVM
+ * class, so that the JIT can optimize matching for that expression.
+ * <p>
+ * Only programs that never need to backtrack into a group are translated:
+ * a sequence of simple ops, capturing parentheses and quantifiers over a
+ * single simple op, which covers most patterns used to parse text.
+ * Alternatives, lookahead, back references and quantified groups are left
+ * to the interpreter in NativeRegExp.
+ * <p>
+ * The sequence is split after every quantifier. Each piece becomes a
+ * method that matches its simple ops in line, then loops over the
+ * quantified op and calls the method for the next piece for each
+ * candidate length, longest first for greedy quantifiers. Each candidate
+ * that fails is a retry taken from the budget that follows the captures,
+ * so that a pattern like /a*a*a*b/ gives up as the interpreter does.
+ */
+final class REBytecodeCompiler
+{
+    private static final String SUPER_CLASS_NAME =
+        "org.mozilla.javascript.regexp.RegExpMatcher";
+    private static final String MATCH_SIGNATURE =
+        "(Ljava/lang/String;IIZ[I)I";
+
+    // Longest sequence that is translated, to bound the size of the class
+    private static final int MAX_NODES = 256;
+    // Classes with more ranges than this are tested through their bitmap
+    private static final int MAX_INLINE_RANGES = 4;
+
+    // Locals of the generated methods
+    private static final int
+        INPUT_LOCAL     = 1,
+        CP_LOCAL        = 2,
+        END_LOCAL       = 3,
+        MULTILINE_LOCAL = 4,
+        CAPS_LOCAL      = 5,
+        CHAR_LOCAL      = 6,
+        COUNT_LOCAL     = 7,
+        TEMP_LOCAL      = 8,
+        LOCALS_COUNT    = 9;
+
+    private static int serial;
+
+    private final RECompiled regexp;
+    private final List<Node> nodes = new ArrayList<Node>();
+    private byte[][] classBits;
+    private ClassFileWriter cfw;
+
+    private static final class Node
+    {
+        Node(byte op)
+        {
+            this.op = op;
+        }
+
+        final byte op;
+        int index;          // paren or class index
+        String literal;     // for REOP_FLAT and REOP_FLATi
+        char chr;           // for single character ops
+        int min, max;       // for quantifiers, max is -1 if unbounded
+        boolean greedy;
+        Node atom;          // quantified simple op
+    }
+
+    private REBytecodeCompiler(RECompiled regexp)
+    {
+        this.regexp = regexp;
+    }
+
+    /**
+     * Returns a matcher for the program of regexp, or null if the program
+     * uses constructs that are not translated or the class could not be
+     * defined.
+     */
+    static RegExpMatcher compile(RECompiled regexp)
+    {
+        REBytecodeCompiler compiler = new REBytecodeCompiler(regexp);
+        try {
+            if (!compiler.parse()) {
+                return null;
+            }
+            String className = "org.mozilla.javascript.gen.RegExp_"
+                               + nextSerial();
+            byte[] bytes = compiler.generate(className);
+
+            DefiningClassLoader loader = new DefiningClassLoader(
+                REBytecodeCompiler.class.getClassLoader());
+            Class<?> cl = loader.defineClass(className, bytes);
+            loader.linkClass(cl);
+            RegExpMatcher matcher = (RegExpMatcher)
+                cl.getDeclaredConstructor().newInstance();
+            matcher.classBits = compiler.classBits;
+            return matcher;
+        } catch (RuntimeException e) {
+            // Either an invalid character class, which the interpreter
+            // reports when it reaches it, or a class loader that is not
+            // allowed here
+            return null;
+        } catch (ReflectiveOperationException e) {
+            // The generated class could not be instantiated, the program
+            // keeps running in the interpreter
+            return null;
+        }
+    }
+
+    private static synchronized int nextSerial()
+    {
+        return ++serial;
+    }
+
+    private boolean parse()
+    {
+        byte[] program = regexp.program;
+        int pc = 0;
+        for (;;) {
+            if (nodes.size() > MAX_NODES) {
+                return false;
+            }
+            byte op = program[pc++];
+            if (op == REOP_END) {
+                return true;
+            }
+            Node node = new Node(op);
+            switch (op) {
+              case REOP_LPAREN:
+              case REOP_RPAREN:
+                node.index = getIndex(program, pc);
+                pc += INDEX_LEN;
+                break;
+
+              case REOP_STAR:
+              case REOP_PLUS:
+              case REOP_OPT:
+              case REOP_QUANT:
+              case REOP_MINIMALSTAR:
+              case REOP_MINIMALPLUS:
+              case REOP_MINIMALOPT:
+              case REOP_MINIMALQUANT:
+                pc = parseQuantifier(node, program, pc);
+                if (pc < 0) {
+                    return false;
+                }
+                break;
+
+              default:
+                if (op < REOP_SIMPLE_START || op > REOP_SIMPLE_END
+                    || op == REOP_BACKREF)
+                {
+                    return false;
+                }
+                pc = parseSimple(node, program, pc);
+                break;
+            }
+            nodes.add(node);
+        }
+    }
+
+    private int parseQuantifier(Node node, byte[] program, int pc)
+    {
+        byte op = node.op;
+        node.greedy = op == REOP_STAR || op == REOP_PLUS
+                      || op == REOP_OPT || op == REOP_QUANT;
+        switch (op) {
+          case REOP_STAR:
+          case REOP_MINIMALSTAR:
+            node.min = 0;
+            node.max = -1;
+            break;
+          case REOP_PLUS:
+          case REOP_MINIMALPLUS:
+            node.min = 1;
+            node.max = -1;
+            break;
+          case REOP_OPT:
+          case REOP_MINIMALOPT:
+            node.min = 0;
+            node.max = 1;
+            break;
+          default:
+            node.min = getIndex(program, pc);
+            pc += INDEX_LEN;
+            // see emitREBytecode for the + 1
+            node.max = getIndex(program, pc) - 1;
+            pc += INDEX_LEN;
+            break;
+        }
+        int parenCount = getIndex(program, pc);
+        pc += 2 * INDEX_LEN;  // <parencount> & <parenindex>
+        int next = pc + getIndex(program, pc);
+        pc += INDEX_LEN;
+        if (parenCount != 0 || node.max == 0) {
+            // the interpreter matches the atom of x{0} once, leave such
+            // quantifiers to it to get the same results
+            return -1;
+        }
+
+        Node atom = new Node(program[pc++]);
+        switch (atom.op) {
+          case REOP_EMPTY:
+          case REOP_BOL:
+          case REOP_EOL:
+          case REOP_WBDRY:
+          case REOP_WNONBDRY:
+          case REOP_BACKREF:
+            // zero width or variable width, leave them to the interpreter
+            return -1;
+          default:
+            if (atom.op < REOP_SIMPLE_START || atom.op > REOP_SIMPLE_END) {
+                return -1;
+            }
+        }
+        pc = parseSimple(atom, program, pc);
+        if (program[pc++] != REOP_ENDCHILD || pc != next) {
+            return -1;
+        }
+        node.atom = atom;
+        return pc;
+    }
+
+    private int parseSimple(Node node, byte[] program, int pc)
+    {
+        switch (node.op) {
+          case REOP_FLAT:
+          case REOP_FLATi:
+            int offset = getIndex(program, pc);
+            pc += INDEX_LEN;
+            int length = getIndex(program, pc);
+            pc += INDEX_LEN;
+            node.literal = new String(regexp.source, offset, length);
+            break;
+          case REOP_FLAT1:
+          case REOP_FLAT1i:
+            node.chr = (char)(program[pc++] & 0xFF);
+            break;
+          case REOP_UCFLAT1:
+          case REOP_UCFLAT1i:
+            node.chr = (char)getIndex(program, pc);
+            pc += INDEX_LEN;
+            break;
+          case REOP_CLASS:
+          case REOP_NCLASS:
+            node.index = getIndex(program, pc);
+            pc += INDEX_LEN;
+            break;
+          default:
+            break;
+        }
+        return pc;
+    }
+
+    private static int width(Node atom)
+    {
+        return atom.literal != null ? atom.literal.length() : 1;
+    }
+
+    private byte[] generate(String className)
+    {
+        cfw = new ClassFileWriter(className, SUPER_CLASS_NAME, null);
+        cfw.setFlags((short)(ACC_PUBLIC | ACC_FINAL));
+
+        cfw.startMethod("<init>", "()V", ACC_PUBLIC);
+        cfw.addLoadThis();
+        cfw.addInvoke(ByteCode.INVOKESPECIAL, SUPER_CLASS_NAME,
+                      "<init>", "()V");
+        cfw.add(ByteCode.RETURN);
+        cfw.stopMethod((short)1);
+
+        // Split the sequence after each quantifier
+        List<Integer> starts = new ArrayList<Integer>();
+        starts.add(Integer.valueOf(0));
+        for (int i = 0; i != nodes.size(); i++) {
+            if (nodes.get(i).atom != null) {
+                starts.add(Integer.valueOf(i + 1));
+            }
+        }
+        int pieceCount = starts.size();
+        for (int piece = 0; piece != pieceCount; piece++) {
+            int from = starts.get(piece).intValue();
+            int to = piece + 1 < pieceCount
+                     ? starts.get(piece + 1).intValue() : nodes.size();
+            boolean nextIsEmpty = piece + 2 == pieceCount
+                                  && starts.get(piece + 1).intValue()
+                                     == nodes.size();
+            generatePiece(piece, from, to, nextIsEmpty);
+            if (nextIsEmpty) {
+                // the remaining piece would only return cp
+                break;
+            }
+        }
+        return cfw.toByteArray();
+    }
+
+    private static String pieceName(int piece)
+    {
+        return piece == 0 ? "match" : "match" + piece;
+    }
+
+    private void generatePiece(int piece, int from, int to,
+                               boolean nextIsEmpty)
+    {
+        cfw.startMethod(pieceName(piece), MATCH_SIGNATURE,
+                        (short)(ACC_PUBLIC | ACC_FINAL));
+        // Give the temporaries a type on all paths
+        cfw.addPush(0);
+        cfw.addIStore(CHAR_LOCAL);
+        cfw.addPush(0);
+        cfw.addIStore(COUNT_LOCAL);
+        cfw.addPush(0);
+        cfw.addIStore(TEMP_LOCAL);
+
+        int fail = cfw.acquireLabel();
+        boolean canFail = false;
+        for (int i = from; i != to; i++) {
+            Node node = nodes.get(i);
+            canFail |= canFail(node, nextIsEmpty);
+            switch (node.op) {
+              case REOP_LPAREN:
+                cfw.addALoad(CAPS_LOCAL);
+                cfw.addPush(2 * node.index);
+                cfw.addILoad(CP_LOCAL);
+                cfw.add(ByteCode.IASTORE);
+                cfw.addALoad(CAPS_LOCAL);
+                cfw.addPush(2 * node.index + 1);
+                cfw.addPush(0);
+                cfw.add(ByteCode.IASTORE);
+                break;
+              case REOP_RPAREN:
+                cfw.addALoad(CAPS_LOCAL);
+                cfw.addPush(2 * node.index + 1);
+                cfw.addILoad(CP_LOCAL);
+                cfw.addALoad(CAPS_LOCAL);
+                cfw.addPush(2 * node.index);
+                cfw.add(ByteCode.IALOAD);
+                cfw.add(ByteCode.ISUB);
+                cfw.add(ByteCode.IASTORE);
+                break;
+              default:
+                if (node.atom != null) {
+                    if (node.greedy) {
+                        generateGreedy(node, piece, nextIsEmpty, fail);
+                    } else {
+                        generateMinimal(node, piece, nextIsEmpty, fail);
+                    }
+                } else if (generateZeroWidth(node, fail)) {
+                    // nothing more to do
+                } else {
+                    generateAtom(node, CP_LOCAL, fail);
+                    cfw.add(ByteCode.IINC, CP_LOCAL, width(node));
+                }
+                break;
+            }
+        }
+        if (to == nodes.size() && !nextIsEmpty) {
+            cfw.addILoad(CP_LOCAL);
+            cfw.add(ByteCode.IRETURN);
+        }
+
+        if (canFail) {
+            cfw.markLabel(fail);
+            cfw.addPush(-1);
+            cfw.add(ByteCode.IRETURN);
+        }
+        cfw.stopMethod((short)LOCALS_COUNT);
+    }
+
+    /**
+     * Returns true if the code for node jumps to the fail label, which
+     * must not be emitted when nothing jumps to it.
+     */
+    private static boolean canFail(Node node, boolean nextIsEmpty)
+    {
+        switch (node.op) {
+          case REOP_LPAREN:
+          case REOP_RPAREN:
+          case REOP_EMPTY:
+            return false;
+        }
+        if (node.atom != null && node.greedy && node.min == 0) {
+            return !nextIsEmpty;
+        }
+        return true;
+    }
+
+    /**
+     * Leaves cp + count * width of the atom on the stack.
+     */
+    private void pushCountedPosition(Node node)
+    {
+        cfw.addILoad(CP_LOCAL);
+        cfw.addILoad(COUNT_LOCAL);
+        int width = width(node.atom);
+        if (width != 1) {
+            cfw.addPush(width);
+            cfw.add(ByteCode.IMUL);
+        }
+        cfw.add(ByteCode.IADD);
+    }
+
+    /**
+     * Matches the rest of the sequence at cp + count * width and returns
+     * its result if it matched. Otherwise takes one retry from the budget
+     * and fails once the budget is used up.
+     */
+    private void generateTryNext(Node node, int piece, boolean nextIsEmpty,
+                                 int fail)
+    {
+        if (nextIsEmpty) {
+            pushCountedPosition(node);
+            cfw.add(ByteCode.IRETURN);
+            return;
+        }
+        cfw.addLoadThis();
+        cfw.addALoad(INPUT_LOCAL);
+        pushCountedPosition(node);
+        cfw.addILoad(END_LOCAL);
+        cfw.addILoad(MULTILINE_LOCAL);
+        cfw.addALoad(CAPS_LOCAL);
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL, cfw.getClassName(),
+                      pieceName(piece + 1), MATCH_SIGNATURE);
+        cfw.addIStore(TEMP_LOCAL);
+        cfw.addILoad(TEMP_LOCAL);
+        int failed = cfw.acquireLabel();
+        cfw.add(ByteCode.IFLT, failed);
+        cfw.addILoad(TEMP_LOCAL);
+        cfw.add(ByteCode.IRETURN);
+        cfw.markLabel(failed);
+        // --caps[budget] < 0
+        int budget = 2 * regexp.parenCount;
+        cfw.addALoad(CAPS_LOCAL);
+        cfw.addPush(budget);
+        cfw.add(ByteCode.DUP2);
+        cfw.add(ByteCode.IALOAD);
+        cfw.addPush(1);
+        cfw.add(ByteCode.ISUB);
+        cfw.add(ByteCode.IASTORE);
+        cfw.addALoad(CAPS_LOCAL);
+        cfw.addPush(budget);
+        cfw.add(ByteCode.IALOAD);
+        cfw.add(ByteCode.IFLT, fail);
+    }
+
+    private void generateGreedy(Node node, int piece, boolean nextIsEmpty,
+                                int fail)
+    {
+        int loop = cfw.acquireLabel();
+        int counted = cfw.acquireLabel();
+
+        // count how often the atom matches, up to max
+        cfw.addPush(0);
+        cfw.addIStore(COUNT_LOCAL);
+        cfw.markLabel(loop);
+        if (node.max != -1) {
+            cfw.addILoad(COUNT_LOCAL);
+            cfw.addPush(node.max);
+            cfw.add(ByteCode.IF_ICMPGE, counted);
+        }
+        pushCountedPosition(node);
+        cfw.addIStore(TEMP_LOCAL);
+        generateAtom(node.atom, TEMP_LOCAL, counted);
+        cfw.add(ByteCode.IINC, COUNT_LOCAL, 1);
+        cfw.add(ByteCode.GOTO, loop);
+
+        cfw.markLabel(counted);
+        if (node.min != 0) {
+            cfw.addILoad(COUNT_LOCAL);
+            cfw.addPush(node.min);
+            cfw.add(ByteCode.IF_ICMPLT, fail);
+        }
+        if (nextIsEmpty) {
+            pushCountedPosition(node);
+            cfw.add(ByteCode.IRETURN);
+            return;
+        }
+
+        // then give back one match at a time
+        int backtrack = cfw.acquireLabel();
+        cfw.markLabel(backtrack);
+        generateTryNext(node, piece, false, fail);
+        cfw.addILoad(COUNT_LOCAL);
+        cfw.addPush(node.min);
+        cfw.add(ByteCode.IF_ICMPLE, fail);
+        cfw.addILoad(COUNT_LOCAL);
+        cfw.addPush(1);
+        cfw.add(ByteCode.ISUB);
+        cfw.addIStore(COUNT_LOCAL);
+        cfw.add(ByteCode.GOTO, backtrack);
+    }
+
+    private void generateMinimal(Node node, int piece, boolean nextIsEmpty,
+                                 int fail)
+    {
+        int loop = cfw.acquireLabel();
+        int more = cfw.acquireLabel();
+
+        cfw.addPush(0);
+        cfw.addIStore(COUNT_LOCAL);
+        if (nextIsEmpty) {
+            // nothing follows, so the shortest match wins
+            cfw.markLabel(loop);
+            cfw.addILoad(COUNT_LOCAL);
+            cfw.addPush(node.min);
+            cfw.add(ByteCode.IF_ICMPGE, more);
+            pushCountedPosition(node);
+            cfw.addIStore(TEMP_LOCAL);
+            generateAtom(node.atom, TEMP_LOCAL, fail);
+            cfw.add(ByteCode.IINC, COUNT_LOCAL, 1);
+            cfw.add(ByteCode.GOTO, loop);
+            cfw.markLabel(more);
+            pushCountedPosition(node);
+            cfw.add(ByteCode.IRETURN);
+            return;
+        }
+        cfw.markLabel(loop);
+        if (node.min != 0) {
+            cfw.addILoad(COUNT_LOCAL);
+            cfw.addPush(node.min);
+            cfw.add(ByteCode.IF_ICMPLT, more);
+        }
+        generateTryNext(node, piece, nextIsEmpty, fail);
+        cfw.markLabel(more);
+        if (node.max != -1) {
+            cfw.addILoad(COUNT_LOCAL);
+            cfw.addPush(node.max);
+            cfw.add(ByteCode.IF_ICMPGE, fail);
+        }
+        pushCountedPosition(node);
+        cfw.addIStore(TEMP_LOCAL);
+        generateAtom(node.atom, TEMP_LOCAL, fail);
+        cfw.add(ByteCode.IINC, COUNT_LOCAL, 1);
+        cfw.add(ByteCode.GOTO, loop);
+    }
+
+    /**
+     * Generates the assertions that do not consume input and returns
+     * false for other ops.
+     */
+    private boolean generateZeroWidth(Node node, int fail)
+    {
+        int ok;
+        switch (node.op) {
+          case REOP_EMPTY:
+            return true;
+
+          case REOP_BOL:
+          case REOP_EOL:
+            ok = cfw.acquireLabel();
+            cfw.addILoad(CP_LOCAL);
+            if (node.op == REOP_BOL) {
+                cfw.add(ByteCode.IFEQ, ok);
+            } else {
+                cfw.addILoad(END_LOCAL);
+                cfw.add(ByteCode.IF_ICMPEQ, ok);
+            }
+            cfw.addILoad(MULTILINE_LOCAL);
+            cfw.add(ByteCode.IFEQ, fail);
+            cfw.addALoad(INPUT_LOCAL);
+            cfw.addILoad(CP_LOCAL);
+            if (node.op == REOP_BOL) {
+                cfw.addPush(1);
+                cfw.add(ByteCode.ISUB);
+            }
+            addCharAt();
+            cfw.addInvoke(ByteCode.INVOKESTATIC, SUPER_CLASS_NAME,
+                          "isLineTerm", "(C)Z");
+            cfw.add(ByteCode.IFEQ, fail);
+            cfw.markLabel(ok);
+            return true;
+
+          case REOP_WBDRY:
+          case REOP_WNONBDRY:
+            cfw.addALoad(INPUT_LOCAL);
+            cfw.addILoad(CP_LOCAL);
+            cfw.addILoad(END_LOCAL);
+            cfw.addInvoke(ByteCode.INVOKESTATIC, SUPER_CLASS_NAME,
+                          "isWordBoundary", "(Ljava/lang/String;II)Z");
+            cfw.add(node.op == REOP_WBDRY ? ByteCode.IFEQ : ByteCode.IFNE,
+                    fail);
+            return true;
+        }
+        return false;
+    }
+
+    private void addCharAt()
+    {
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/String",
+                      "charAt", "(I)C");
+    }
+
+    /**
+     * Tests the simple op that consumes input at the position held in
+     * local posLocal and jumps to fail if it does not match.
+     */
+    private void generateAtom(Node node, int posLocal, int fail)
+    {
+        if (node.literal != null) {
+            cfw.addALoad(INPUT_LOCAL);
+            if (node.op == REOP_FLAT) {
+                cfw.addPush(node.literal);
+                cfw.addILoad(posLocal);
+                cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/String",
+                              "startsWith", "(Ljava/lang/String;I)Z");
+            } else {
+                cfw.addILoad(posLocal);
+                cfw.addPush(node.literal);
+                cfw.addInvoke(ByteCode.INVOKESTATIC, SUPER_CLASS_NAME,
+                              "startsWithIgnoreCase",
+                              "(Ljava/lang/String;ILjava/lang/String;)Z");
+            }
+            cfw.add(ByteCode.IFEQ, fail);
+            return;
+        }
+
+        cfw.addILoad(posLocal);
+        cfw.addILoad(END_LOCAL);
+        cfw.add(ByteCode.IF_ICMPGE, fail);
+        cfw.addALoad(INPUT_LOCAL);
+        cfw.addILoad(posLocal);
+        addCharAt();
+        cfw.addIStore(CHAR_LOCAL);
+
+        int ok = cfw.acquireLabel();
+        switch (node.op) {
+          case REOP_DOT:
+            generateStaticTest("isLineTerm", ok, fail);
+            break;
+          case REOP_DIGIT:
+            generateRangeTest('0', '9', fail, ok);
+            break;
+          case REOP_NONDIGIT:
+            generateRangeTest('0', '9', ok, fail);
+            break;
+          case REOP_ALNUM:
+            generateStaticTest("isWord", fail, ok);
+            break;
+          case REOP_NONALNUM:
+            generateStaticTest("isWord", ok, fail);
+            break;
+          case REOP_SPACE:
+            generateStaticTest("isSpace", fail, ok);
+            break;
+          case REOP_NONSPACE:
+            generateStaticTest("isSpace", ok, fail);
+            break;
+          case REOP_FLAT1:
+          case REOP_UCFLAT1:
+            cfw.addILoad(CHAR_LOCAL);
+            cfw.addPush(node.chr);
+            cfw.add(ByteCode.IF_ICMPNE, fail);
+            break;
+          case REOP_FLAT1i:
+          case REOP_UCFLAT1i:
+            generateCharIgnoreCase(node.chr, fail);
+            break;
+          case REOP_CLASS:
+          case REOP_NCLASS:
+            generateClassTest(node.index, fail);
+            break;
+          default:
+            throw new IllegalStateException(String.valueOf(node.op));
+        }
+        cfw.markLabel(ok);
+    }
+
+    /**
+     * Calls a static boolean helper with the current character, jumping
+     * to ifFalse or ifTrue.
+     */
+    private void generateStaticTest(String helper, int ifFalse, int ifTrue)
+    {
+        cfw.addILoad(CHAR_LOCAL);
+        cfw.addInvoke(ByteCode.INVOKESTATIC, SUPER_CLASS_NAME,
+                      helper, "(C)Z");
+        cfw.add(ByteCode.IFEQ, ifFalse);
+        cfw.add(ByteCode.GOTO, ifTrue);
+    }
+
+    /**
+     * Jumps to inRange if the current character is within [low, high] and
+     * to outOfRange otherwise.
+     */
+    private void generateRangeTest(int low, int high, int outOfRange,
+                                   int inRange)
+    {
+        if (low == high) {
+            cfw.addILoad(CHAR_LOCAL);
+            cfw.addPush(low);
+            cfw.add(ByteCode.IF_ICMPNE, outOfRange);
+        } else {
+            cfw.addILoad(CHAR_LOCAL);
+            cfw.addPush(low);
+            cfw.add(ByteCode.IF_ICMPLT, outOfRange);
+            cfw.addILoad(CHAR_LOCAL);
+            cfw.addPush(high);
+            cfw.add(ByteCode.IF_ICMPGT, outOfRange);
+        }
+        cfw.add(ByteCode.GOTO, inRange);
+    }
+
+    private void generateCharIgnoreCase(char c, int fail)
+    {
+        char upper = upcase(c);
+        int ok = cfw.acquireLabel();
+        cfw.addILoad(CHAR_LOCAL);
+        cfw.addPush(c);
+        cfw.add(ByteCode.IF_ICMPEQ, ok);
+        if (upper < 128) {
+            // Only ASCII characters upcase to ASCII characters
+            if (upper != c) {
+                cfw.addILoad(CHAR_LOCAL);
+                cfw.addPush(upper);
+                cfw.add(ByteCode.IF_ICMPEQ, ok);
+            }
+            if ('A' <= upper && upper <= 'Z') {
+                char lower = (char)(upper + ('a' - 'A'));
+                if (lower != c) {
+                    cfw.addILoad(CHAR_LOCAL);
+                    cfw.addPush(lower);
+                    cfw.add(ByteCode.IF_ICMPEQ, ok);
+                }
+            }
+            cfw.add(ByteCode.GOTO, fail);
+        } else {
+            cfw.addILoad(CHAR_LOCAL);
+            cfw.addInvoke(ByteCode.INVOKESTATIC, SUPER_CLASS_NAME,
+                          "upcase", "(C)C");
+            cfw.addPush(upper);
+            cfw.add(ByteCode.IF_ICMPNE, fail);
+        }
+        cfw.markLabel(ok);
+    }
+
+    private void generateClassTest(int index, int fail)
+    {
+        RECharSet charSet = regexp.classList[index];
+        if (!charSet.converted) {
+            REGlobalData gData = new REGlobalData();
+            gData.regexp = regexp;
+            processCharSet(gData, charSet);
+        }
+        byte[] bits = charSet.length == 0 ? new byte[0] : charSet.bits;
+
+        int member = cfw.acquireLabel();
+        int notMember = cfw.acquireLabel();
+        int ok = cfw.acquireLabel();
+        List<int[]> ranges = toRanges(bits);
+        if (ranges.size() <= MAX_INLINE_RANGES) {
+            for (int[] range : ranges) {
+                int next = cfw.acquireLabel();
+                generateRangeTest(range[0], range[1], next, member);
+                cfw.markLabel(next);
+            }
+            cfw.add(ByteCode.GOTO, notMember);
+        } else {
+            if (classBits == null) {
+                classBits = new byte[regexp.classList.length][];
+            }
+            classBits[index] = bits;
+            cfw.addLoadThis();
+            cfw.addPush(index);
+            cfw.addILoad(CHAR_LOCAL);
+            cfw.addInvoke(ByteCode.INVOKEVIRTUAL, SUPER_CLASS_NAME,
+                          "inClass", "(IC)Z");
+            cfw.add(ByteCode.IFEQ, notMember);
+            cfw.add(ByteCode.GOTO, member);
+        }
+        // see NativeRegExp.classMatcher
+        cfw.markLabel(member);
+        cfw.add(ByteCode.GOTO, charSet.sense ? ok : fail);
+        cfw.markLabel(notMember);
+        cfw.add(ByteCode.GOTO, charSet.sense ? fail : ok);
+        cfw.markLabel(ok);
+    }
+
+    private static List<int[]> toRanges(byte[] bits)
+    {
+        List<int[]> ranges = new ArrayList<int[]>();
+        int start = -1;
+        int count = bits.length * 8;
+        for (int c = 0; c <= count; c++) {
+            boolean set = c < count && (bits[c >> 3] & (1 << (c & 0x7))) != 0;
+            if (set && start < 0) {
+                start = c;
+            } else if (!set && start >= 0) {
+                ranges.add(new int[] { start, c - 1 });
+                start = -1;
+            }
+        }
+        return ranges;
+    }
+}
@@ -0,0 +1,38 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.regexp;
+
+import java.io.Serializable;
+
+class RECompiled implements Serializable
+{
+    private static final long serialVersionUID = -6144956577595844213L;
+
+    final char[] source;    /* locked source string, sans // */
+    int parenCount;         /* number of parenthesized submatches */
+    int flags;              /* flags  */
+    byte[] program;         /* regular expression bytecode */
+    int classCount;         /* count [...] bitmaps */
+    RECharSet[] classList;  /* list of [...] bitmaps */
+    int anchorCh = -1;      /* if >= 0, then re starts with this literal char */
+    String prefix;          /* literal every match starts with, or null */
+    String required;        /* literal every match contains, or null */
+    int firstPc = -1;       /* if >= 0, pc of op every match starts with */
+
+    // Number of executions, counted up to the point where the program is
+    // handed to REBytecodeCompiler
+    transient int execCount;
+    // Generated matcher for the program, null if not (yet) available
+    transient volatile RegExpMatcher matcher;
+    // Linear time matcher for the program, built when first needed
+    transient volatile RENfa nfa;
+    transient volatile boolean nfaUnsupported;
+
+    RECompiled(String str) {
+        this.source = str.toCharArray();
+    }
+}
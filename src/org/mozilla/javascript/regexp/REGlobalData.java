@@ -0,0 +1,93 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.regexp;
+
+class REGlobalData {
+    /*
+     * Layout of a program state record in stateStack.
+     */
+    static final int STATE_MIN = 0;             /* current quantifier min */
+    static final int STATE_MAX = 1;             /* current quantifier max */
+    static final int STATE_INDEX = 2;           /* progress in text */
+    static final int STATE_CONTINUATION_OP = 3;
+    static final int STATE_CONTINUATION_PC = 4;
+    static final int STATE_BACKTRACK = 5;       /* used by ASSERT_ to recover state */
+    static final int STATE_SIZE = 6;
+
+    /*
+     * Layout of a backtrack record in backTrackStack. The header is
+     * followed by a copy of the state stack.
+     */
+    static final int BACKTRACK_PREVIOUS = 0;    /* previous record or -1 */
+    static final int BACKTRACK_OP = 1;          /* operator */
+    static final int BACKTRACK_PC = 2;          /* bytecode pointer */
+    static final int BACKTRACK_CP = 3;          /* char buffer index */
+    static final int BACKTRACK_CONTINUATION_OP = 4;
+    static final int BACKTRACK_CONTINUATION_PC = 5;
+    static final int BACKTRACK_STATE_TOP = 6;   /* length of the state copy */
+    static final int BACKTRACK_PARENS = 7;      /* saved parens in parensStack */
+    static final int BACKTRACK_SIZE = 8;
+
+    /* stacks that grew past this are dropped after a match */
+    private static final int MAX_KEPT_STACK = 1 << 16;
+
+    boolean multiline;
+    RECompiled regexp;              /* the RE in execution */
+    int skipped;                    /* chars skipped anchoring this r.e. */
+
+    int cp;                         /* char buffer index */
+    long[] parens;                  /* parens captures */
+
+    int[] stateStack = new int[16 * STATE_SIZE]; /* state of current ancestors */
+    int stateStackTop;              /* length of stateStack in use */
+
+    int[] backTrackStack = new int[256];
+    int backTrackStackTop = -1;     /* last matched-so-far position */
+    long[] parensStack = new long[64];
+
+    int backtrackCount;             /* backtracks in this search */
+    int backtrackLimit;             /* when to give up backtracking */
+
+    /**
+     * Prepare for reuse by the next match on the same Context.
+     */
+    void reset()
+    {
+        regexp = null;
+        if (stateStack.length > MAX_KEPT_STACK) {
+            stateStack = new int[16 * STATE_SIZE];
+        }
+        if (backTrackStack.length > MAX_KEPT_STACK) {
+            backTrackStack = new int[256];
+        }
+        if (parensStack.length > MAX_KEPT_STACK) {
+            parensStack = new long[64];
+        }
+    }
+
+    /**
+     * Get start of parenthesis capture contents, -1 for empty.
+     */
+    int parensIndex(int i)
+    {
+        return (int)(parens[i]);
+    }
+
+    /**
+     * Get length of parenthesis capture contents.
+     */
+    int parensLength(int i)
+    {
+        return (int)(parens[i] >>> 32);
+    }
+
+    void setParens(int i, int index, int length)
+    {
+        parens[i] = (index & 0xffffffffL) | ((long)length << 32);
+    }
+
+}
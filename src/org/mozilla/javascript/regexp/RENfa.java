@@ -0,0 +1,572 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.regexp;
+
+import static org.mozilla.javascript.regexp.NativeRegExp.*;
+
+import java.util.Arrays;
+
+/**
+ * Runs a regular expression program as a nondeterministic automaton,
+ * advancing all alternatives together one input character at a time
+ * (Pike's VM). The alternatives are kept in the priority order the
+ * backtracking matcher would try them in, so the same match and submatches
+ * are found, but each input character is examined at most once per
+ * instruction and the time is linear in the input length.
+ * <p>
+ * Back references and lookahead assertions cannot be simulated this way;
+ * {@link #get} returns null for programs using them.
+ */
+final class RENfa
+{
+    // Instructions
+    private static final byte CHAR      = 0;  // the character in arg
+    private static final byte CHAR_FOLD = 1;  // the upcased character in arg
+    private static final byte CONSUME   = 2;  // single character op at pc arg
+    private static final byte TEST      = 3;  // zero width op at pc arg
+    private static final byte SPLIT     = 4;  // go to arg, else to arg2
+    private static final byte JUMP      = 5;  // go to arg
+    private static final byte SAVE      = 6;  // register arg = cp
+    private static final byte RESET     = 7;  // clear arg2 parens from arg
+    private static final byte CHECK     = 8;  // fail if register arg == cp
+    private static final byte MATCH     = 9;
+
+    // Larger programs, mostly from big counted repetitions, are left to
+    // the backtracking matcher
+    private static final int MAX_SIZE = 10000;
+    // Deeper nesting of optional repetitions is left to it as well
+    private static final int MAX_LOOP_DEPTH = 6;
+
+    private final RECompiled regexp;
+    private final byte[] program;
+    private byte[] kinds = new byte[32];
+    private int[] args = new int[32];
+    private int[] args2 = new int[32];
+    // Registers holding the start of the optional repetitions enclosing
+    // each instruction, innermost last
+    private int[][] loops = new int[32][];
+    private int[] currentLoops;
+    private int size;
+    // Register 0 holds the start of the match, then the start and end of
+    // each paren, then the start of each optional repetition
+    private int registerCount;
+
+    private RENfa(RECompiled regexp)
+    {
+        this.regexp = regexp;
+        this.program = regexp.program;
+        this.registerCount = 1 + 2 * regexp.parenCount;
+    }
+
+    /**
+     * Returns the automaton for the program, or null if it cannot be
+     * simulated without backtracking.
+     */
+    static RENfa get(RECompiled regexp)
+    {
+        RENfa nfa = regexp.nfa;
+        if (nfa == null && !regexp.nfaUnsupported) {
+            nfa = new RENfa(regexp);
+            int pc = nfa.emitSequence(0);
+            if (pc < 0 || regexp.program[pc] != REOP_END) {
+                regexp.nfaUnsupported = true;
+                return null;
+            }
+            nfa.emit(MATCH, 0, 0);
+            regexp.nfa = nfa;
+        }
+        return nfa;
+    }
+
+    private int emit(byte kind, int arg, int arg2)
+    {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            byte[] newKinds = new byte[capacity];
+            System.arraycopy(kinds, 0, newKinds, 0, size);
+            kinds = newKinds;
+            int[] newArgs = new int[capacity];
+            System.arraycopy(args, 0, newArgs, 0, size);
+            args = newArgs;
+            newArgs = new int[capacity];
+            System.arraycopy(args2, 0, newArgs, 0, size);
+            args2 = newArgs;
+            int[][] newLoops = new int[capacity][];
+            System.arraycopy(loops, 0, newLoops, 0, size);
+            loops = newLoops;
+        }
+        kinds[size] = kind;
+        args[size] = arg;
+        args2[size] = arg2;
+        loops[size] = currentLoops;
+        return size++;
+    }
+
+    /*
+     * Translate the ops from pc up to the END, ENDCHILD or JUMP ending the
+     * sequence and return the pc of that op, or -1 if an op is not
+     * supported or the automaton gets too large.
+     */
+    private int emitSequence(int pc)
+    {
+        for (;;) {
+            if (size > MAX_SIZE) {
+                return -1;
+            }
+            byte op = program[pc];
+            switch (op) {
+              case REOP_END:
+              case REOP_ENDCHILD:
+              case REOP_JUMP:
+                return pc;
+
+              case REOP_LPAREN:
+                emit(SAVE, 1 + 2 * getIndex(program, pc + 1), 0);
+                pc += 1 + INDEX_LEN;
+                break;
+              case REOP_RPAREN:
+                emit(SAVE, 2 + 2 * getIndex(program, pc + 1), 0);
+                pc += 1 + INDEX_LEN;
+                break;
+
+              case REOP_ALTPREREQ:
+              case REOP_ALTPREREQi:
+              case REOP_ALTPREREQ2:
+                // the prerequisite only speeds up the alternation
+                pc = emitAlternation(pc + 1 + 2 * INDEX_LEN);
+                break;
+              case REOP_ALT:
+                pc = emitAlternation(pc + 1);
+                break;
+
+              case REOP_STAR:
+              case REOP_PLUS:
+              case REOP_OPT:
+              case REOP_QUANT:
+              case REOP_MINIMALSTAR:
+              case REOP_MINIMALPLUS:
+              case REOP_MINIMALOPT:
+              case REOP_MINIMALQUANT:
+                pc = emitQuantifier(pc);
+                break;
+
+              case REOP_FLAT:
+              case REOP_FLATi:
+              {
+                int offset = getIndex(program, pc + 1);
+                int length = getIndex(program, pc + 1 + INDEX_LEN);
+                for (int i = 0; i < length; i++) {
+                    char c = regexp.source[offset + i];
+                    if (op == REOP_FLAT) {
+                        emit(CHAR, c, 0);
+                    } else {
+                        emit(CHAR_FOLD, upcase(c), 0);
+                    }
+                }
+                pc += 1 + 2 * INDEX_LEN;
+                break;
+              }
+
+              case REOP_BOL:
+              case REOP_EOL:
+              case REOP_WBDRY:
+              case REOP_WNONBDRY:
+                emit(TEST, pc, 0);
+                pc++;
+                break;
+
+              case REOP_DOT:
+              case REOP_DIGIT:
+              case REOP_NONDIGIT:
+              case REOP_ALNUM:
+              case REOP_NONALNUM:
+              case REOP_SPACE:
+              case REOP_NONSPACE:
+                emit(CONSUME, pc, 0);
+                pc++;
+                break;
+              case REOP_FLAT1:
+              case REOP_FLAT1i:
+                emit(CONSUME, pc, 0);
+                pc += 2;
+                break;
+              case REOP_UCFLAT1:
+              case REOP_UCFLAT1i:
+              case REOP_CLASS:
+              case REOP_NCLASS:
+                emit(CONSUME, pc, 0);
+                pc += 1 + INDEX_LEN;
+                break;
+
+              default:
+                // back references and assertions
+                return -1;
+            }
+            if (pc < 0) {
+                return -1;
+            }
+        }
+    }
+
+    /*
+     * pc is at the offset of the second alternative. Return the pc after
+     * the alternation.
+     */
+    private int emitAlternation(int pc)
+    {
+        int secondPc = pc + getOffset(program, pc);
+        int split = emit(SPLIT, size + 1, 0);
+        int end = emitSequence(pc + INDEX_LEN);
+        if (end < 0 || program[end] != REOP_JUMP) {
+            return -1;
+        }
+        int jump = emit(JUMP, 0, 0);
+        args2[split] = size;
+        end = emitSequence(secondPc);
+        if (end < 0 || program[end] != REOP_JUMP) {
+            return -1;
+        }
+        int jump2 = emit(JUMP, 0, 0);
+        args[jump] = size;
+        args[jump2] = size;
+        return end + 1 + getOffset(program, end + 1);
+    }
+
+    private int emitQuantifier(int pc)
+    {
+        byte op = program[pc++];
+        boolean greedy = op == REOP_STAR || op == REOP_PLUS
+                         || op == REOP_OPT || op == REOP_QUANT;
+        int min, max;
+        switch (op) {
+          case REOP_STAR:
+          case REOP_MINIMALSTAR:
+            min = 0;
+            max = -1;
+            break;
+          case REOP_PLUS:
+          case REOP_MINIMALPLUS:
+            min = 1;
+            max = -1;
+            break;
+          case REOP_OPT:
+          case REOP_MINIMALOPT:
+            min = 0;
+            max = 1;
+            break;
+          default:
+            min = getOffset(program, pc);
+            pc += INDEX_LEN;
+            // see emitREBytecode for the - 1
+            max = getOffset(program, pc) - 1;
+            pc += INDEX_LEN;
+            break;
+        }
+        if (max == 0) {
+            // the backtracking matcher does not stop x{0} after no
+            // repetitions, leave it to keep the results the same
+            return -1;
+        }
+        int parenCount = getIndex(program, pc);
+        int parenIndex = getIndex(program, pc + INDEX_LEN);
+        pc += 2 * INDEX_LEN;
+        int nextPc = pc + getOffset(program, pc);
+        int childPc = pc + INDEX_LEN;
+
+        // Like the backtracking matcher, clear the parens of the child
+        // before all but the first repetition, and before the mandatory
+        // ones only if not greedy
+        for (int i = 0; i < min; i++) {
+            if (i != 0 && !greedy && parenCount != 0) {
+                emit(RESET, parenIndex, parenCount);
+            }
+            if (!emitChild(childPc)) {
+                return -1;
+            }
+        }
+        // Like the backtracking matcher, fail optional repetitions that
+        // match the empty string
+        int mark = registerCount++;
+        if (max == -1) {
+            int first = -1;
+            if (greedy && min == 0 && parenCount != 0) {
+                first = emit(SPLIT, 0, 0);
+                if (emitOptionalChild(childPc, mark, parenIndex, 0,
+                                      -1) < 0)
+                {
+                    return -1;
+                }
+            }
+            int loop = emit(SPLIT, 0, 0);
+            int body = emitOptionalChild(childPc, mark, parenIndex,
+                                         parenCount, loop);
+            if (body < 0) {
+                return -1;
+            }
+            setSplit(loop, greedy, body, size);
+            if (first >= 0) {
+                setSplit(first, greedy, first + 1, size);
+            }
+        } else {
+            if (max - min > MAX_SIZE) {
+                return -1;
+            }
+            // Each repetition may be skipped to get to the end of all
+            int[] splits = new int[max - min];
+            for (int i = 0; i < splits.length; i++) {
+                splits[i] = emit(SPLIT, 0, 0);
+                boolean reset = !greedy || min + i != 0;
+                if (emitOptionalChild(childPc, mark, parenIndex,
+                                      reset ? parenCount : 0, -1) < 0
+                    || size > MAX_SIZE)
+                {
+                    return -1;
+                }
+            }
+            for (int split : splits) {
+                setSplit(split, greedy, split + 1, size);
+            }
+        }
+        return nextPc;
+    }
+
+    private boolean emitChild(int childPc)
+    {
+        int end = emitSequence(childPc);
+        return end >= 0 && program[end] == REOP_ENDCHILD;
+    }
+
+    /*
+     * Emit one optional repetition of the child, followed by a jump to
+     * loop if it is not -1. Return the start of the repetition or -1.
+     */
+    private int emitOptionalChild(int childPc, int mark, int parenIndex,
+                                  int parenCount, int loop)
+    {
+        int body = emit(SAVE, mark, 0);
+        int[] outerLoops = currentLoops;
+        int depth = outerLoops == null ? 0 : outerLoops.length;
+        if (depth == MAX_LOOP_DEPTH) {
+            return -1;
+        }
+        currentLoops = new int[depth + 1];
+        if (depth != 0) {
+            System.arraycopy(outerLoops, 0, currentLoops, 0, depth);
+        }
+        currentLoops[depth] = mark;
+        if (parenCount != 0) {
+            emit(RESET, parenIndex, parenCount);
+        }
+        if (!emitChild(childPc)) {
+            return -1;
+        }
+        emit(CHECK, mark, 0);
+        currentLoops = outerLoops;
+        if (loop >= 0) {
+            emit(JUMP, loop, 0);
+        }
+        return body;
+    }
+
+    private void setSplit(int split, boolean greedy, int body, int exit)
+    {
+        args[split] = greedy ? body : exit;
+        args2[split] = greedy ? exit : body;
+    }
+
+    /**
+     * Finds the first match at or after cp like the backtracking matcher
+     * does from start and sets gData the same way.
+     */
+    boolean search(REGlobalData gData, String input, int start, int cp,
+                   int end)
+    {
+        Threads current = new Threads(size);
+        Threads next = new Threads(size);
+        int[] stackPcs = new int[2 * size + 1];
+        int[][] stackRegs = new int[2 * size + 1][];
+        int[] match = null;
+        int matchEnd = -1;
+        for (;; cp++) {
+            if (match == null) {
+                // a new thread starting here has the lowest priority
+                int[] regs = new int[registerCount];
+                Arrays.fill(regs, -1);
+                regs[0] = cp;
+                addThread(gData, input, end, current, 0, regs, cp,
+                          stackPcs, stackRegs);
+            } else if (current.count == 0) {
+                break;
+            }
+            next.count = 0;
+            char c = cp < end ? input.charAt(cp) : 0;
+            for (int i = 0; i < current.count; i++) {
+                int pc = current.pcs[i];
+                int[] regs = current.regs[i];
+                current.regs[i] = null;
+                boolean step;
+                switch (kinds[pc]) {
+                  case MATCH:
+                    match = regs;
+                    matchEnd = cp;
+                    // the remaining threads have lower priority
+                    for (int j = i + 1; j < current.count; j++) {
+                        current.regs[j] = null;
+                    }
+                    i = current.count;
+                    continue;
+                  case CHAR:
+                    step = cp < end && c == args[pc];
+                    break;
+                  case CHAR_FOLD:
+                    step = cp < end && upcase(c) == args[pc];
+                    break;
+                  default:
+                    gData.cp = cp;
+                    step = cp < end
+                           && simpleMatch(gData, input, program[args[pc]],
+                                          program, args[pc] + 1, end,
+                                          false) >= 0;
+                    break;
+                }
+                if (step) {
+                    addThread(gData, input, end, next, pc + 1, regs, cp + 1,
+                              stackPcs, stackRegs);
+                }
+            }
+            Threads t = current;
+            current = next;
+            next = t;
+            if (cp >= end) {
+                break;
+            }
+        }
+        if (match == null) {
+            return false;
+        }
+        gData.cp = matchEnd;
+        gData.skipped = match[0] - start;
+        for (int j = 0; j < regexp.parenCount; j++) {
+            int s = match[1 + 2 * j];
+            int e = match[2 + 2 * j];
+            if (s < 0 || e < 0) {
+                gData.parens[j] = -1L;
+            } else {
+                gData.setParens(j, s, e - s);
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Follow the instructions that do not consume input from pc and add
+     * the consuming ones reached to list in priority order.
+     */
+    private void addThread(REGlobalData gData, String input, int end,
+                           Threads list, int pc, int[] regs, int cp,
+                           int[] stackPcs, int[][] stackRegs)
+    {
+        int stamp = cp + 1;
+        int top = 0;
+        stackPcs[top] = pc;
+        stackRegs[top++] = regs;
+        while (top != 0) {
+            pc = stackPcs[--top];
+            regs = stackRegs[top];
+            stackRegs[top] = null;
+            // Instructions that do not consume input behave differently
+            // depending on which enclosing repetitions are still empty,
+            // so they can be reached once for each combination
+            int bit = 0;
+            int[] enclosing = loops[pc];
+            if (enclosing != null && kinds[pc] >= TEST) {
+                for (int k = 0; k < enclosing.length; k++) {
+                    if (regs[enclosing[k]] == cp) {
+                        bit |= 1 << k;
+                    }
+                }
+            }
+            if (list.visited[pc] != stamp) {
+                list.visited[pc] = stamp;
+                list.visitedBits[pc] = 0L;
+            } else if ((list.visitedBits[pc] & (1L << bit)) != 0) {
+                continue;
+            }
+            list.visitedBits[pc] |= 1L << bit;
+            switch (kinds[pc]) {
+              case JUMP:
+                stackPcs[top] = args[pc];
+                stackRegs[top++] = regs;
+                break;
+              case SPLIT:
+                stackPcs[top] = args2[pc];
+                stackRegs[top++] = regs;
+                stackPcs[top] = args[pc];
+                stackRegs[top++] = regs;
+                break;
+              case SAVE:
+                regs = regs.clone();
+                regs[args[pc]] = cp;
+                stackPcs[top] = pc + 1;
+                stackRegs[top++] = regs;
+                break;
+              case RESET:
+                regs = regs.clone();
+                for (int k = 0; k < args2[pc]; k++) {
+                    regs[1 + 2 * (args[pc] + k)] = -1;
+                    regs[2 + 2 * (args[pc] + k)] = -1;
+                }
+                stackPcs[top] = pc + 1;
+                stackRegs[top++] = regs;
+                break;
+              case CHECK:
+                if (regs[args[pc]] != cp) {
+                    stackPcs[top] = pc + 1;
+                    stackRegs[top++] = regs;
+                }
+                break;
+              case TEST:
+                gData.cp = cp;
+                if (simpleMatch(gData, input, program[args[pc]], program,
+                                args[pc] + 1, end, false) >= 0)
+                {
+                    stackPcs[top] = pc + 1;
+                    stackRegs[top++] = regs;
+                }
+                break;
+              default:
+                list.add(pc, regs);
+                break;
+            }
+        }
+    }
+
+    private static final class Threads
+    {
+        final int[] pcs;
+        final int[][] regs;
+        // Holds cp + 1 for the instructions already reached at cp
+        final int[] visited;
+        // Combinations of empty enclosing repetitions reached at cp
+        final long[] visitedBits;
+        int count;
+
+        Threads(int size)
+        {
+            pcs = new int[size];
+            regs = new int[size][];
+            visited = new int[size];
+            visitedBits = new long[size];
+        }
+
+        void add(int pc, int[] r)
+        {
+            pcs[count] = pc;
+            regs[count++] = r;
+        }
+    }
+}
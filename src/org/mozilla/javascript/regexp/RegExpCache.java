@@ -0,0 +1,196 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.regexp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of compiled regular expressions shared by all contexts.
+ * Compiled programs are never modified after compilation, so RegExp objects
+ * created from the same source and flags can share one program. The least
+ * recently used entry is dropped when the cache is full.
+ */
+public final class RegExpCache
+{
+    /**
+     * System property holding the maximum number of compiled regular
+     * expressions kept in the cache. The default is 256; 0 turns the cache
+     * off.
+     */
+    public static final String CACHE_SIZE_PROPERTY = "rhino.regexp.cache.size";
+
+    private static final int DEFAULT_CACHE_SIZE = 256;
+
+    private static final int maxSize = initMaxSize();
+
+    private static final Map<Key, RECompiled> cache =
+        new LinkedHashMap<Key, RECompiled>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, RECompiled> e)
+            {
+                if (size() > maxSize) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+
+    // guarded by cache
+    private static long hitCount;
+    private static long missCount;
+    private static long evictionCount;
+
+    private RegExpCache() { }
+
+    private static int initMaxSize()
+    {
+        try {
+            return Math.max(0, Integer.getInteger(CACHE_SIZE_PROPERTY,
+                                                  DEFAULT_CACHE_SIZE));
+        } catch (SecurityException e) {
+            return DEFAULT_CACHE_SIZE;
+        }
+    }
+
+    static RECompiled get(String source, String flags, boolean flat)
+    {
+        if (maxSize == 0) {
+            return null;
+        }
+        Key key = new Key(source, flags, flat);
+        synchronized (cache) {
+            RECompiled regexp = cache.get(key);
+            if (regexp != null) {
+                hitCount++;
+            } else {
+                missCount++;
+            }
+            return regexp;
+        }
+    }
+
+    static void put(String source, String flags, boolean flat,
+                    RECompiled regexp)
+    {
+        if (maxSize == 0) {
+            return;
+        }
+        Key key = new Key(source, flags, flat);
+        synchronized (cache) {
+            cache.put(key, regexp);
+        }
+    }
+
+    /**
+     * Returns the maximum number of entries, 0 if the cache is off.
+     */
+    public static int getMaximumSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of compiled regular expressions in the cache.
+     */
+    public static int size()
+    {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Returns how many compilations were answered from the cache.
+     */
+    public static long getHitCount()
+    {
+        synchronized (cache) {
+            return hitCount;
+        }
+    }
+
+    /**
+     * Returns how many compilations had to compile the pattern.
+     */
+    public static long getMissCount()
+    {
+        synchronized (cache) {
+            return missCount;
+        }
+    }
+
+    /**
+     * Returns how many entries were dropped to stay within the size limit.
+     */
+    public static long getEvictionCount()
+    {
+        synchronized (cache) {
+            return evictionCount;
+        }
+    }
+
+    /**
+     * Returns the fraction of lookups answered from the cache, or 0 when
+     * there were no lookups yet.
+     */
+    public static double getHitRate()
+    {
+        synchronized (cache) {
+            long total = hitCount + missCount;
+            return total == 0 ? 0.0 : (double)hitCount / total;
+        }
+    }
+
+    /**
+     * Removes all entries and resets the counters.
+     */
+    public static void clear()
+    {
+        synchronized (cache) {
+            cache.clear();
+            hitCount = 0;
+            missCount = 0;
+            evictionCount = 0;
+        }
+    }
+
+    private static final class Key
+    {
+        final String source;
+        final String flags;
+        final boolean flat;
+
+        Key(String source, String flags, boolean flat)
+        {
+            this.source = source;
+            this.flags = flags == null ? "" : flags;
+            this.flat = flat;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (source.hashCode() * 31 + flags.hashCode()) * 2
+                   + (flat ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key)obj;
+            return flat == other.flat && source.equals(other.source)
+                   && flags.equals(other.flags);
+        }
+    }
+}
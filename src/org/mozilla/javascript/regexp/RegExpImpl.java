@@ -111,16 +111,21 @@ public class RegExpImpl implements RegExpProxy {
                 } else {
                     String str = data.str;
                     int index = str.indexOf(search);
-                    if (index >= 0) {
-                        int slen = search.length();
-                        this.lastParen = null;
-                        this.leftContext = new SubString(str, 0, index);
-                        this.lastMatch = new SubString(str, index, slen);
-                        this.rightContext = new SubString(str, index + slen, str.length() - index - slen);
-                        val = Boolean.TRUE;
-                    } else {
-                        val = Boolean.FALSE;
+                    if (index < 0) {
+                        return str;
+                    }
+                    setFlatMatch(str, index, search.length());
+                    if (lambda == null && data.dollar < 0) {
+                        // A literal replacement needs none of the below
+                        int end = index + search.length();
+                        StringBuilder sb = new StringBuilder(
+                            str.length() - search.length() + repstr.length());
+                        sb.append(str, 0, index);
+                        sb.append(repstr);
+                        sb.append(str, end, str.length());
+                        return sb.toString();
                     }
+                    val = Boolean.TRUE;
                 }
 
                 if (data.charBuf == null) {
@@ -143,6 +148,29 @@ public class RegExpImpl implements RegExpProxy {
         }
     }
 
+    /**
+     * Record the match of a string pattern for the RegExp statics.
+     */
+    private void setFlatMatch(String str, int index, int length)
+    {
+        if (lastMatch == null) {
+            lastMatch = new SubString();
+            leftContext = new SubString();
+            rightContext = new SubString();
+        }
+        lastParen = null;
+        lastParenPending = false;
+        leftContext.str = str;
+        leftContext.index = 0;
+        leftContext.length = index;
+        lastMatch.str = str;
+        lastMatch.index = index;
+        lastMatch.length = length;
+        rightContext.str = str;
+        rightContext.index = index + length;
+        rightContext.length = str.length() - index - length;
+    }
+
     private static NativeRegExp createRegExp(Context cx, Scriptable scope,
                                              Object[] args, int optarg,
                                              boolean forceFlat)
@@ -286,7 +314,7 @@ public class RegExpImpl implements RegExpProxy {
             result = i - matchlen[0];
             break;
         }
-        int size = (parens == null) ? 0 : parens.length;
+        int size = getParenCount();
         parensp[0] = new String[size];
         for (int num = 0; num < size; num++) {
             SubString parsub = getParenSubString(num);
@@ -301,6 +329,17 @@ public class RegExpImpl implements RegExpProxy {
      */
     SubString getParenSubString(int i)
     {
+        if (parenCaptureCount >= 0) {
+            // No need to make all parens for one of them
+            if (i < parenCaptureCount) {
+                long capture = parenCaptures[i];
+                if ((int) capture != -1) {
+                    return new SubString(parenInput, (int) capture,
+                                         (int) (capture >>> 32));
+                }
+            }
+            return new SubString();
+        }
         if (parens != null && i < parens.length) {
             SubString parsub = parens[i];
             if (parsub != null) {
@@ -310,6 +349,84 @@ public class RegExpImpl implements RegExpProxy {
         return new SubString();
     }
 
+    int getParenCount()
+    {
+        if (parenCaptureCount >= 0) {
+            return parenCaptureCount;
+        }
+        return parens == null ? 0 : parens.length;
+    }
+
+    /**
+     * Returns the parens matched by the last match (perl $1, $2), or null
+     * if it had none. They are made on the first call after a match.
+     */
+    protected SubString[] getParens()
+    {
+        makeParens();
+        return parens;
+    }
+
+    /**
+     * Returns the last paren matched by the last match (perl $+). It is
+     * made on the first call after a match.
+     */
+    protected SubString getLastParen()
+    {
+        makeParens();
+        return lastParen;
+    }
+
+    /**
+     * Record the parens of a match as captures laid out like
+     * REGlobalData.parens. The SubStrings for parens and lastParen are
+     * only made when the legacy statics are read.
+     */
+    void setParenCaptures(String str, long[] captures, int count)
+    {
+        if (count != 0) {
+            if (parenCaptures == null || parenCaptures.length < count) {
+                parenCaptures = new long[count];
+            }
+            System.arraycopy(captures, 0, parenCaptures, 0, count);
+        }
+        parenInput = str;
+        parenCaptureCount = count;
+        lastParenPending = true;
+        parens = null;
+        lastParen = null;
+    }
+
+    private void makeParens()
+    {
+        int count = parenCaptureCount;
+        if (count < 0) {
+            return;
+        }
+        SubString parsub;
+        if (count == 0) {
+            parens = null;
+            parsub = new SubString();
+        } else {
+            parsub = null;
+            parens = new SubString[count];
+            for (int num = 0; num < count; num++) {
+                long capture = parenCaptures[num];
+                if ((int) capture != -1) {
+                    parsub = new SubString(parenInput, (int) capture,
+                                           (int) (capture >>> 32));
+                    parens[num] = parsub;
+                }
+            }
+        }
+        if (lastParenPending) {
+            lastParen = parsub;
+        }
+        parenCaptureCount = -1;
+        lastParenPending = false;
+        parenInput = null;
+    }
+
     /*
      * Analog of match_glob() in jsstr.c
      */
@@ -337,7 +454,7 @@ public class RegExpImpl implements RegExpProxy {
         if (rdata.lambda != null) {
             // invoke lambda function with args lastMatch, $1, $2, ... $n,
             // leftContext.length, whole string.
-            SubString[] parens = reImpl.parens;
+            SubString[] parens = reImpl.getParens();
             int parenCount = (parens == null) ? 0 : parens.length;
             Object[] args = new Object[parenCount + 3];
             args[0] = reImpl.lastMatch.toString();
@@ -445,7 +562,7 @@ public class RegExpImpl implements RegExpProxy {
                 }
             }
             else {  /* ECMA 3, 1-9 or 01-99 */
-                int parenCount = (res.parens == null) ? 0 : res.parens.length;
+                int parenCount = res.getParenCount();
                 num = dc - '0';
                 if (num > parenCount)
                     return null;
@@ -475,7 +592,7 @@ public class RegExpImpl implements RegExpProxy {
           case '&':
             return res.lastMatch;
           case '+':
-            return res.lastParen;
+            return res.getLastParen();
           case '`':
             if (version == Context.VERSION_1_2) {
                 /*
@@ -541,9 +658,6 @@ public class RegExpImpl implements RegExpProxy {
     public Object js_split(Context cx, Scriptable scope,
                                    String target, Object[] args)
     {
-        // create an empty Array to return;
-        Scriptable result = cx.newArray(scope, 0);
-
         // Use the second argument as the split limit, if given.
         boolean limited = (args.length > 1) && (args[1] != Undefined.instance);
         long limit = 0;  // Initialize to avoid warning.
@@ -556,8 +670,7 @@ public class RegExpImpl implements RegExpProxy {
 
         // return an array consisting of the target if no separator given
         if (args.length < 1 || args[0] == Undefined.instance) {
-            result.put(0, result, target);
-            return result;
+            return cx.newArray(scope, new Object[] { target });
         }
 
         String separator = null;
@@ -573,18 +686,28 @@ public class RegExpImpl implements RegExpProxy {
                 }
             }
         }
+        int version = cx.getLanguageVersion();
         if (re == null) {
             separator = ScriptRuntime.toString(args[0]);
             matchlen[0] = separator.length();
+            if (separator.length() != 0
+                && (version == Context.VERSION_DEFAULT
+                    || version >= Context.VERSION_1_3))
+            {
+                return splitByString(cx, scope, target, separator,
+                                     limited ? limit : Long.MAX_VALUE);
+            }
         }
 
+        // create an empty Array to return;
+        Scriptable result = cx.newArray(scope, 0);
+
         // split target with separator or re
         int[] ip = { 0 };
         int match;
         int len = 0;
         boolean[] matched = { false };
         String[][] parens = { null };
-        int version = cx.getLanguageVersion();
         while ((match = find_split(cx, scope, target, separator, version,
                                    reProxy, re, ip, matchlen, matched, parens))
                >= 0)
@@ -631,6 +754,40 @@ public class RegExpImpl implements RegExpProxy {
         return result;
     }
 
+    /*
+     * Split target at each occurrence of a non-empty separator string,
+     * the ECMA way. Builds the array at once instead of going through
+     * find_split.
+     */
+    private static Object splitByString(Context cx, Scriptable scope,
+                                        String target, String separator,
+                                        long limit)
+    {
+        // Count the parts first to fill an array of the right size
+        int count = 1;
+        int sepLength = separator.length();
+        for (int i = target.indexOf(separator); i >= 0 && count < limit;
+             i = target.indexOf(separator, i + sepLength))
+        {
+            count++;
+        }
+        if (count > limit) {
+            count = (int) limit;
+        }
+        Object[] parts = new Object[count];
+        int ip = 0;
+        for (int k = 0; k < count; k++) {
+            int match = target.indexOf(separator, ip);
+            if (match < 0) {
+                parts[k] = target.substring(ip);
+                break;
+            }
+            parts[k] = target.substring(ip, match);
+            ip = match + sepLength;
+        }
+        return cx.newArray(scope, parts);
+    }
+
     /*
      * Used by js_split to find the next split point in target,
      * starting at offset ip and looking either for the given
@@ -752,12 +909,19 @@ public class RegExpImpl implements RegExpProxy {
 
     protected String          input;         /* input string to match (perl $_, GC root) */
     protected boolean         multiline;     /* whether input contains newlines (perl $*) */
-    protected SubString[]     parens;        /* Vector of SubString; last set of parens
-                                      matched (perl $1, $2) */
+    private SubString[]       parens;        /* Vector of SubString; last set of parens
+                                      matched (perl $1, $2), made on demand */
     protected SubString       lastMatch;     /* last string matched (perl $&) */
-    protected SubString       lastParen;     /* last paren matched (perl $+) */
+    private SubString         lastParen;     /* last paren matched (perl $+), made on demand */
     protected SubString       leftContext;   /* input to left of last match (perl $`) */
     protected SubString       rightContext;  /* input to right of last match (perl $') */
+
+    REGlobalData              globalData;    /* match state kept for the next exec */
+
+    private String            parenInput;    /* input of pending parenCaptures */
+    private long[]            parenCaptures; /* captures of the last match */
+    private int               parenCaptureCount = -1; /* -1 if parens is up to date */
+    private boolean           lastParenPending; /* lastParen is still to be made */
 }
 
 
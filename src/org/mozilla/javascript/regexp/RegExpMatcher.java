@@ -0,0 +1,95 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.regexp;
+
+/**
+ * Base class of the matchers that {@link REBytecodeCompiler} generates for
+ * frequently executed regular expressions. It is public only because the
+ * generated classes live in their own class loader; it is not meant to be
+ * used by embeddings.
+ */
+public abstract class RegExpMatcher
+{
+    // Bitmaps of the character classes of the regular expression, indexed
+    // like RECompiled.classList, for classes too large to test inline
+    byte[][] classBits;
+
+    protected RegExpMatcher()
+    {
+    }
+
+    /**
+     * Matches the regular expression against input starting exactly at
+     * cp. On success, returns the index after the match and stores the
+     * start and length of parenthesized submatch i in caps[2 * i] and
+     * caps[2 * i + 1]. Returns -1 if there is no match at cp.
+     * <p>
+     * caps[2 * parenCount] is the number of retries still allowed. It is
+     * decremented for every retry, and matching fails once it is negative.
+     */
+    public abstract int match(String input, int cp, int end,
+                              boolean multiline, int[] caps);
+
+    protected final boolean inClass(int index, char c)
+    {
+        byte[] bits = classBits[index];
+        int byteIndex = c >> 3;
+        return byteIndex < bits.length
+               && (bits[byteIndex] & (1 << (c & 0x7))) != 0;
+    }
+
+    protected static boolean isWord(char c)
+    {
+        return NativeRegExp.isWord(c);
+    }
+
+    protected static boolean isSpace(char c)
+    {
+        return NativeRegExp.isREWhiteSpace(c);
+    }
+
+    protected static boolean isLineTerm(char c)
+    {
+        return NativeRegExp.isLineTerm(c);
+    }
+
+    protected static char upcase(char c)
+    {
+        return NativeRegExp.upcase(c);
+    }
+
+    /**
+     * Returns true if cp is at a word boundary, that is exactly one of
+     * the characters before and at cp is a word character.
+     */
+    protected static boolean isWordBoundary(String input, int cp, int end)
+    {
+        boolean before = cp != 0 && isWord(input.charAt(cp - 1));
+        boolean after = cp < end && isWord(input.charAt(cp));
+        return before != after;
+    }
+
+    /**
+     * Case independent version of String.startsWith(literal, cp).
+     */
+    protected static boolean startsWithIgnoreCase(String input, int cp,
+                                                   String literal)
+    {
+        int length = literal.length();
+        if (cp + length > input.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c1 = literal.charAt(i);
+            char c2 = input.charAt(cp + i);
+            if (c1 != c2 && upcase(c1) != upcase(c2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
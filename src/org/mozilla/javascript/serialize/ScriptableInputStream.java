@@ -9,14 +9,20 @@
 package org.mozilla.javascript.serialize;
 
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.Undefined;
 import org.mozilla.javascript.UniqueTag;
+import org.mozilla.javascript.debug.DebuggableScript;
 
 /**
  * Class ScriptableInputStream is used to read in a JavaScript
@@ -47,6 +53,20 @@ public class ScriptableInputStream extends ObjectInputStream {
         }
     }
 
+    /**
+     * Adds the script whose code replaces the references that a
+     * ScriptableOutputStream wrote for the script excluded under the
+     * same id.
+     * @param id the name the script was excluded under
+     * @param script the same script compiled with optimization level -1
+     * @throws IllegalArgumentException if the script was not compiled
+     *         to interpreted code
+     * @see ScriptableOutputStream#addExcludedScript(String, Script)
+     */
+    public void addScript(String id, Script script) {
+        scripts.put(id, ScriptableOutputStream.listScriptCode(id, script));
+    }
+
     @Override
     protected Class<?> resolveClass(ObjectStreamClass desc)
         throws IOException, ClassNotFoundException
@@ -73,6 +93,28 @@ public class ScriptableInputStream extends ObjectInputStream {
                 throw new IOException("Object " + name + " not found upon " +
                                       "deserialization.");
             }
+        }else if (obj instanceof ScriptableOutputStream.PendingScriptLookup) {
+            ScriptableOutputStream.PendingScriptLookup lookup =
+                (ScriptableOutputStream.PendingScriptLookup)obj;
+            List<DebuggableScript> code = scripts.get(lookup.getId());
+            if (code == null) {
+                throw new IOException("Script " + lookup.getId() +
+                                      " not added for deserialization.");
+            }
+            int index = lookup.getIndex();
+            if (index >= code.size()) {
+                throw new InvalidObjectException("Script " + lookup.getId() +
+                    " has fewer functions than the serialized code.");
+            }
+            if (!lookup.matches(code.get(index))) {
+                String name = lookup.getFunctionName();
+                throw new InvalidObjectException("Code of " +
+                    (name == null || name.length() == 0
+                     ? "function #" + index : "function " + name) +
+                    " in script " + lookup.getId() +
+                    " changed since it was serialized.");
+            }
+            obj = code.get(index);
         }else if (obj instanceof UniqueTag) {
             obj = ((UniqueTag)obj).readResolve();
         }else if (obj instanceof Undefined) {
@@ -83,4 +125,6 @@ public class ScriptableInputStream extends ObjectInputStream {
 
     private Scriptable scope;
     private ClassLoader classLoader;
+    private Map<String,List<DebuggableScript>> scripts =
+        new HashMap<String,List<DebuggableScript>>();
 }
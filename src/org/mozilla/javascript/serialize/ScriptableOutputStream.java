@@ -10,13 +10,21 @@ import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
 
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Interpreter;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
 import org.mozilla.javascript.UniqueTag;
+import org.mozilla.javascript.debug.DebuggableScript;
 
 /**
  * Class ScriptableOutputStream is an ObjectOutputStream used
@@ -29,7 +37,9 @@ import org.mozilla.javascript.UniqueTag;
  * added to the exclude list are not written out but instead
  * are looked up during deserialization. This approach avoids
  * the creation of duplicate copies of standard objects
- * during deserialization.
+ * during deserialization. In the same way the code of scripts
+ * added with {@link #addExcludedScript(String, Script)} is written
+ * as a reference to be resolved by the ScriptableInputStream.
  *
  * @author Norris Boyd
  */
@@ -122,6 +132,28 @@ public class ScriptableOutputStream extends ObjectOutputStream {
         table.remove(name);
     }
 
+    /**
+     * Adds a script to the list of scripts whose code is excluded from
+     * serialization. The interpreted code of the script and of the
+     * functions nested in it is written as a reference to <code>id</code>
+     * and replaced upon deserialization with the code of the script that
+     * was added to the ScriptableInputStream under the same id. Functions,
+     * generators and suspended continuations of the script are then
+     * written without their bytecode, string tables and nested functions.
+     * @param id a name that identifies the script between runs
+     * @param script a script compiled with optimization level -1
+     * @throws IllegalArgumentException if the script was not compiled
+     *         to interpreted code
+     * @see ScriptableInputStream#addScript(String, Script)
+     */
+    public void addExcludedScript(String id, Script script) {
+        List<DebuggableScript> code = listScriptCode(id, script);
+        for (int i = 0; i != code.size(); ++i) {
+            scriptTable.put(code.get(i),
+                            new PendingScriptLookup(id, i, code.get(i)));
+        }
+    }
+
     /**
      * Adds the names of the standard objects and their
      * prototypes to the list of excluded names.
@@ -166,6 +198,65 @@ public class ScriptableOutputStream extends ObjectOutputStream {
         return result;
     }
 
+    /**
+     * Returns the interpreted code of the script followed by the code of
+     * its nested functions in depth-first order.
+     */
+    static List<DebuggableScript> listScriptCode(String id, Script script)
+    {
+        DebuggableScript view = Context.getDebuggableView(script);
+        if (view == null) {
+            throw new IllegalArgumentException("Script " + id +
+                                               " is not interpreted.");
+        }
+        List<DebuggableScript> code = new ArrayList<DebuggableScript>();
+        addScriptCode(view, code);
+        return code;
+    }
+
+    private static void addScriptCode(DebuggableScript view,
+                                      List<DebuggableScript> code)
+    {
+        code.add(view);
+        for (int i = 0; i != view.getFunctionCount(); ++i) {
+            addScriptCode(view.getFunction(i), code);
+        }
+    }
+
+    static class PendingScriptLookup implements Serializable
+    {
+        private static final long serialVersionUID = -5016440981231645318L;
+
+        PendingScriptLookup(String id, int index, DebuggableScript code)
+        {
+            this.id = id;
+            this.index = index;
+            this.functionName = code.getFunctionName();
+            this.digest = Interpreter.getCodeDigest(code);
+        }
+
+        String getId() { return id; }
+
+        int getIndex() { return index; }
+
+        String getFunctionName() { return functionName; }
+
+        /**
+         * Returns true if the code has the same digest as the code this
+         * lookup was written for, so saved program counters and frame
+         * slots are valid for it.
+         */
+        boolean matches(DebuggableScript code)
+        {
+            return Arrays.equals(digest, Interpreter.getCodeDigest(code));
+        }
+
+        private String id;
+        private int index;
+        private String functionName;
+        private byte[] digest;
+    }
+
     static class PendingLookup implements Serializable
     {
         private static final long serialVersionUID = -2692990309789917727L;
@@ -181,6 +272,11 @@ public class ScriptableOutputStream extends ObjectOutputStream {
     protected Object replaceObject(Object obj) throws IOException
     {
         if (false) throw new IOException(); // suppress warning
+        if (obj instanceof DebuggableScript) {
+            PendingScriptLookup lookup = scriptTable.get(obj);
+            if (lookup != null)
+                return lookup;
+        }
         String name = table.get(obj);
         if (name == null)
             return obj;
@@ -189,4 +285,6 @@ public class ScriptableOutputStream extends ObjectOutputStream {
 
     private Scriptable scope;
     private Map<Object,String> table;
+    private Map<Object,PendingScriptLookup> scriptTable =
+        new IdentityHashMap<Object,PendingScriptLookup>();
 }
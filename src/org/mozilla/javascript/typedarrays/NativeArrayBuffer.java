@@ -6,6 +6,9 @@
 
 package org.mozilla.javascript.typedarrays;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.IdFunctionObject;
 import org.mozilla.javascript.IdScriptableObject;
@@ -74,6 +77,18 @@ public class NativeArrayBuffer
         }
     }
 
+    /**
+     * Create a buffer that uses the specified Java byte array as its storage. The array is not
+     * copied, so changes made from Java are visible to all views of the buffer and vice versa.
+     */
+    public NativeArrayBuffer(byte[] buffer)
+    {
+        if (buffer == null) {
+            throw new IllegalArgumentException("buffer must not be null");
+        }
+        this.buffer = buffer;
+    }
+
     /**
      * Get the number of bytes in the buffer.
      */
@@ -89,6 +104,21 @@ public class NativeArrayBuffer
         return buffer;
     }
 
+    /**
+     * Return a ByteBuffer that shares its content with this buffer. The byte order of the
+     * result matches the one used by typed arrays, so Java code may use views such as
+     * {@link ByteBuffer#asIntBuffer()} to read and write the same elements a script sees
+     * through an Int32Array, without copying.
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(buffer).order(byteOrder());
+    }
+
+    static ByteOrder byteOrder() {
+        return NativeArrayBufferView.useLittleEndian()
+            ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+    }
+
     // Actual implementations of actual code
 
     /**
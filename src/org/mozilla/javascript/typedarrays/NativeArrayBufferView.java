@@ -6,6 +6,8 @@
 
 package org.mozilla.javascript.typedarrays;
 
+import java.nio.ByteBuffer;
+
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.IdScriptableObject;
 import org.mozilla.javascript.ScriptRuntime;
@@ -65,6 +67,15 @@ public abstract class NativeArrayBufferView
         return byteLength;
     }
 
+    /**
+     * Return a ByteBuffer covering the part of the backing buffer that this view represents.
+     * No data is copied: writes through the result are visible to scripts and vice versa.
+     */
+    public ByteBuffer asByteBuffer() {
+        ByteBuffer bb = ByteBuffer.wrap(arrayBuffer.buffer, offset, byteLength).slice();
+        return bb.order(NativeArrayBuffer.byteOrder());
+    }
+
     protected static boolean useLittleEndian() {
         if (useLittleEndian == null) {
             Context ctx = Context.getCurrentContext();
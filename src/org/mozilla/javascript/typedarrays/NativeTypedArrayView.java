@@ -7,6 +7,7 @@
 package org.mozilla.javascript.typedarrays;
 
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -20,6 +21,7 @@ import org.mozilla.javascript.NativeArray;
 import org.mozilla.javascript.NativeArrayIterator;
 import org.mozilla.javascript.ScriptRuntime;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
 import org.mozilla.javascript.Symbol;
 import org.mozilla.javascript.SymbolKey;
 import org.mozilla.javascript.Undefined;
@@ -108,6 +110,32 @@ public abstract class NativeTypedArrayView<T> extends NativeArrayBufferView impl
                                                new Object[] { length });
     }
 
+    private static NativeArrayBuffer makeArrayBuffer(Scriptable scope, byte[] bytes)
+    {
+        NativeArrayBuffer na = new NativeArrayBuffer(bytes);
+        na.setParentScope(ScriptableObject.getTopLevelScope(scope));
+        na.setPrototype(ScriptableObject.getClassPrototype(scope, NativeArrayBuffer.CLASS_NAME));
+        return na;
+    }
+
+    private NativeTypedArrayView<T> constructView(NativeArrayBuffer na, int byteOff, int byteLen)
+    {
+        if ((byteOff < 0) || (byteOff > na.buffer.length)) {
+            throw ScriptRuntime.constructError("RangeError", "offset out of range");
+        }
+        if ((byteLen < 0) || ((byteOff + byteLen) > na.buffer.length)) {
+            throw ScriptRuntime.constructError("RangeError", "length out of range");
+        }
+        if ((byteOff % getBytesPerElement()) != 0) {
+            throw ScriptRuntime.constructError("RangeError", "offset must be a multiple of the byte size");
+        }
+        if ((byteLen % getBytesPerElement()) != 0) {
+            throw ScriptRuntime.constructError("RangeError", "offset and buffer must be a multiple of the byte size");
+        }
+
+        return construct(na, byteOff, byteLen / getBytesPerElement());
+    }
+
     private NativeTypedArrayView<T> js_constructor(Context cx, Scriptable scope, Object[] args)
     {
         if (!isArg(args, 0)) {
@@ -149,21 +177,36 @@ public abstract class NativeTypedArrayView<T> extends NativeArrayBufferView impl
             } else {
                 byteLen = na.getLength() - byteOff;
             }
+            return constructView(na, byteOff, byteLen);
+        }
 
-            if ((byteOff < 0) || (byteOff > na.buffer.length)) {
-                throw ScriptRuntime.constructError("RangeError", "offset out of range");
-            }
-            if ((byteLen < 0) || ((byteOff + byteLen) > na.buffer.length)) {
-                throw ScriptRuntime.constructError("RangeError", "length out of range");
-            }
-            if ((byteOff % getBytesPerElement()) != 0) {
-                throw ScriptRuntime.constructError("RangeError", "offset must be a multiple of the byte size");
-            }
-            if ((byteLen % getBytesPerElement()) != 0) {
-                throw ScriptRuntime.constructError("RangeError", "offset and buffer must be a multiple of the byte size");
-            }
+        final Object javaArg = (arg0 instanceof Wrapper) ? ((Wrapper) arg0).unwrap() : arg0;
+        if (javaArg instanceof byte[]) {
+            // View the bytes of a Java array, with shared storage
+            NativeArrayBuffer na = makeArrayBuffer(scope, (byte[]) javaArg);
+            return constructView(na, 0, na.getLength());
+        }
 
-            return construct(na, byteOff, byteLen / getBytesPerElement());
+        if ((javaArg instanceof ByteBuffer) && ((ByteBuffer) javaArg).hasArray()) {
+            // View the remaining bytes of a heap buffer, with shared storage
+            ByteBuffer bb = (ByteBuffer) javaArg;
+            NativeArrayBuffer na = makeArrayBuffer(scope, bb.array());
+            return constructView(na, bb.arrayOffset() + bb.position(), bb.remaining());
+        }
+
+        if ((javaArg != null) && javaArg.getClass().isArray()) {
+            // Other Java arrays cannot share their storage, so copy the elements
+            int len = Array.getLength(javaArg);
+            NativeArrayBuffer na = makeArrayBuffer(cx, scope, len * getBytesPerElement());
+            NativeTypedArrayView<T> v = construct(na, 0, len);
+            for (int i = 0; i < len; i++) {
+                Object value = Array.get(javaArg, i);
+                if (value instanceof Character) {
+                    value = Integer.valueOf(((Character) value).charValue());
+                }
+                v.js_set(i, value);
+            }
+            return v;
         }
 
         if (arg0 instanceof NativeArray) {
@@ -128,4 +128,81 @@ assertEquals(6, nest.next());
 assertEquals(7, nest.next());
 assertEquals(8, nest.next());
 
+// Completion throws StopIteration from next() and send()
+function assertStops(f) {
+  try {
+    f();
+  } catch (e) {
+    assertTrue(e instanceof StopIteration);
+    return;
+  }
+  assertTrue(false, "no StopIteration");
+}
+var done = basicGenerator(1);
+assertEquals(0, done.next());
+assertStops(function() { done.next(); });
+assertStops(function() { done.next(); });
+assertStops(function() { done.send(1); });
+assertEquals(undefined, done.close());
+
+// for-in and for-each loops end without StopIteration
+var values = [];
+for (var v in basicGenerator(4)) {
+  values.push(v);
+}
+assertEquals("0,1,2,3", values.join());
+values = [];
+for each (var v in tfGenerator()) {
+  values.push(v);
+}
+assertEquals("1,2,90", values.join());
+
+// A replaced next method is still called by loops
+var replaced = basicGenerator(10);
+var calls = 0;
+replaced.next = function() {
+  if (++calls > 2) throw StopIteration;
+  return calls * 10;
+};
+values = [];
+for (var v in replaced) {
+  values.push(v);
+}
+assertEquals("10,20", values.join());
+
+// A generator body may still end a loop by throwing StopIteration
+function explicitStop() {
+  yield 1;
+  yield 2;
+  throw StopIteration;
+}
+values = [];
+for (var v in explicitStop()) {
+  values.push(v);
+}
+assertEquals("1,2", values.join());
+values = [];
+for each (var v in explicitStop()) {
+  values.push(v);
+}
+assertEquals("1,2", values.join());
+
+// Closing a generator in a loop runs its finally blocks
+var closed = false;
+function closing() {
+  try {
+    yield 1;
+    yield 2;
+  } finally {
+    closed = true;
+  }
+}
+for (var v in closing()) {
+  break;
+}
+var c = closing();
+c.next();
+c.close();
+assertTrue(closed);
+
 "success";
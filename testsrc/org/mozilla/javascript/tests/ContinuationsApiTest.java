@@ -9,6 +9,7 @@ package org.mozilla.javascript.tests;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
@@ -107,6 +108,29 @@ public class ContinuationsApiTest extends TestCase {
       }
   }
 
+  public void testPendingKeepsCauseAndSuppressed() {
+      Context cx = Context.enter();
+      try {
+          cx.setOptimizationLevel(-1); // must use interpreter mode
+          Script script = cx.compileString("myObject.f(3) + 1;",
+                  "test source", 1, null);
+          cx.executeScriptWithContinuations(script, globalScope);
+          fail("Should throw ContinuationPending");
+      } catch (ContinuationPending pending) {
+          // no Java stack is recorded, but the rest of Throwable works
+          assertEquals(0, pending.getStackTrace().length);
+          IllegalStateException cause = new IllegalStateException();
+          pending.initCause(cause);
+          assertSame(cause, pending.getCause());
+          IllegalStateException suppressed = new IllegalStateException();
+          pending.addSuppressed(suppressed);
+          assertEquals(1, pending.getSuppressed().length);
+          assertSame(suppressed, pending.getSuppressed()[0]);
+      } finally {
+          Context.exit();
+      }
+  }
+
   public void testScriptWithMultipleContinuations() {
       Context cx = Context.enter();
       try {
@@ -185,6 +209,57 @@ public class ContinuationsApiTest extends TestCase {
       }
   }
 
+  /**
+   * Captures repeatedly from the bottom of a deep call chain and checks
+   * that every resume sees the locals of the frames above it unchanged,
+   * and that the last continuation can be resumed twice.
+   */
+  public void testRepeatedCaptureInDeepCall() {
+      Context cx = Context.enter();
+      try {
+          cx.setOptimizationLevel(-1); // must use interpreter mode
+          cx.evaluateString(globalScope,
+                  "function deep(n) {" +
+                  "  var mine = n;" +
+                  "  if (n == 0) {" +
+                  "    var s = 0;" +
+                  "    for (var i = 0; i < 20; i++) s += myObject.f(i);" +
+                  "    return s;" +
+                  "  }" +
+                  "  var r = deep(n - 1);" +
+                  "  return mine == n ? r : -1;" +
+                  "}",
+                  "function test source", 1, null);
+          Function f = (Function) globalScope.get("deep", globalScope);
+          ContinuationPending last = null;
+          Object result = null;
+          try {
+              cx.callFunctionWithContinuations(f, globalScope,
+                      new Object[] { 200 });
+              fail("Should throw ContinuationPending");
+          } catch (ContinuationPending pending) {
+              assertEquals(0, pending.getStackTrace().length);
+              last = pending;
+          }
+          while (result == null) {
+              int a = (Integer) last.getApplicationState();
+              try {
+                  result = cx.resumeContinuation(last.getContinuation(),
+                          globalScope, 2 * a);
+              } catch (ContinuationPending next) {
+                  last = next;
+              }
+          }
+          assertEquals(380, ((Number) result).intValue());
+          assertEquals(19, ((Number) last.getApplicationState()).intValue());
+          result = cx.resumeContinuation(last.getContinuation(),
+                  globalScope, 38);
+          assertEquals(380, ((Number) result).intValue());
+      } finally {
+          Context.exit();
+      }
+  }
+
   /**
    * Since a continuation can only capture JavaScript frames and not Java
    * frames, ensure that Rhino throws an exception when the JavaScript frames
@@ -246,6 +321,86 @@ public class ContinuationsApiTest extends TestCase {
       }
   }
 
+  private byte[] serialize(Object continuation, Script script)
+      throws IOException
+  {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ScriptableOutputStream sos = new ScriptableOutputStream(baos, globalScope);
+      if (script != null) {
+          sos.addExcludedScript("test", script);
+      }
+      sos.writeObject(globalScope);
+      sos.writeObject(continuation);
+      sos.close();
+      return baos.toByteArray();
+  }
+
+  public void testSerializationWithExcludedScript()
+      throws IOException, ClassNotFoundException
+  {
+      Context cx = Context.enter();
+      try {
+          cx.setOptimizationLevel(-1); // must use interpreter mode
+          Script script = cx.compileString(
+                  "function f(a) { var k = inner(a) + 1; return k; }" +
+                  "function inner(b) { var s = 'x'; return myObject.f(b) * 2; }",
+                  "test source", 1, null);
+          script.exec(cx, globalScope);
+          Function f = (Function) globalScope.get("f", globalScope);
+          Object continuation = null;
+          try {
+              cx.callFunctionWithContinuations(f, globalScope,
+                      new Object[] { 7 });
+              fail("Should throw ContinuationPending");
+          } catch (ContinuationPending pending) {
+              continuation = pending.getContinuation();
+          }
+
+          byte[] full = serialize(continuation, null);
+          byte[] compact = serialize(continuation, script);
+          assertTrue(compact.length < full.length);
+
+          ScriptableInputStream sis = new ScriptableInputStream(
+                  new ByteArrayInputStream(compact), globalScope);
+          try {
+              sis.readObject();
+              sis.readObject();
+              fail("Should throw IOException");
+          } catch (IOException e) {
+              assertTrue(e.getMessage().startsWith("Script test"));
+          }
+
+          // same functions and parameters, different code
+          Script edited = cx.compileString(
+                  "function f(a) { var k = inner(a) - 1; return k; }" +
+                  "function inner(b) { var s = 'x'; return myObject.f(b) * 2; }",
+                  "test source", 1, null);
+          sis = new ScriptableInputStream(
+                  new ByteArrayInputStream(compact), globalScope);
+          sis.addScript("test", edited);
+          try {
+              sis.readObject();
+              sis.readObject();
+              fail("Should throw InvalidObjectException");
+          } catch (InvalidObjectException e) {
+              assertEquals("Code of function f in script test changed"
+                           + " since it was serialized.", e.getMessage());
+          }
+
+          sis = new ScriptableInputStream(
+                  new ByteArrayInputStream(compact), globalScope);
+          sis.addScript("test", script);
+          globalScope = (Scriptable) sis.readObject();
+          continuation = sis.readObject();
+          sis.close();
+
+          Object result = cx.resumeContinuation(continuation, globalScope, 8);
+          assertEquals(17, ((Number)result).intValue());
+      } finally {
+          Context.exit();
+      }
+  }
+
   public void testContinuationsPrototypesAndSerialization() throws IOException, ClassNotFoundException {
 
       byte[] serializedData = null;
@@ -4,10 +4,13 @@
 
 package org.mozilla.javascript.tests;
 
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.IntBinaryOperator;
 
 import org.junit.Test;
 import org.mozilla.javascript.ScriptableObject;
@@ -85,4 +88,75 @@ public class InterfaceAdapterTest extends TestCase {
         testIt(js, Arrays.asList("bar", "foo"));
     }
 
+    @Test
+    public void testPrimitiveArgumentsAndResults() {
+        testIt("java.util.stream.IntStream.rangeClosed(1, 5)"
+                + ".reduce(1, function(a, b) { return a * b; })", 120);
+        testIt("java.util.stream.DoubleStream.of(1, 2)"
+                + ".map(function(d) { return d / 4; }).sum()", 0.75);
+        testIt("java.util.stream.LongStream.of(1, 2, 3, 4)"
+                + ".filter(function(l) { return l > 2; }).count()", 2L);
+    }
+
+    public static class Holder {
+        public IntBinaryOperator op;
+
+        public void set(IntBinaryOperator op) {
+            this.op = op;
+        }
+    }
+
+    @Test
+    public void testGeneratedAdapterClass() {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            final ScriptableObject scope = cx.initStandardObjects();
+            Holder holder = new Holder();
+            scope.put("holder", scope, holder);
+            cx.evaluateString(scope,
+                    "var f = function(a, b) { return a + b; };"
+                    + "holder.set(f);",
+                    "test.js", 1, null);
+            IntBinaryOperator adapter = holder.op;
+            assertFalse(Proxy.isProxyClass(adapter.getClass()));
+            assertEquals(5, adapter.applyAsInt(2, 3));
+            assertTrue(adapter.toString().startsWith("Proxy["));
+            assertTrue(adapter.equals(adapter));
+
+            // the adapter is cached on the function
+            cx.evaluateString(scope, "holder.set(f);", "test.js", 1, null);
+            assertSame(adapter, holder.op);
+            return null;
+        });
+    }
+
+    public static String remove(Iterator<?> it) {
+        assertFalse(Proxy.isProxyClass(it.getClass()));
+        try {
+            it.remove();
+            return "removed";
+        } catch (UnsupportedOperationException e) {
+            return "default";
+        }
+    }
+
+    public static int compareReversed(Comparator<String> c, String a,
+                                      String b) {
+        return c.reversed().compare(a, b);
+    }
+
+    @Test
+    public void testDefaultMethods() {
+        String cls = "Packages." + InterfaceAdapterTest.class.getName();
+        testIt("var log = '';\n"
+                + "var it = { hasNext: function() { return false; },\n"
+                + "           next: function() { return null; },\n"
+                + "           remove: function() { log += 'js'; } };\n"
+                + cls + ".remove(it) + ':' + log", "removed:js");
+        testIt("var it = { hasNext: function() { return false; },\n"
+                + "           next: function() { return null; } };\n"
+                + cls + ".remove(it)", "default");
+        // a single function only implements the abstract method
+        testIt(cls + ".compareReversed(function(a, b) {\n"
+                + "    return a < b ? -1 : a > b ? 1 : 0; }, 'a', 'b')", 1);
+    }
 }
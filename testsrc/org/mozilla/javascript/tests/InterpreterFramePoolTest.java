@@ -0,0 +1,72 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+
+/**
+ * Tests that interpreted frames reusing pooled stack arrays do not see
+ * values left behind by earlier calls.
+ */
+public class InterpreterFramePoolTest {
+
+    // Generators need JavaScript 1.7 or later
+    private static final ContextFactory VERSION_1_8 = new ContextFactory() {
+        @Override
+        protected Context makeContext() {
+            Context cx = super.makeContext();
+            cx.setLanguageVersion(Context.VERSION_1_8);
+            return cx;
+        }
+    };
+
+    @Test
+    public void testRecursion() {
+        assertEquals("6765,5050", Utils.evaluate(VERSION_1_8, -1,
+            "function fib(n) { return n < 2 ? n : fib(n - 1) + fib(n - 2); }" +
+            "function sum(n) { if (n == 0) return 0; return n + sum(n - 1); }" +
+            "[fib(20), sum(100)].join()"));
+    }
+
+    @Test
+    public void testLocalsStartUndefined() {
+        assertEquals("1,true,2,undefined", Utils.evaluate(VERSION_1_8, -1,
+            "function set(x) { var a = x, b = x; return a; }" +
+            "function get() {" +
+            "  var a, b; return a === undefined && b === undefined;" +
+            "}" +
+            "function late() { return typeof v; var v = 3; }" +
+            "[set(1), get(), set(2), late()].join()"));
+    }
+
+    @Test
+    public void testExceptionsAndTailCalls() {
+        assertEquals("err:3,7,ok", Utils.evaluate(VERSION_1_8, -1,
+            "function thrower(n) { var t = n; if (n == 0) throw 'err'; " +
+            "  return thrower(n - 1); }" +
+            "function count(n, acc) { if (n == 0) return acc; " +
+            "  return count(n - 1, acc + 1); }" +
+            "var r = [];" +
+            "try { thrower(5); } catch (e) { r.push(e + ':' + count(3, 0)); }" +
+            "r.push(count(7, 0));" +
+            "function after() { var x; return x === undefined ? 'ok' : 'bad'; }" +
+            "r.push(after());" +
+            "r.join()"));
+    }
+
+    @Test
+    public void testGeneratorKeepsItsFrame() {
+        assertEquals("0,1,2,3,4", Utils.evaluate(VERSION_1_8, -1,
+            "function gen(n) { var i = 0; while (i < n) yield i++; }" +
+            "function noise(a, b, c) { var x = a, y = b, z = c; return x; }" +
+            "var g = gen(5), r = [];" +
+            "for (var v in g) { noise(9, 9, 9); r.push(v); }" +
+            "r.join()"));
+    }
+}
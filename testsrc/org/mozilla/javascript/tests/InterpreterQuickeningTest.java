@@ -0,0 +1,79 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests that quickened interpreter operations fall back to the generic
+ * behavior when a call site sees operands of a different type.
+ */
+public class InterpreterQuickeningTest {
+
+    @Test
+    public void testAddChangesOperandTypes() {
+        assertEquals("1,2,3,ab,1x,x2,3,6,st,1", Utils.evaluate(-1,
+            "function add(a, b) { return a + b; }" +
+            "var r = [];" +
+            "for (var i = 0; i < 3; i++) r.push(add(i, 1));" +
+            "r.push(add('a', 'b'), add(1, 'x'), add('x', 2), add(1, 2)," +
+            "       add({ valueOf: function() { return 5; } }, 1)," +
+            "       add('s', 't'), add(null, 1));" +
+            "r.join()"));
+    }
+
+    @Test
+    public void testDenseElementAccess() {
+        assertEquals("1,proto,3,undefined,undefined,3,o,t,undefined,9", Utils.evaluate(-1,
+            "function get(a, i) { return a[i]; }" +
+            "var arr = [1, , 3];" +
+            "Array.prototype[1] = 'proto';" +
+            "var r = [get(arr, 0), get(arr, 1), get(arr, 2), get(arr, 5)," +
+            "         get(arr, 0.5), get(arr, 'length'), get({0: 'o'}, 0)," +
+            "         get('str', 1), get(arr, -1)];" +
+            "delete Array.prototype[1];" +
+            "arr[0] = 9; r.push(get(arr, 0));" +
+            "r.map(String).join()"));
+    }
+
+    @Test
+    public void testComparisons() {
+        assertEquals("TTFFFTFT FFFFFTFT FTFTTFFT FTFTTFTF FFFFTFFT FTFTTFTF",
+            Utils.evaluate(-1,
+            "function cmp(a, b) {" +
+            "  return [a < b, a <= b, a > b, a >= b, a == b, a != b," +
+            "          a === b, a !== b].map(function(x) {" +
+            "    return x ? 'T' : 'F'; }).join('');" +
+            "}" +
+            "[cmp(1, 2), cmp(NaN, NaN), cmp('1', 1), cmp(2, 2)," +
+            " cmp(null, undefined), cmp(0, -0)].join(' ')"));
+    }
+
+    @Test
+    public void testPolymorphicSite() {
+        // the site stops being quickened after a few changes of type
+        assertEquals("1500:a0a1a2:3000:500", Utils.evaluate(-1,
+            "function add(a, b) { return a + b; }" +
+            "function lt(a, b) { return a < b; }" +
+            "function get(a, i) { return a[i]; }" +
+            "var sum = 0, str = '', n = 0, count = 0;" +
+            "for (var i = 0; i < 1000; i++) {" +
+            "  if (i % 2) { sum = add(sum, 3); } else if (i < 6) { str = add(str, 'a' + i / 2); }" +
+            "  if (lt(i % 2 ? i : String(i), 500)) count++;" +
+            "  n = add(n, get(i % 2 ? [3] : {0: 3}, 0));" +
+            "}" +
+            "sum + ':' + str + ':' + n + ':' + count"));
+    }
+
+    @Test
+    public void testHotLoop() {
+        assertEquals(166666833333.0, Utils.evaluate(-1,
+            "var s = 0;" +
+            "for (var j = 0; j < 1000000; j++) { if (j % 3 == 0) s += j; }" +
+            "s"));
+    }
+}
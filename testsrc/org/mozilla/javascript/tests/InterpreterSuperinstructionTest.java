@@ -0,0 +1,75 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.mozilla.javascript.Interpreter;
+
+/**
+ * Tests that the superinstructions written by the icode peephole pass
+ * behave like the sequences they replace.
+ */
+public class InterpreterSuperinstructionTest {
+
+    @Test
+    public void testCompareAndBranch() {
+        assertEquals("TFT TFT FTF FFT TFT FTT", Utils.evaluate(-1,
+            "function t(a, b) {" +
+            "  var r = '';" +
+            "  if (a < b) r += 'T'; else r += 'F';" +
+            "  if (a == b) r += 'T'; else r += 'F';" +
+            "  if (a !== b) r += 'T'; else r += 'F';" +
+            "  return r;" +
+            "}" +
+            "var o = { valueOf: function() { return 2; } };" +
+            "[t(1, 2), t('a', 'b'), t(2, 2), t(NaN, NaN), t(1, o)," +
+            " t(null, undefined)].join(' ')"));
+    }
+
+    @Test
+    public void testLocalsAndProperties() {
+        assertEquals("4,9,5,1,2,3,4,5", Utils.evaluate(-1,
+            "function f(o) {" +
+            "  var a = o.a, b = o.b, c = o.c, d = o.d, e = o.e, n = 0;" +
+            "  for (var i = 0; i < 5; i++) {" +
+            "    if (i == 1) continue;" +
+            "    n++;" +
+            "  }" +
+            "  var k = 10; k--;" +
+            "  return [n, k, o.e, a, b, c, d, e].join();" +
+            "}" +
+            "f({ a: 1, b: 2, c: 3, d: 4, e: 5 })"));
+    }
+
+    @Test
+    public void testActivation() {
+        assertEquals("3,x", Utils.evaluate(-1,
+            "function f() {" +
+            "  var i = 0, s = 'x';" +
+            "  i++; i++; i++;" +
+            "  eval('');" +
+            "  return [i, s.toString()].join();" +
+            "}" +
+            "f()"));
+    }
+
+    @Test
+    public void testMethodCallWithoutArguments() {
+        assertEquals("1,2,TypeError", Utils.evaluate(-1,
+            "var o = { n: 0, inc: function() { return ++this.n; } };" +
+            "function tail(x) { return x.inc(); }" +
+            "var r = [o.inc(), tail(o)];" +
+            "try { o.missing(); } catch (e) { r.push(e.name); }" +
+            "r.join()"));
+    }
+
+    @Test
+    public void testStatisticsOffByDefault() {
+        assertNull(Interpreter.getIcodePairStatistics(10));
+    }
+}
@@ -0,0 +1,175 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mozilla.classfile.ByteCode;
+import org.mozilla.classfile.ClassFileWriter;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.DefiningClassLoader;
+import org.mozilla.javascript.JavaAdapter;
+import org.mozilla.javascript.ObjToIntMap;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptRuntime;
+
+/**
+ * Tests that JavaAdapter classes are picked up from the class path and
+ * from the directory named by {@link JavaAdapter#ADAPTER_CACHE_DIR_PROPERTY}.
+ */
+public class JavaAdapterCacheTest {
+
+    private static final String SCRIPT =
+        "var n = 0;" +
+        "var r = new java.lang.Runnable({ run: function() { n++; } });" +
+        "r.run(); r.run();" +
+        "r.getClass().getName() + ':' + n";
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("adapters", "");
+        dir.delete();
+        dir.mkdir();
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(JavaAdapter.ADAPTER_CACHE_DIR_PROPERTY);
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static String runnableAdapterName() {
+        ObjToIntMap names = new ObjToIntMap();
+        names.put("run", 0);
+        return JavaAdapter.getAdapterClassName(ScriptRuntime.ObjectClass,
+                new Class<?>[] { Runnable.class }, names);
+    }
+
+    private static Object run(ClassLoader loader) {
+        Context cx = Context.enter();
+        try {
+            if (loader != null) {
+                cx.setApplicationClassLoader(loader);
+            }
+            Scriptable scope = cx.initStandardObjects();
+            return cx.evaluateString(scope, SCRIPT, "test", 1, null);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Test
+    public void testGeneratedNameIsStable() {
+        String name = runnableAdapterName();
+        assertEquals(name, runnableAdapterName());
+        ObjToIntMap names = new ObjToIntMap();
+        names.put("run", 1);
+        assertFalse(name.equals(JavaAdapter.getAdapterClassName(
+                ScriptRuntime.ObjectClass,
+                new Class<?>[] { Runnable.class }, names)));
+    }
+
+    /**
+     * Defines a class named Base with a constructor and a method of the
+     * given name in a class loader of its own.
+     */
+    private static Class<?> defineBase(String methodName) {
+        ClassFileWriter cfw = new ClassFileWriter("Base", "java.lang.Object",
+                                                  null);
+        cfw.startMethod("<init>", "()V", ClassFileWriter.ACC_PUBLIC);
+        cfw.addLoadThis();
+        cfw.addInvoke(ByteCode.INVOKESPECIAL, "java/lang/Object", "<init>",
+                      "()V");
+        cfw.add(ByteCode.RETURN);
+        cfw.stopMethod((short) 1);
+        cfw.startMethod(methodName, "()V", ClassFileWriter.ACC_PUBLIC);
+        cfw.add(ByteCode.RETURN);
+        cfw.stopMethod((short) 1);
+        return new DefiningClassLoader().defineClass("Base",
+                                                     cfw.toByteArray());
+    }
+
+    @Test
+    public void testNameChangesWithSuperClassMethods() {
+        ObjToIntMap names = new ObjToIntMap();
+        names.put("run", 0);
+        Class<?>[] interfaces = new Class<?>[] { Runnable.class };
+        String name = JavaAdapter.getAdapterClassName(defineBase("foo"),
+                                                      interfaces, names);
+        assertEquals(name, JavaAdapter.getAdapterClassName(defineBase("foo"),
+                                                           interfaces, names));
+        assertFalse(name.equals(JavaAdapter.getAdapterClassName(
+                defineBase("bar"), interfaces, names)));
+    }
+
+    @Test
+    public void testDiskCache() {
+        System.setProperty(JavaAdapter.ADAPTER_CACHE_DIR_PROPERTY,
+                           dir.getPath());
+        String name = runnableAdapterName();
+        File file = new File(dir, name + ".class");
+        assertEquals(name + ":2", run(null));
+        assertTrue(file.isFile());
+        long modified = file.lastModified();
+
+        // A fresh scope has an empty ClassCache and reads the stored class.
+        assertEquals(name + ":2", run(null));
+        assertEquals(modified, file.lastModified());
+    }
+
+    @Test
+    public void testPrebuiltAdapter() throws Exception {
+        String name = runnableAdapterName();
+        ObjToIntMap names = new ObjToIntMap();
+        names.put("run", 0);
+        byte[] code = JavaAdapter.createAdapterCode(names, name,
+                ScriptRuntime.ObjectClass, new Class<?>[] { Runnable.class },
+                null);
+        FileOutputStream out = new FileOutputStream(
+                new File(dir, name + ".class"));
+        try {
+            out.write(code);
+        } finally {
+            out.close();
+        }
+
+        URLClassLoader loader = new URLClassLoader(
+                new URL[] { dir.toURI().toURL() },
+                Context.class.getClassLoader());
+        Class<?> prebuilt = loader.loadClass(name);
+        assertEquals(name + ":2", run(loader));
+
+        Context cx = Context.enter();
+        try {
+            cx.setApplicationClassLoader(loader);
+            Scriptable scope = cx.initStandardObjects();
+            Object r = cx.evaluateString(scope,
+                "new java.lang.Runnable({ run: function() {} })",
+                "test", 1, null);
+            assertSame(prebuilt, Context.jsToJava(r, Object.class).getClass());
+        } finally {
+            Context.exit();
+        }
+    }
+}
@@ -76,6 +76,35 @@ public class MemberBoxCallTest {
         }
     }
 
+    @Test
+    public void testHotJavaMethodCall() {
+        Context cx = Context.enter();
+        try {
+            assertEquals("1000:999:4950:caught",
+                evaluate(cx,
+                    "var sb = new java.lang.StringBuilder();" +
+                    "var max = 0;" +
+                    "for (var i = 0; i < 1000; i++) {" +
+                        "sb.append('x');" +
+                        "max = java.lang.Math.max(max, i);" +
+                    "}" +
+                    "var result = sb.length() + ':' + max;" +
+                    // well past the invoker threshold before it throws
+                    "var sum = 0;" +
+                    "for (var i = 0; i < 100; i++) sum += java.lang.Integer.parseInt(String(i));" +
+                    "result += ':' + sum;" +
+                    "try {" +
+                        "java.lang.Integer.parseInt('zz');" +
+                    "} catch (e) {" +
+                        "if (e.javaException instanceof java.lang.NumberFormatException" +
+                        "    && String(e.javaException.getMessage()).indexOf('zz') >= 0) result += ':caught';" +
+                    "}" +
+                    "result;"));
+        } finally {
+            Context.exit();
+        }
+    }
+
     private Object evaluate(Context cx, String str) {
         return cx.evaluateString(scope, str, "<testsrc>", 0, null);
     }
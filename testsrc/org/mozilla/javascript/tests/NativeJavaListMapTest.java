@@ -0,0 +1,140 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+public class NativeJavaListMapTest {
+
+    private static final ContextFactory mapAccessFactory = new ContextFactory() {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex) {
+            if (featureIndex == Context.FEATURE_ENABLE_JAVA_MAP_ACCESS) {
+                return true;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    };
+
+    private static final ContextFactory listAccessFactory = new ContextFactory() {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex) {
+            if (featureIndex == Context.FEATURE_ENABLE_JAVA_LIST_ACCESS) {
+                return true;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    };
+
+    private static Object eval(ContextFactory factory, String name, Object value,
+                               String source) {
+        Context cx = factory.enterContext();
+        try {
+            Scriptable scope = cx.initStandardObjects();
+            ScriptableObject.putProperty(scope, name, Context.javaToJS(value, scope));
+            return cx.evaluateString(scope, source, "test", 1, null);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Test
+    public void testListIsNotArrayLikeByDefault() {
+        List<String> list = new ArrayList<>(Arrays.asList("a", "b"));
+        assertEquals("undefined:2:size", eval(ContextFactory.getGlobal(), "list", list,
+            "var keys = [];" +
+            "for (var k in list) if (k == 'size') keys.push(k);" +
+            "typeof list.length + ':' + list.size() + ':' + keys"));
+    }
+
+    @Test
+    public void testListIndexAndLength() {
+        List<String> list = new ArrayList<>(Arrays.asList("a", "b", "c"));
+        assertEquals("3:a:c:3", eval(listAccessFactory, "list", list,
+            "list.length + ':' + list[0] + ':' + list[2] + ':' + list.size()"));
+    }
+
+    @Test
+    public void testListArrayMethods() {
+        List<String> list = new ArrayList<>(Arrays.asList("a", "b", "c"));
+        assertEquals("A,B,C", eval(listAccessFactory, "list", list,
+            "list.map(function(s) { return s.toUpperCase(); }).join(',')"));
+        assertEquals("a|b|c", eval(listAccessFactory, "list", list,
+            "Array.prototype.join.call(list, '|')"));
+    }
+
+    @Test
+    public void testListIsLive() {
+        List<Object> list = new ArrayList<>(Arrays.<Object>asList("a", "b"));
+        eval(listAccessFactory, "list", list,
+            "list[0] = 'x'; list[list.length] = 'y'; list.push('z');");
+        assertEquals(Arrays.<Object>asList("x", "b", "y", "z"), list);
+
+        eval(listAccessFactory, "list", list, "list.length = 1;");
+        assertEquals(Arrays.<Object>asList("x"), list);
+    }
+
+    @Test
+    public void testMapIsNotAPropertyBagByDefault() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("a", "1");
+        assertEquals("undefined", eval(ContextFactory.getGlobal(), "map", map,
+            "typeof map.a"));
+    }
+
+    @Test
+    public void testMapPropertyBag() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("a", "1");
+        map.put("b", "2");
+        assertEquals("1:2:a,b:2", eval(mapAccessFactory, "map", map,
+            "var keys = [];" +
+            "for (var k in map) keys.push(k);" +
+            "map.a + ':' + map.b + ':' + keys + ':' + map.size()"));
+
+        eval(mapAccessFactory, "map", map, "map.c = 'x'; delete map.a;");
+        assertEquals("x", map.get("c"));
+        assertEquals(false, map.containsKey("a"));
+    }
+
+    @Test
+    public void testMapNumericKeys() {
+        Map<Object, Object> ints = new LinkedHashMap<>();
+        ints.put(1, "one");
+        ints.put(-1, "minus one");
+        assertEquals("one:one:minus one:minus one:true:true", eval(mapAccessFactory, "map", ints,
+            "map[1] + ':' + map['1'] + ':' + map[-1] + ':' + map['-1'] + ':' +" +
+            "(1 in map) + ':' + ('-1' in map)"));
+
+        Map<Object, Object> strings = new LinkedHashMap<>();
+        strings.put("1", "one");
+        strings.put("01", "zero one");
+        assertEquals("one:one:zero one:undefined:true:one,zero one", eval(mapAccessFactory, "map", strings,
+            "var values = [];" +
+            "for (var k in map) values.push(map[k]);" +
+            "map[1] + ':' + map['1'] + ':' + map['01'] + ':' + map[2] + ':' +" +
+            "(1 in map) + ':' + values"));
+
+        eval(mapAccessFactory, "map", strings, "map[1] = 'uno'; map[2] = 'two'; delete map['01'];");
+        assertEquals("uno", strings.get("1"));
+        assertEquals("two", strings.get(2));
+        assertEquals(false, strings.containsKey("01"));
+        eval(mapAccessFactory, "map", ints, "map['-1'] = 'minus uno'; delete map['1'];");
+        assertEquals("minus uno", ints.get(-1));
+        assertEquals(1, ints.size());
+    }
+}
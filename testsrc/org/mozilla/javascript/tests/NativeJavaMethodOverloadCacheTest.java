@@ -0,0 +1,77 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.NativeJavaMethod;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+public class NativeJavaMethodOverloadCacheTest {
+
+    @Test
+    public void testOverloadCacheHitsAndMisses() {
+        Context cx = Context.enter();
+        try {
+            Scriptable scope = cx.initStandardObjects();
+            Object result = cx.evaluateString(scope,
+                "var sb = new java.lang.StringBuilder();" +
+                "for (var i = 0; i < 100; i++) {" +
+                    "sb.append('s'); sb.append(true); sb.append(sb);" +
+                    "sb.setLength(0);" +
+                "}" +
+                "sb.append('ok').toString();", "<test>", 1, null);
+            assertEquals("ok", Context.toString(result));
+
+            Scriptable sb = (Scriptable) scope.get("sb", scope);
+            NativeJavaMethod append =
+                (NativeJavaMethod) ScriptableObject.getProperty(sb, "append");
+            // One miss per distinct argument type vector
+            assertEquals(3, append.getOverloadCacheMisses());
+            assertEquals(298, append.getOverloadCacheHits());
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Test
+    public void testMoreTypeVectorsThanOverloads() {
+        Context cx = Context.enter();
+        try {
+            Scriptable scope = cx.initStandardObjects();
+            // String.valueOf has far fewer overloads than the number of
+            // argument types it is called with here
+            cx.evaluateString(scope,
+                "var u = java.util;" +
+                "var values = [new java.lang.Object(), new u.ArrayList()," +
+                    " new u.LinkedList(), new u.HashMap(), new u.TreeMap()," +
+                    " new u.HashSet(), new u.TreeSet(), new u.Vector()," +
+                    " new u.Stack(), new u.ArrayDeque(), new u.LinkedHashMap()," +
+                    " new u.LinkedHashSet(), new java.lang.StringBuilder()," +
+                    " new java.lang.StringBuffer(), new u.BitSet()," +
+                    " new u.Properties(), new u.Hashtable()," +
+                    " new u.IdentityHashMap(), new u.WeakHashMap()," +
+                    " new u.PriorityQueue(), new u.concurrent.ConcurrentHashMap()];" +
+                "for (var k = 0; k < 10; k++)" +
+                "  for (var i = 0; i < values.length; i++)" +
+                "    java.lang.String.valueOf(values[i]);",
+                "<test>", 1, null);
+
+            Scriptable string = (Scriptable) cx.evaluateString(scope,
+                "java.lang.String", "<test>", 1, null);
+            NativeJavaMethod valueOf =
+                (NativeJavaMethod) ScriptableObject.getProperty(string, "valueOf");
+            assertEquals(210, valueOf.getOverloadCacheHits()
+                              + valueOf.getOverloadCacheMisses());
+            assertTrue(valueOf.getOverloadCacheHits() > 150);
+        } finally {
+            Context.exit();
+        }
+    }
+}
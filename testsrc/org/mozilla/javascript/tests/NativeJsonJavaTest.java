@@ -0,0 +1,145 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.EcmaError;
+import org.mozilla.javascript.NativeJSON;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Tests JSON.stringify of Java maps, collections, arrays and beans.
+ */
+public class NativeJsonJavaTest {
+
+    private static final ContextFactory beansFactory = new ContextFactory() {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex) {
+            if (featureIndex == Context.FEATURE_JSON_JAVA_BEANS) {
+                return true;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    };
+
+    public static class Bean {
+        public String getName() { return "bean"; }
+        public boolean isActive() { return true; }
+        public List<String> getTags() { return Arrays.asList("a", "b"); }
+        public int getSize(int unit) { return unit; }
+    }
+
+    private static void assertStringify(ContextFactory factory, String expected,
+                                        Object data, String source) {
+        Utils.runWithAllOptimizationLevels(factory, cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            ScriptableObject.putProperty(scope, "data", Context.javaToJS(data, scope));
+            assertEquals(expected, cx.evaluateString(scope, source, "test", 1, null));
+            return null;
+        });
+    }
+
+    private static void assertTypeError(String message, Object data, String source) {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            ScriptableObject.putProperty(scope, "data", Context.javaToJS(data, scope));
+            try {
+                cx.evaluateString(scope, source, "test", 1, null);
+            } catch (EcmaError e) {
+                assertEquals("TypeError", e.getName());
+                if (message != null) {
+                    assertEquals(message, e.getErrorMessage());
+                }
+                return null;
+            }
+            throw new AssertionError("no TypeError for " + source);
+        });
+    }
+
+    private static Map<String, Object> data() {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("list", new ArrayList<>(Arrays.asList(1, "two", null, 'c')));
+        data.put("ints", new int[] {1, 2});
+        data.put("unit", TimeUnit.SECONDS);
+        data.put("nested", new LinkedHashMap<>(data));
+        return data;
+    }
+
+    @Test
+    public void testCollections() {
+        ContextFactory factory = new ContextFactory();
+        assertStringify(factory, "{\"list\":[1,\"two\",null,\"c\"],\"ints\":[1,2],"
+                        + "\"unit\":\"SECONDS\",\"nested\":{\"list\":[1,\"two\",null,\"c\"],"
+                        + "\"ints\":[1,2],\"unit\":\"SECONDS\"}}",
+                        data(), "JSON.stringify(data)");
+        assertStringify(factory, "[{\"list\":[1,\"two\",null,\"c\"]}]",
+                        data(), "JSON.stringify([{list: data.get('list')}])");
+    }
+
+    @Test
+    public void testJavaApi() {
+        Context cx = Context.enter();
+        try {
+            Scriptable scope = cx.initStandardObjects();
+            Map<Object, Object> map = new LinkedHashMap<>();
+            map.put(1, Arrays.asList(true, 1.5));
+            map.put("empty", new Object[0]);
+            assertEquals("{\n \"1\": [\n  true,\n  1.5\n ],\n \"empty\": []\n}",
+                         NativeJSON.stringify(cx, scope, map, null, 1));
+            try {
+                NativeJSON.stringify(cx, scope, new Bean(), null, 1);
+                throw new AssertionError("bean written without the feature");
+            } catch (EcmaError e) {
+                assertTrue(e.getMessage().startsWith("TypeError"));
+            }
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Test
+    public void testCycle() {
+        List<Object> list = new ArrayList<>();
+        list.add(list);
+        assertTypeError(null, list, "JSON.stringify(data)");
+    }
+
+    @Test
+    public void testBeans() {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("bean", new Bean());
+        data.put("n", 1);
+        assertStringify(beansFactory,
+                        "{\"bean\":{\"active\":true,\"name\":\"bean\",\"tags\":[\"a\",\"b\"]},\"n\":1}",
+                        data, "JSON.stringify(data)");
+
+        // without the feature other Java objects are rejected the same way
+        // wherever they occur
+        String message = "Java object of class " + Bean.class.getName()
+                         + " can not be converted to JSON.";
+        assertTypeError(message, data, "JSON.stringify(data)");
+        assertTypeError(message, Arrays.asList(1, new Bean()), "JSON.stringify(data)");
+        assertTypeError(message, new Bean(), "JSON.stringify(data)");
+        assertTypeError(message, data, "JSON.stringify({b: data.get('bean')})");
+        assertTypeError(message, data, "JSON.stringify(data, null, 1)");
+        assertTypeError(message, data,
+                        "JSON.stringify(data.get('bean'), function(k, v) { return v; })");
+        assertStringify(new ContextFactory(), "{\"n\":1}", data,
+                        "JSON.stringify(data.get('bean'), function(k, v) { return k ? v : {n: 1}; })");
+    }
+}
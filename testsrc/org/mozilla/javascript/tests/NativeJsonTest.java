@@ -8,9 +8,16 @@
 package org.mozilla.javascript.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 
 import org.junit.Test;
 import org.mozilla.javascript.Context;
+import org.mozilla.javascript.NativeJSON;
 import org.mozilla.javascript.Scriptable;
 
 /**
@@ -31,4 +38,33 @@ public class NativeJsonTest {
             Context.exit();
         }
     }
- }
+
+    @Test
+    public void stringifyToAppendable() {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            Object value = cx.evaluateString(scope,
+                "var a = []; for (var i = 0; i < 5000; i++) a.push({i: i, s: 'x\\n' + i}); a",
+                "test", 1, null);
+            String expected = (String) NativeJSON.stringify(cx, scope, value, null, 1);
+            try {
+                StringWriter out = new StringWriter();
+                assertTrue(NativeJSON.stringify(cx, scope, value, null, 1, out));
+                assertEquals(expected, out.toString());
+
+                StringWriter none = new StringWriter();
+                assertFalse(NativeJSON.stringify(cx, scope, Context.getUndefinedValue(), null, null, none));
+                assertEquals("", none.toString());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void stringifyEscapesAndSparseArrays() {
+        Utils.assertEvaluates("[1,null,\"q\\\"\\u0001\\t\",null,null]",
+            "var a = [1, , 'q\\\"\\u0001\\t']; a[4] = undefined; JSON.stringify(a)");
+    }
+}
@@ -27,6 +27,27 @@ public class NativeStringTest extends TestCase {
         assertEvaluates("hello", "String.toLowerCase('HELLO')"); // first patch proposed to #492359 was breaking this
     }
 
+    public void testSplitByString() {
+        assertEvaluates("a|b||c|", "'a,b,,c,'.split(',').join('|')");
+        assertEvaluates("|a|", "',a,'.split(',').join('|')");
+        assertEvaluates("a|b||c", "'a--b----c'.split('--').join('|')");
+        assertEvaluates("1", "String(''.split(',').length)");
+        assertEvaluates("a|b", "'a,b,c'.split(',', 2).join('|')");
+        assertEvaluates("0", "String('a,b,c'.split(',', 0).length)");
+        assertEvaluates("a,b,c", "'a,b,c'.split('x')[0]");
+    }
+
+    public void testReplaceByString() {
+        assertEvaluates("aXcabc", "'abcabc'.replace('b', 'X')");
+        assertEvaluates("abcabc", "'abcabc'.replace('q', 'X')");
+        assertEvaluates("ab[cab|abc]abc", "'abcabc'.replace('c', '[$&$`|$\\']')");
+        assertEvaluates("a$c", "'abc'.replace('b', '$$')");
+        assertEvaluates("b|a|cabc",
+            "'abcabc'.replace('b', 'X');"
+            + "[RegExp.lastMatch, RegExp.leftContext, RegExp.rightContext]"
+            + ".join('|')");
+    }
+
     private void assertEvaluates(final Object expected, final String source) {
         Utils.runWithAllOptimizationLevels(cx -> {
             final Scriptable scope = cx.initStandardObjects();
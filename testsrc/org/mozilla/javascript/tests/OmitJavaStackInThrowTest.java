@@ -0,0 +1,98 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.JavaScriptException;
+import org.mozilla.javascript.RhinoException;
+import org.mozilla.javascript.ScriptStackElement;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Tests that {@link Context#FEATURE_OMIT_JAVA_STACK_IN_THROW} drops the
+ * Java stack of thrown values but keeps the script stack.
+ */
+public class OmitJavaStackInThrowTest {
+
+    private static final String SOURCE =
+        "function inner() { throw 'oops'; }\n" +
+        "function outer() { inner(); }\n" +
+        "outer();";
+
+    static class OmitContextFactory extends ContextFactory {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex) {
+            switch (featureIndex) {
+                case Context.FEATURE_OMIT_JAVA_STACK_IN_THROW:
+                case Context.FEATURE_LOCATION_INFORMATION_IN_ERROR:
+                    return true;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    }
+
+    private static JavaScriptException run(ContextFactory factory,
+                                           String source)
+    {
+        Context cx = factory.enterContext();
+        try {
+            cx.setOptimizationLevel(-1);
+            Scriptable scope = cx.initStandardObjects();
+            cx.evaluateString(scope, source, "test.js", 1, null);
+        } catch (JavaScriptException e) {
+            return e;
+        } finally {
+            Context.exit();
+        }
+        fail("Exception expected");
+        return null;
+    }
+
+    @Test
+    public void testJavaStackOmitted() {
+        JavaScriptException e = run(new OmitContextFactory(), SOURCE);
+        assertEquals("oops", e.getValue());
+        assertEquals(0, e.getStackTrace().length);
+
+        ScriptStackElement[] stack = e.getScriptStack();
+        assertEquals(3, stack.length);
+        assertEquals("inner", stack[0].functionName);
+        assertEquals(1, stack[0].lineNumber);
+        assertEquals("outer", stack[1].functionName);
+        assertEquals(2, stack[1].lineNumber);
+        assertEquals(3, stack[2].lineNumber);
+
+        assertEquals(2, e.getScriptStack(-1, "inner").length);
+        assertEquals(1, e.getScriptStack(1, null).length);
+    }
+
+    @Test
+    public void testJavaStackKeptByDefault() {
+        JavaScriptException e = run(new ContextFactory(), SOURCE);
+        assertTrue(e.getStackTrace().length > 0);
+        assertEquals(3, e.getScriptStack().length);
+    }
+
+    @Test
+    public void testErrorStackProperty() {
+        RhinoException.useMozillaStackStyle(true);
+        try {
+            JavaScriptException e = run(new OmitContextFactory(),
+                "function check(v) { if (v < 0) throw new Error('negative'); }\n" +
+                "var s;\n" +
+                "try { check(-1); } catch (err) { s = err.stack; }\n" +
+                "throw s;");
+            assertEquals("check()@test.js:1\n@test.js:3\n", e.getValue());
+        } finally {
+            RhinoException.useMozillaStackStyle(false);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+
+/**
+ * Tests the backtracking matcher state that is kept between matches on
+ * a Context.
+ */
+public class RegExpBacktrackStateTest {
+
+    private static final ContextFactory BACKTRACKING =
+        Utils.regExpEngineFactory(Context.REGEXP_ENGINE_BACKTRACKING);
+
+    private static void check(String expected, String source) {
+        Utils.assertEvaluates(BACKTRACKING, expected, source);
+    }
+
+    @Test
+    public void testCapturesRestoredOnBacktrack() {
+        check("abcd,a,bcd,",
+              "/(a|ab)(c|bcd)(d*)/.exec('abcd').join()");
+        check("zaacbbbcac,z,ac,a,,c",
+              "/(z)((a+)?(b+)?(c))*/.exec('zaacbbbcac').join()");
+        check("baaabaac,ba,,abaac",
+              "/(.*?)a(?!(a+)b\\2c)\\2(.*)/.exec('baaabaac').join()");
+    }
+
+    @Test
+    public void testNestedMatches() {
+        check("[a1:1][b22:22] [c333:333]",
+              "'a1b22 c333'.replace(/([a-z])(\\d+)/g, function(m, l, d) {"
+              + "  var r = /(\\w)(\\d*)$/.exec(m);"
+              + "  return '[' + r[1] + r[2] + ':' + d + ']';"
+              + "})");
+    }
+
+    @Test
+    public void testDeepBacktracking() {
+        // Grows the stacks past what is kept for the next match
+        check("100000,1,true",
+              "var s = new Array(100001).join('ab');"
+              + "var r = /((?:a|b)*?)x|((?:a|b)*)$/.exec(s);"
+              + "[r[0].length / 2, r[1] === undefined ? 1 : 0,"
+              + " /^(a)(b)\\1/.test('aba')].join()");
+    }
+}
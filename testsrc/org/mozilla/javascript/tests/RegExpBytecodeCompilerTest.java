@@ -0,0 +1,86 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests that regular expressions executed often enough to be compiled to
+ * JVM bytecode give the same results as the interpreter.
+ */
+public class RegExpBytecodeCompilerTest {
+
+    private static final String CASES =
+        "[['(\\\\w+)@(\\\\w+)\\\\.com', '', 'mail joe@example.com now']," +
+        " ['^\\\\s*([a-z]+)=(\\\\d+)\\\\s*$', '', '  abc=123  ']," +
+        " ['^\\\\s*([a-z]+)=(\\\\d+)\\\\s*$', 'm', 'x\\n  abc=123  \\ny']," +
+        " ['^b', '', 'a\\nb']," +
+        " ['a$', 'm', 'ba\\nc']," +
+        " ['a.*?b', '', 'xxaccbccb']," +
+        " ['a.*b', '', 'xxaccbccb']," +
+        " ['a.*', '', 'xa\\nb']," +
+        " ['[aeiou]{2,3}', 'i', 'bOOooEEk']," +
+        " ['\\\\bfoo\\\\B', '', 'a foobar foo']," +
+        " ['\\\\Bar\\\\b', '', 'bar far']," +
+        " ['ERROR: (\\\\w+)', '', 'x\\nINFO: a\\nERROR: disk full']," +
+        " ['(?:ab)+c', '', 'xababcab']," +
+        " ['(?:AB){2}?', 'i', 'xababab']," +
+        " ['ab{2,}?c', 'i', 'ABBBC']," +
+        " ['[^a-c]+', '', 'abcdefabc']," +
+        " ['[a-f0-9_\\\\s.,;:!?-]+', '', 'XYZ fe, 12; a-b!Q']," +
+        " ['[\\u0100-\\u0200x]+', '', 'ab\\u0150x\\u0101q']," +
+        " ['\\u0150+', 'i', 'a\\u0151\\u0150b']," +
+        " ['\\\\d{3}-\\\\d{4}', '', 'call 555-1234']," +
+        " ['\\\\D\\\\S\\\\W', '', '12a b!c']," +
+        " ['colou?r', '', 'the color red']," +
+        " ['colou??r', '', 'the colour red']," +
+        " ['x*$', '', 'abcxx']," +
+        " ['x+?', '', 'abcxx']," +
+        " ['()a', '', 'ba']," +
+        " ['(a)(b)?', '', 'ac']," +
+        " ['(a|b)+', '', 'cabd']," +
+        " ['(a)\\\\1', '', 'xaa']," +
+        " ['K', 'i', '\\u212a k']," +
+        " ['i', 'i', '\\u0131I']," +
+        " ['z{0}y', '', 'zy']," +
+        " ['q', '', 'nothing here']]";
+
+    // Enough runs of each case to pass the compile threshold
+    private static final int TIMES = 150;
+
+    @Test
+    public void testSameResultsAsInterpreter() {
+        Utils.runRegExpCases(CASES, TIMES);
+    }
+
+    @Test
+    public void testResults() {
+        assertEquals(
+            "5:joe@example.com|joe|example\n" +
+            "2:  abc=123  |abc|123\n" +
+            "2:accb\n" +
+            "null\n" +
+            "1:OOo",
+            Utils.runRegExpCases("[" +
+                "['(\\\\w+)@(\\\\w+)\\\\.com', '', 'mail joe@example.com now']," +
+                "['^\\\\s*([a-z]+)=(\\\\d+)\\\\s*$', 'm', 'x\\n  abc=123  \\ny']," +
+                "['a.*?b', '', 'xxaccbccb']," +
+                "['^b', '', 'a\\nb']," +
+                "['[aeiou]{2,3}', 'i', 'bOOooEEk']]", TIMES));
+    }
+
+    @Test
+    public void testGlobalReplace() {
+        String source =
+            "var s = 'a1b22c333', r;" +
+            "for (var i = 0; i < 150; i++) {" +
+            "  r = s.replace(/(\\d+)/g, '<$1>') + s.replace(/[a-c]/gi, '');" +
+            "}" +
+            "r";
+        Utils.assertEvaluates("a<1>b<22>c<333>122333", source);
+    }
+}
@@ -0,0 +1,86 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.EcmaError;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.regexp.RegExpCache;
+
+/**
+ * Tests that RegExp objects compiled from the same source share the cached
+ * program and still behave independently.
+ */
+public class RegExpCacheTest {
+
+    private static Object eval(String source) {
+        Context cx = Context.enter();
+        try {
+            cx.setOptimizationLevel(-1);
+            Scriptable scope = cx.initStandardObjects();
+            return cx.evaluateString(scope, source, "test", 1, null);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Before
+    public void clearCache() {
+        RegExpCache.clear();
+    }
+
+    @Test
+    public void testRepeatedCompilationHits() {
+        assertEquals("true,false,100", eval(
+            "var n = 0, s = 'a1b2c3';" +
+            "for (var i = 0; i < 100; i++) {" +
+            "  if (new RegExp('[a-z](\\\\d)', 'g').test(s)) n++;" +
+            "}" +
+            "[new RegExp('X', 'i').test('x'), new RegExp('X').test('x'), n]" +
+            ".join()"));
+        assertTrue(RegExpCache.getHitCount() >= 99);
+        assertTrue(RegExpCache.getHitRate() > 0.9);
+    }
+
+    @Test
+    public void testSharedProgramKeepsStateSeparate() {
+        assertEquals("2,4,0", eval(
+            "var a = new RegExp('\\\\d', 'g'), b = new RegExp('\\\\d', 'g');" +
+            "a.exec('1234'); a.exec('1234');" +
+            "b.exec('1234');" +
+            "[a.lastIndex, 'ab12cd34'.replace(/\\d/g, '').length," +
+            " b.lastIndex - 1].join()"));
+    }
+
+    @Test
+    public void testStringPatternsAreFlat() {
+        // A string given to replace is matched literally, while the same
+        // source given to RegExp is a pattern
+        assertEquals("a-b.c,-----,-bc.d", eval(
+            "['a.b.c'.replace('.', '-'), 'a.b.c'.replace(new RegExp('.', 'g'), '-')," +
+            " 'abc.d'.replace(new RegExp('.'), '-')].join()"));
+    }
+
+    @Test
+    public void testErrorsAreNotCached() {
+        eval("new RegExp('a')");
+        int size = RegExpCache.size();
+        for (int i = 0; i < 2; i++) {
+            try {
+                eval("new RegExp('(')");
+                fail();
+            } catch (EcmaError e) {
+                assertEquals("SyntaxError", e.getName());
+            }
+        }
+        assertEquals(size, RegExpCache.size());
+    }
+}
@@ -0,0 +1,115 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+
+/**
+ * Tests the linear time regular expression matcher and the switch to it
+ * from backtracking.
+ */
+public class RegExpLinearEngineTest {
+
+    private static final ContextFactory BACKTRACKING =
+        Utils.regExpEngineFactory(Context.REGEXP_ENGINE_BACKTRACKING);
+    private static final ContextFactory LINEAR =
+        Utils.regExpEngineFactory(Context.REGEXP_ENGINE_LINEAR);
+    private static final ContextFactory DEFAULT =
+        Utils.regExpEngineFactory(Context.REGEXP_ENGINE_DEFAULT);
+
+    private static final String CASES =
+        "[[/(\\w+)@(\\w+)\\.com/, 'mail joe@example.com now']," +
+        " [/^\\s*([a-z]+)=(\\d+)\\s*$/m, 'x\\n  abc=123  \\ny']," +
+        " [/a.*?b/, 'xxaccbccb']," +
+        " [/a.*b/, 'xxaccbccb']," +
+        " [/(a|ab)(c|bcd)(d*)/, 'abcd']," +
+        " [/((a)|b)+/, 'ab']," +
+        " [/(a*)*/, 'b']," +
+        " [/(a*)+/, 'b']," +
+        " [/(a*?)+/, 'aa']," +
+        " [/(?:a*?)*b/, 'aab']," +
+        " [/(\\d*)?x/, 'x']," +
+        " [/(z)((a+)?(b+)?(c))*/, 'zaacbbbcac']," +
+        " [/(?:(?:(a)|b)?){2}/, 'ab']," +
+        " [/(?:(?:(a)|b)+?){2}/, 'ab']," +
+        " [/(?:(a)|b){2,3}?c/, 'abac']," +
+        " [/\\bfoo\\B/i, 'a FOObar foo']," +
+        " [/[^a-c]{2,3}?/, 'abcdefabc']," +
+        " [/x{1,2}y{0,1}z?/, 'axxyzz']," +
+        " [/(.)\\1/, 'abccd']," +
+        " [/a(?=b)/, 'acab']," +
+        " [/q/, 'nothing here']]";
+
+    @Test
+    public void testSameResultsAsBacktracking() {
+        assertEquals(Utils.runRegExpCases(BACKTRACKING, CASES, 1),
+                     Utils.runRegExpCases(LINEAR, CASES, 1));
+    }
+
+    @Test
+    public void testResults() {
+        assertEquals(
+            "0:abcd|a|bcd|\n" +
+            "0:ab|b|U\n" +
+            "0:|U\n" +
+            "0:|\n" +
+            "0:zaacbbbcac|z|ac|a|U|c",
+            Utils.runRegExpCases(LINEAR, "[" +
+                "[/(a|ab)(c|bcd)(d*)/, 'abcd']," +
+                "[/((a)|b)+/, 'ab']," +
+                "[/(a*)*/, 'b']," +
+                "[/(a*)+/, 'b']," +
+                "[/(z)((a+)?(b+)?(c))*/, 'zaacbbbcac']]", 1));
+    }
+
+    @Test(timeout = 10000)
+    public void testExponentialBacktrackingFinishesLinearly() {
+        String s = repeat('a', 40);
+        String cases =
+            "[[/(a+)+b/, '" + s + "'], [/^(\\w+\\s?)*$/, '" + s + "!']," +
+            " [/(a|aa)+c/, '" + s + "c']]";
+        String expected = "null\nnull\n0:" + s + "c|a";
+        assertEquals(expected, Utils.runRegExpCases(DEFAULT, cases, 1));
+        assertEquals(expected, Utils.runRegExpCases(LINEAR, cases, 1));
+    }
+
+    @Test(timeout = 10000)
+    public void testCompiledMatcherFinishesLinearly() {
+        // Enough runs to have the program compiled to JVM bytecode
+        String source =
+            "var re = /(a*)a*a*a*a*a*a*[bc]/;" +
+            "for (var k = 0; k < 120; k++) re.exec('aab');" +
+            "var s = new Array(61).join('a');" +
+            "run([[re, s], [re, s + 'c'], [re, 'xaab']], 1)";
+        String expected = "null\n0:" + repeat('a', 60) + "c|" + repeat('a', 60)
+                          + "\n1:aab|aa";
+        assertEquals(expected,
+                     Utils.evaluate(DEFAULT, 1, Utils.REGEXP_RUNNER, source));
+        assertEquals(expected,
+                     Utils.evaluate(LINEAR, 1, Utils.REGEXP_RUNNER, source));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadEngine() {
+        Context cx = Context.enter();
+        try {
+            cx.setRegExpEngine(3);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
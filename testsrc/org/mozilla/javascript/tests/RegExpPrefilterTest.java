@@ -0,0 +1,58 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests that skipping start positions by literal prefix, required literal
+ * and first character does not change which match is found.
+ */
+public class RegExpPrefilterTest {
+
+    private static void check(String expected, String cases) {
+        // Enough runs to also exercise compiled matchers
+        assertEquals(expected, Utils.runRegExpCases(cases, 150));
+    }
+
+    @Test
+    public void testPrefix() {
+        check("10:ERROR: disk|disk\n2:abc|ab\nnull\n2:abc\n1:ABC",
+              "[[/ERROR: (\\w+)/, 'x\\nINFO: a\\nERROR: disk full']," +
+              " [/(ab)c/, 'xxabcab']," +
+              " [/^abc/, 'xabc']," +
+              " [/^abc/m, 'x\\nabc']," +
+              " [/abc/i, 'xABC']]");
+    }
+
+    @Test
+    public void testRequiredLiteral() {
+        check("5:joe@example.com|joe|example\nnull\n2:abcbcd\n3:abcabcx\n1:xabc|x",
+              "[[/(\\w+)@(\\w+)\\.com/, 'mail joe@example.com now']," +
+              " [/\\w+@example\\.org/, 'joe@example.com']," +
+              " [/a(?:bc)*d/, 'xxabcbcd']," +
+              " [/(?:abc){2}x/, 'abcabcabcx']," +
+              " [/(x)?abc/, 'xxabc']]");
+    }
+
+    @Test
+    public void testFirstCharacter() {
+        check("4:12-34\n2:bbz\n3:  end\nnull\n1:yz",
+              "[[/\\d+-\\d+/, 'abc 12-34 x']," +
+              " [/[a-c]+z/, 'xxbbz']," +
+              " [/\\s+end/, 'the  end']," +
+              " [/\\d+x/, 'a1b2c3']," +
+              " [/x|yz/, 'ayz']]");
+    }
+
+    @Test
+    public void testStringPatterns() {
+        Utils.assertEvaluates("a-b.c,x!x!,3",
+            "['a.b.c'.replace('.', '-'), 'xyzxyz'.replace(/yz/g, '!')," +
+            " 'abcdef'.search('def')].join()");
+    }
+}
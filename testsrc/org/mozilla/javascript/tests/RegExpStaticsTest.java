@@ -0,0 +1,51 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import org.junit.Test;
+
+/**
+ * Tests the legacy RegExp static properties, which are only made when
+ * they are read.
+ */
+public class RegExpStaticsTest {
+
+    private static final String STATICS =
+        "function statics() {" +
+        "  return [RegExp.lastMatch, RegExp.lastParen, RegExp.leftContext," +
+        "          RegExp.rightContext, RegExp.$1, RegExp.$2, RegExp.$3]" +
+        "         .join('|');" +
+        "}";
+
+    private static void check(String expected, String source) {
+        Utils.assertEvaluates(expected, STATICS + source);
+    }
+
+    @Test
+    public void testAfterTest() {
+        check("ab|b|zz|q|a||b", "/(a)(x)?(b)/.test('zzabq'); statics()");
+        check("a|a|zz|bq|a||", "/(a)(x)?/.test('zzabq'); statics()");
+        check("q||zzab||||", "/q/.test('zzabq'); statics()");
+    }
+
+    @Test
+    public void testLastMatchWins() {
+        check("cd|d|ab||c|d|",
+              "/(a)(b)(c)/.test('abc'); /(c)(d)/.exec('abcd'); statics()");
+    }
+
+    @Test
+    public void testStringReplaceKeepsParens() {
+        // A string pattern replaces lastMatch but not the parens
+        check("ll||he|o|a||b",
+              "/(a)(x)?(b)/.test('zzabq');"
+              + "'hello'.replace('ll', 'LL'); statics()");
+    }
+
+    @Test
+    public void testDollarParens() {
+        check("1a12b23c3", "'a1b2c3'.replace(/([a-z])(\\d)/g, '$2$1$+')");
+    }
+}
@@ -0,0 +1,80 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Tests that Java reflection data shared through
+ * {@link Context#FEATURE_SHARED_CLASS_CACHE} still gives every top-level
+ * scope its own member wrappers.
+ */
+public class SharedClassCacheTest {
+
+    private static final ContextFactory factory = new ContextFactory() {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex) {
+            if (featureIndex == Context.FEATURE_SHARED_CLASS_CACHE) {
+                return true;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    };
+
+    private static final String SCRIPT =
+        "var list = new java.util.ArrayList();" +
+        "list.add('a'); list.add('b');" +
+        "var add = list.add;" +
+        "list.size() + ':' + list.get(1) + ':' + java.lang.Math.max(3, 4);";
+
+    @Test
+    public void testScopesGetTheirOwnWrappers() {
+        Context cx = factory.enterContext();
+        try {
+            Scriptable scope1 = cx.initStandardObjects();
+            Scriptable scope2 = cx.initStandardObjects();
+            assertEquals("2:b:4", cx.evaluateString(scope1, SCRIPT, "s1", 1, null));
+            assertEquals("2:b:4", cx.evaluateString(scope2, SCRIPT, "s2", 1, null));
+
+            Scriptable add1 = (Scriptable) ScriptableObject.getProperty(scope1, "add");
+            Scriptable add2 = (Scriptable) ScriptableObject.getProperty(scope2, "add");
+            assertNotSame(add1, add2);
+            assertSame(scope1, add1.getParentScope());
+            assertSame(scope2, add2.getParentScope());
+            assertSame(ScriptableObject.getFunctionPrototype(scope1), add1.getPrototype());
+            assertSame(ScriptableObject.getFunctionPrototype(scope2), add2.getPrototype());
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Test
+    public void testBeanPropertiesAndFields() {
+        Context cx = factory.enterContext();
+        try {
+            for (int i = 0; i < 2; i++) {
+                Scriptable scope = cx.initStandardObjects();
+                assertEquals("true:2147483647:x",
+                    cx.evaluateString(scope,
+                        "var d = new java.awt.Dimension(1, 2);" +
+                        "var t = new java.lang.Thread();" +
+                        "t.name = 'x';" +
+                        "(d.height == 2) + ':' + java.lang.Integer.MAX_VALUE" +
+                        " + ':' + t.name;",
+                        "test", 1, null));
+            }
+        } finally {
+            Context.exit();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.typedarrays.NativeArrayBuffer;
+import org.mozilla.javascript.typedarrays.NativeInt32Array;
+
+/**
+ * Tests that typed arrays can share storage with Java byte arrays and NIO buffers.
+ */
+public class TypedArrayJavaViewTest {
+
+    private Context cx;
+    private Scriptable scope;
+
+    @Before
+    public void setUp() {
+        cx = Context.enter();
+        cx.setLanguageVersion(Context.VERSION_ES6);
+        scope = cx.initStandardObjects();
+    }
+
+    @After
+    public void tearDown() {
+        Context.exit();
+    }
+
+    private Object eval(String source) {
+        return cx.evaluateString(scope, source, "test", 1, null);
+    }
+
+    @Test
+    public void testViewOfJavaByteArray() {
+        byte[] bytes = new byte[8];
+        ScriptableObject.putProperty(scope, "bytes", Context.javaToJS(bytes, scope));
+        eval("var u8 = new Uint8Array(bytes); u8[0] = 200;" +
+             "var i32 = new Int32Array(bytes); i32[1] = 0x01020304;");
+        assertEquals((byte) 200, bytes[0]);
+        assertEquals(1, bytes[4]);
+        assertEquals(4, bytes[7]);
+
+        bytes[2] = 7;
+        assertEquals(7, ((Number) eval("u8[2]")).intValue());
+        assertEquals(8, ((Number) eval("u8.buffer.byteLength")).intValue());
+    }
+
+    @Test
+    public void testViewOfByteBuffer() {
+        byte[] bytes = new byte[16];
+        ByteBuffer bb = ByteBuffer.wrap(bytes, 8, 8);
+        ScriptableObject.putProperty(scope, "bb", Context.javaToJS(bb, scope));
+        eval("var f64 = new Float64Array(bb); f64[0] = 1.5;");
+        assertEquals(1, ((Number) eval("f64.length")).intValue());
+        assertEquals(1.5, ByteBuffer.wrap(bytes, 8, 8).getDouble(), 0.0);
+    }
+
+    @Test
+    public void testCopyOfOtherJavaArrays() {
+        int[] ints = { 1, 2, 3 };
+        ScriptableObject.putProperty(scope, "ints", Context.javaToJS(ints, scope));
+        assertEquals("1,2,3", eval("new Int32Array(ints).toString()"));
+    }
+
+    @Test
+    public void testArrayBufferToJava() {
+        NativeArrayBuffer ab = (NativeArrayBuffer) eval(
+            "var ab = new ArrayBuffer(4); new Uint8Array(ab)[1] = 9; ab;");
+        ScriptableObject.putProperty(scope, "Arrays",
+                                     eval("java.util.Arrays"));
+        eval("Arrays.fill(ab, 3)");
+        assertEquals(3, ab.getBuffer()[1]);
+
+        Object wrapped = eval("java.nio.ByteBuffer.wrap(ab)");
+        assertSame(ab.getBuffer(),
+                   ((ByteBuffer) Context.jsToJava(wrapped, ByteBuffer.class)).array());
+    }
+
+    @Test
+    public void testTypedArrayAsByteBuffer() {
+        NativeInt32Array ints = (NativeInt32Array) eval(
+            "var a = new Int32Array(4); a[2] = 42; a.subarray(1);");
+        assertEquals(42, ints.asByteBuffer().asIntBuffer().get(1));
+        ints.asByteBuffer().asIntBuffer().put(0, 17);
+        assertEquals(17, ((Number) eval("a[1]")).intValue());
+    }
+}
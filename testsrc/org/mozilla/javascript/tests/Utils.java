@@ -4,6 +4,7 @@
 
 package org.mozilla.javascript.tests;
 
+import org.junit.Assert;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ContextAction;
 import org.mozilla.javascript.ContextFactory;
@@ -61,6 +62,133 @@ public class Utils
         }
     }
 
+    /**
+     * Evaluates the sources in order in a new scope with the standard
+     * objects at the given optimization level and returns the result of
+     * the last one.
+     */
+    static Object evaluate(final int optimizationLevel, final String... sources)
+    {
+        return evaluate(new ContextFactory(), optimizationLevel, sources);
+    }
+
+    /**
+     * Evaluates the sources in order in a new scope with the standard
+     * objects, using a Context of the factory at the given optimization
+     * level, and returns the result of the last one.
+     */
+    static Object evaluate(final ContextFactory contextFactory,
+                           final int optimizationLevel, final String... sources)
+    {
+        final Context cx = contextFactory.enterContext();
+        try
+        {
+            cx.setOptimizationLevel(optimizationLevel);
+            final Scriptable scope = cx.initStandardObjects();
+            Object result = null;
+            for (String source : sources) {
+                result = cx.evaluateString(scope, source, "test", 1, null);
+            }
+            return result;
+        }
+        finally
+        {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Checks that the source evaluates to the expected value with all
+     * available optimization levels.
+     */
+    static void assertEvaluates(final Object expected, final String source)
+    {
+        assertEvaluates(new ContextFactory(), expected, source);
+    }
+
+    /**
+     * Checks that the source evaluates to the expected value with all
+     * available optimization levels, using Contexts of the factory.
+     */
+    static void assertEvaluates(final ContextFactory contextFactory,
+                                final Object expected, final String source)
+    {
+        runWithAllOptimizationLevels(contextFactory, cx -> {
+            final Scriptable scope = cx.initStandardObjects();
+            Assert.assertEquals(expected,
+                cx.evaluateString(scope, source, "test", 1, null));
+            return null;
+        });
+    }
+
+    /**
+     * Script function run(cases, times) for regular expression tests. A
+     * case is [regexp, input] or [source, flags, input]. The regexp is
+     * executed on the input the given number of times, so that hot regexps
+     * get compiled, and the last result is reported as "null" or as
+     * "index:match|group|..." with "U" for an undefined group. The results
+     * of the cases are joined with newlines.
+     */
+    static final String REGEXP_RUNNER =
+        "function run(cases, times) {" +
+        "  var out = [];" +
+        "  for (var k = 0; k < cases.length; k++) {" +
+        "    var c = cases[k], r;" +
+        "    var re = c.length == 3 ? new RegExp(c[0], c[1]) : c[0];" +
+        "    for (var i = 0; i < times; i++) {" +
+        "      re.lastIndex = 0;" +
+        "      r = re.exec(c[c.length - 1]);" +
+        "    }" +
+        "    out.push(r === null ? 'null' : r.index + ':' + r.map(" +
+        "        function(x) { return x === undefined ? 'U' : x; }).join('|'));" +
+        "  }" +
+        "  return out.join('\\n');" +
+        "}";
+
+    /**
+     * Runs regular expression cases with {@link #REGEXP_RUNNER} with all
+     * available optimization levels, checks that the results are the same
+     * and returns them.
+     */
+    static String runRegExpCases(final String cases, final int times)
+    {
+        return runRegExpCases(new ContextFactory(), cases, times);
+    }
+
+    /**
+     * Runs regular expression cases with {@link #REGEXP_RUNNER} with all
+     * available optimization levels, using Contexts of the factory, checks
+     * that the results are the same and returns them.
+     */
+    static String runRegExpCases(final ContextFactory contextFactory,
+                                 final String cases, final int times)
+    {
+        final String source = "run(" + cases + ", " + times + ")";
+        final Object result =
+            evaluate(contextFactory, -1, REGEXP_RUNNER, source);
+        Assert.assertEquals(result,
+                            evaluate(contextFactory, 0, REGEXP_RUNNER, source));
+        Assert.assertEquals(result,
+                            evaluate(contextFactory, 1, REGEXP_RUNNER, source));
+        return (String) result;
+    }
+
+    /**
+     * Returns a factory whose Contexts use the given regular expression
+     * engine.
+     */
+    static ContextFactory regExpEngineFactory(final int engine)
+    {
+        return new ContextFactory() {
+            @Override
+            protected Context makeContext() {
+                Context cx = super.makeContext();
+                cx.setRegExpEngine(engine);
+                return cx;
+            }
+        };
+    }
+
     /**
      * Execute the provided script in a fresh context as "myScript.js".
      * @param script the script code
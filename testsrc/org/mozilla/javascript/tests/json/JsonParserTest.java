@@ -5,24 +5,36 @@
 package org.mozilla.javascript.tests.json;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.util.Arrays;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.NativeJSON;
 import org.mozilla.javascript.NativeObject;
+import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.json.JsonParser;
 import org.mozilla.javascript.json.JsonParser.ParseException;
 
 public class JsonParserTest {
     private JsonParser parser;
     private Context cx;
+    private Scriptable scope;
 
     @Before
     public void setUp() {
         cx = Context.enter();
-        parser = new JsonParser(cx, cx.initStandardObjects());
+        scope = cx.initStandardObjects();
+        parser = new JsonParser(cx, scope);
     }
 
     @After
@@ -254,6 +266,145 @@ public class JsonParserTest {
         parser.parseValue("1.");
     }
 
+    @Test
+    public void shouldParseReaderInSmallChunks() throws Exception {
+        String[] docs = {
+            "null", " true ", "-0.5e-3", "12345678",
+            "\"Sch\\u00f6ne \\\"Gr\\u00fc\\u00dfe\\\"\"",
+            "{\"a\" : [1, 2.5, {\"b\": false}], \"0\": null, \"c\": \"x\\ny\"}",
+            "[[], {}, [[\"\"]]]"
+        };
+        for (String doc : docs) {
+            Object expected = parser.parseValue(doc);
+            Object actual = parser.parse(new OneCharReader(doc));
+            assertEquals(doc, stringify(expected), stringify(actual));
+        }
+    }
+
+    @Test
+    public void shouldParseStringsLongerThanBuffer() throws Exception {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++) {
+            sb.append(i == 0 ? "" : ",").append("\"s\\t").append(i).append('"');
+        }
+        char[] chars = new char[100000];
+        Arrays.fill(chars, 'z');
+        sb.append(",\"").append(chars).append("\"]");
+        String json = sb.toString();
+        NativeArray fromString = (NativeArray) parser.parseValue(json);
+        NativeArray fromReader = (NativeArray) parser.parse(new StringReader(json));
+        assertEquals(5001, fromString.getLength());
+        assertEquals("s\t4999", fromString.get(4999, fromString));
+        assertEquals(100000, ((String) fromString.get(5000, fromString)).length());
+        assertEquals(stringify(fromString), stringify(fromReader));
+        NativeArray fromBuffer = (NativeArray) parser.parse(CharBuffer.wrap(json));
+        assertEquals(stringify(fromString), stringify(fromBuffer));
+    }
+
+    @Test(expected = ParseException.class)
+    public void shouldFailToParseTrailingValueFromReader() throws Exception {
+        parser.parse(new OneCharReader("[1] 2"));
+    }
+
+    @Test
+    public void shouldReadArrayElementsIncrementally() throws Exception {
+        parser.setInput(new OneCharReader(
+                " [ {\"a\": 1}, \"b\" , [2, 3], null ] "));
+        assertEquals(JsonParser.ARRAY, parser.peek());
+        parser.beginArray();
+        StringBuilder sb = new StringBuilder();
+        while (parser.hasNext()) {
+            sb.append(stringify(parser.nextValue())).append(';');
+        }
+        parser.endArray();
+        assertEquals("{\"a\":1};\"b\";[2,3];null;", sb.toString());
+        assertEquals(JsonParser.END_DOCUMENT, parser.peek());
+    }
+
+    @Test
+    public void shouldReadObjectMembersIncrementally() throws Exception {
+        parser.setInput(new StringReader("{\"x\": {}, \"y\": [true], \"z\": {\"q\": 1}}"));
+        parser.beginObject();
+        assertEquals("x", parser.nextName());
+        assertEquals(JsonParser.OBJECT, parser.peek());
+        parser.beginObject();
+        assertFalse(parser.hasNext());
+        parser.endObject();
+        assertEquals("y", parser.nextName());
+        parser.beginArray();
+        assertEquals(JsonParser.BOOLEAN, parser.peek());
+        assertEquals(Boolean.TRUE, parser.nextValue());
+        parser.endArray();
+        assertTrue(parser.hasNext());
+        assertEquals(JsonParser.NAME, parser.peek());
+        assertEquals("z", parser.nextName());
+        assertEquals("{\"q\":1}", stringify(parser.nextValue()));
+        parser.endObject();
+        assertFalse(parser.hasNext());
+    }
+
+    @Test(expected = ParseException.class)
+    public void shouldFailToReadMissingCommaIncrementally() throws Exception {
+        parser.setInput(new StringReader("[1 2]"));
+        parser.beginArray();
+        parser.nextValue();
+        parser.nextValue();
+    }
+
+    @Test(expected = ParseException.class)
+    public void shouldFailToReadTrailingCommaIncrementally() throws Exception {
+        parser.setInput(new StringReader("{\"a\": 1,}"));
+        parser.beginObject();
+        parser.nextName();
+        parser.nextValue();
+        parser.hasNext();
+    }
+
+    @Test
+    public void shouldShareNamesOfRecords() throws Exception {
+        NativeArray records = (NativeArray) parser.parseValue(
+                "[{\"id\": 1, \"7\": \"a\"}, {\"id\": 2, \"7\": \"b\"}, {\"i\\u0064\": 3}]");
+        NativeObject first = (NativeObject) records.get(0, records);
+        NativeObject second = (NativeObject) records.get(1, records);
+        NativeObject third = (NativeObject) records.get(2, records);
+        Object[] firstIds = first.getIds();
+        Object[] secondIds = second.getIds();
+        assertSame(firstIds[0], secondIds[0]);
+        assertEquals(7, firstIds[1]);
+        assertEquals("b", second.get(7, second));
+        assertEquals(3, third.get("id", third));
+    }
+
+    private String stringify(Object value) {
+        return (String) NativeJSON.stringify(cx, scope, value, null, null);
+    }
+
+    /**
+     * Hands out its text one char at a time, so every token is split
+     * between reads.
+     */
+    private static class OneCharReader extends Reader {
+        private final String text;
+        private int pos;
+
+        OneCharReader(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (pos == text.length()) {
+                return -1;
+            }
+            cbuf[off] = text.charAt(pos++);
+            return 1;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
     private String str(char... chars) {
         return new String(chars);
     }
@@ -13,6 +13,9 @@ import java.util.List;
 import java.util.StringTokenizer;
 
 import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.JavaAdapter;
+import org.mozilla.javascript.ObjToIntMap;
+import org.mozilla.javascript.ScriptRuntime;
 import org.mozilla.javascript.optimizer.ClassCompiler;
 import org.mozilla.javascript.tools.SourceReader;
 import org.mozilla.javascript.tools.ToolErrorReporter;
@@ -43,6 +46,7 @@ public class Main {
         }
         if (!main.reporter.hasReportedError()) {
             main.processSource(args);
+            main.processAdapters();
         }
     }
 
@@ -204,9 +208,17 @@ public class Main {
                 destinationDir = args[i];
                 continue;
             }
+            if (arg.equals("-adapter") && ++i < args.length) {
+                adapterSpecs.add(args[i]);
+                continue;
+            }
             badUsage(arg);
             return null;
         }
+        if (!adapterSpecs.isEmpty()) {
+            // only prebuilt adapters were requested
+            return new String[0];
+        }
         // no file name
         p(ToolErrorReporter.getMessage("msg.no.file"));
         return null;
@@ -264,18 +276,97 @@ public class Main {
             for (int j = 0; j != compiled.length; j += 2) {
                 String className = (String)compiled[j];
                 byte[] bytes = (byte[])compiled[j + 1];
-                File outfile = getOutputFile(targetTopDir, className);
+                writeClassFile(targetTopDir, className, bytes);
+            }
+        }
+    }
+
+    /**
+     * Generate the JavaAdapter classes requested with -adapter.
+     * <p>
+     * Each specification has the form
+     * <tt>CLASS[,CLASS...][:FUNCTION/ARITY[,FUNCTION/ARITY...]]</tt>
+     * where the classes are the super class and interfaces in the order
+     * they are passed to the JavaAdapter constructor and the functions are
+     * the properties of the implementation object with their lengths.
+     * The classes are named so that the runtime finds them on the class
+     * path instead of generating them.
+     */
+    public void processAdapters()
+    {
+        File targetTopDir = new File(destinationDir != null
+                                     ? destinationDir : ".");
+        for (String spec : adapterSpecs) {
+            int colon = spec.indexOf(':');
+            String classList = colon < 0 ? spec : spec.substring(0, colon);
+            Class<?> superClass = null;
+            List<Class<?>> interfaces = new ArrayList<Class<?>>();
+            StringTokenizer st = new StringTokenizer(classList, ",");
+            while (st.hasMoreTokens()) {
+                String className = st.nextToken();
+                Class<?> c;
                 try {
-                    FileOutputStream os = new FileOutputStream(outfile);
+                    c = Class.forName(className);
+                } catch (ClassNotFoundException e) {
+                    addError("msg.class.not.found", className);
+                    return;
+                }
+                if (c.isInterface()) {
+                    interfaces.add(c);
+                } else if (superClass == null) {
+                    superClass = c;
+                } else {
+                    addError("msg.adapter.spec", spec);
+                    return;
+                }
+            }
+            if (superClass == null) {
+                superClass = ScriptRuntime.ObjectClass;
+            }
+            ObjToIntMap functionNames = new ObjToIntMap();
+            if (colon >= 0) {
+                st = new StringTokenizer(spec.substring(colon + 1), ",");
+                while (st.hasMoreTokens()) {
+                    String function = st.nextToken();
+                    int slash = function.indexOf('/');
+                    int arity;
                     try {
-                        os.write(bytes);
-                    } finally {
-                        os.close();
+                        arity = slash < 0 ? 0 : Integer.parseInt(
+                            function.substring(slash + 1));
+                    } catch (NumberFormatException e) {
+                        arity = -1;
+                    }
+                    if (slash == 0 || arity < 0) {
+                        addError("msg.adapter.spec", spec);
+                        return;
                     }
-                } catch (IOException ioe) {
-                    addFormatedError(ioe.toString());
+                    functionNames.put(slash < 0 ? function
+                                      : function.substring(0, slash), arity);
                 }
             }
+            Class<?>[] interfaceArray =
+                interfaces.toArray(new Class<?>[interfaces.size()]);
+            String className = JavaAdapter.getAdapterClassName(
+                superClass, interfaceArray, functionNames);
+            byte[] bytes = JavaAdapter.createAdapterCode(
+                functionNames, className, superClass, interfaceArray, null);
+            writeClassFile(targetTopDir, className, bytes);
+        }
+    }
+
+    private void writeClassFile(File targetTopDir, String className,
+                                byte[] bytes)
+    {
+        File outfile = getOutputFile(targetTopDir, className);
+        try {
+            FileOutputStream os = new FileOutputStream(outfile);
+            try {
+                os.write(bytes);
+            } finally {
+                os.close();
+            }
+        } catch (IOException ioe) {
+            addFormatedError(ioe.toString());
         }
     }
 
@@ -365,5 +456,6 @@ public class Main {
     private String targetPackage;
     private String destinationDir;
     private String characterEncoding;
+    private List<String> adapterSpecs = new ArrayList<String>();
 }
 